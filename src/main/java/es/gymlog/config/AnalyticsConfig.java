@@ -0,0 +1,12 @@
+package es.gymlog.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registra la configuración de los agregados de progreso ({@link AnalyticsProperties}).
+ */
+@Configuration
+@EnableConfigurationProperties(AnalyticsProperties.class)
+public class AnalyticsConfig {
+}
@@ -0,0 +1,50 @@
+package es.gymlog.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Propiedades de los agregados de progreso y estadísticas de entrenamiento.
+ * <p>
+ * Se vinculan desde el prefijo "gymlog.analytics" del archivo {@code application.yml}.
+ *
+ * @param progressBackfill  Configuración del backfill del progreso diario por ejercicio.
+ * @param rollupCompaction  Configuración de la compactación de las estadísticas por periodo.
+ */
+@ConfigurationProperties(prefix = "gymlog.analytics")
+public record AnalyticsProperties(
+    @DefaultValue BackfillConfig progressBackfill,
+    @DefaultValue CompactionConfig rollupCompaction
+) {
+
+    /**
+     * Configuración del backfill que suma al progreso diario los registros anteriores a la tabla.
+     *
+     * @param enabled    Si el backfill se ejecuta al arrancar.
+     * @param batchSize  Registros sumados en cada sentencia.
+     * @param startDelay Espera tras el arranque antes de empezar, para no competir con las
+     *                   migraciones ni con las primeras peticiones.
+     */
+    public record BackfillConfig(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("500") int batchSize,
+        @DefaultValue("1m") Duration startDelay
+    ) {}
+
+    /**
+     * Configuración de la compactación que pliega los días de las semanas terminadas en semanas
+     * y meses.
+     *
+     * @param enabled      Si la compactación se ejecuta en esta instancia.
+     * @param initialDelay Espera tras el arranque antes de la primera pasada.
+     * @param interval     Tiempo entre pasadas. Basta con una al día; pasadas más frecuentes
+     *                     solo encuentran trabajo al empezar la semana.
+     */
+    public record CompactionConfig(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("2m") Duration initialDelay,
+        @DefaultValue("1h") Duration interval
+    ) {}
+}
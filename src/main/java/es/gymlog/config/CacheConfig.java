@@ -0,0 +1,12 @@
+package es.gymlog.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registra la configuración de las cachés de datos ({@link CacheProperties}).
+ */
+@Configuration
+@EnableConfigurationProperties(CacheProperties.class)
+public class CacheConfig {
+}
@@ -0,0 +1,36 @@
+package es.gymlog.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Propiedades de las cachés de datos de la aplicación.
+ * <p>
+ * Se vinculan desde el prefijo "gymlog.cache" del archivo {@code application.yml}.
+ *
+ * @param exerciseCatalog Configuración de la caché del catálogo de ejercicios de cada tenant.
+ */
+@ConfigurationProperties(prefix = "gymlog.cache")
+public record CacheProperties(
+    @DefaultValue ExerciseCatalogConfig exerciseCatalog
+) {
+
+    /**
+     * Configuración de la caché del catálogo de ejercicios.
+     *
+     * @param maximumWeight          Tamaño máximo, en bytes de JSON serializado, de los catálogos
+     *                               guardados entre todos los tenants.
+     * @param maxExercisesPerTenant  Catálogos con más ejercicios no se guardan en memoria y se
+     *                               consultan siempre en la base de datos.
+     * @param timeToLive             Caducidad de cada catálogo, para liberar la memoria de los tenants
+     *                               sin uso. No afecta a la frescura: cada petición comprueba la
+     *                               versión del catálogo en la base de datos.
+     */
+    public record ExerciseCatalogConfig(
+        @DefaultValue("67108864") long maximumWeight,
+        @DefaultValue("5000") int maxExercisesPerTenant,
+        @DefaultValue("5m") Duration timeToLive
+    ) {}
+}
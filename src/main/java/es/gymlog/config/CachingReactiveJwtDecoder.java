@@ -0,0 +1,96 @@
+package es.gymlog.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+
+/**
+ * {@link ReactiveJwtDecoder} que guarda en memoria los JWT ya verificados por el decodificador
+ * al que envuelve.
+ * <p>
+ * Un mismo token se envía en muchas peticiones seguidas (p. ej. cada serie registrada durante
+ * un entrenamiento). Con esta caché, solo la primera parsea el token y verifica su firma. Las
+ * siguientes reutilizan el {@link Jwt} ya validado.
+ * <p>
+ * La clave es un hash SHA-256 del token, de modo que los tokens no se guardan en memoria.
+ * Cada entrada caduca con el token (como mucho tras {@code max-ttl}), y los tokens
+ * rechazados no se guardan. Aciertos y fallos: métricas {@code cache.gets}, cache=jwt_decode.
+ */
+public class CachingReactiveJwtDecoder implements ReactiveJwtDecoder {
+
+    private final ReactiveJwtDecoder delegate;
+    private final Duration maxTtl;
+    private final Cache<String, Jwt> cache;
+
+    public CachingReactiveJwtDecoder(ReactiveJwtDecoder delegate,
+                                     SecurityProperties.JwtCacheConfig config,
+                                     MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.maxTtl = config.maxTtl();
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(config.maximumSize())
+            .expireAfter(new Expiry<String, Jwt>() {
+                @Override
+                public long expireAfterCreate(String key, Jwt jwt, long currentTime) {
+                    return timeToLive(jwt).toNanos();
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, Jwt jwt, long currentTime, long currentDuration) {
+                    return timeToLive(jwt).toNanos();
+                }
+
+                @Override
+                public long expireAfterRead(String key, Jwt jwt, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwt_decode");
+    }
+
+    @Override
+    public Mono<Jwt> decode(String token) throws JwtException {
+        String key = digest(token);
+        Jwt cachedJwt = cache.getIfPresent(key);
+        if (cachedJwt != null) {
+            return Mono.just(cachedJwt);
+        }
+        return delegate.decode(token)
+            .doOnNext(jwt -> cache.put(key, jwt));
+    }
+
+    private Duration timeToLive(Jwt jwt) {
+        if (jwt.getExpiresAt() == null) {
+            return maxTtl;
+        }
+        Duration untilExpiry = Duration.between(Instant.now(), jwt.getExpiresAt());
+        if (untilExpiry.isNegative()) {
+            return Duration.ZERO;
+        }
+        return untilExpiry.compareTo(maxTtl) < 0 ? untilExpiry : maxTtl;
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
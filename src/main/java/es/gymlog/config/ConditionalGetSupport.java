@@ -0,0 +1,99 @@
+package es.gymlog.config;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * GET condicionales (ETag / Last-Modified) para los endpoints de colecciones.
+ * <p>
+ * El endpoint obtiene primero los {@link Validators} de la colección, una consulta mínima, y
+ * solo si el cliente no tiene ya esa versión ejecuta la consulta completa. If-None-Match tiene
+ * prioridad sobre If-Modified-Since, como indica la RFC 9110 (lo resuelve
+ * {@link ServerWebExchange#checkNotModified}).
+ * <p>
+ * Las respuestas se marcan {@code private, no-cache}, de modo que el cliente las guarda pero
+ * siempre las revalida, y {@code Vary: Authorization}, porque dependen del usuario.
+ * Para usarlo en un endpoint:
+ * <pre>{@code
+ * return ConditionalGetSupport.collection(exchange, service.getValidators(), service::getAll);
+ * }</pre>
+ */
+public final class ConditionalGetSupport {
+
+    private ConditionalGetSupport() {
+    }
+
+    /**
+     * Responde 304 si el cliente ya tiene la versión actual de la colección; si no, 200 con el
+     * cuerpo, que solo se construye en ese caso.
+     */
+    public static <T> Mono<ResponseEntity<Flux<T>>> collection(ServerWebExchange exchange,
+                                                                Mono<Validators> validators,
+                                                                Supplier<Flux<T>> body) {
+        return validators.map(current -> isNotModified(exchange, current)
+            ? notModified(current).<Flux<T>>build()
+            : ok(current).body(body.get()));
+    }
+
+    /**
+     * Comprueba las cabeceras condicionales de la petición contra los validadores actuales
+     */
+    public static boolean isNotModified(ServerWebExchange exchange, Validators validators) {
+        return validators.lastModified() != null
+            ? exchange.checkNotModified(validators.etag(), validators.lastModified())
+            : exchange.checkNotModified(validators.etag());
+    }
+
+    /**
+     * Respuesta 304 con los validadores actuales
+     */
+    public static ResponseEntity.BodyBuilder notModified(Validators validators) {
+        return withValidators(ResponseEntity.status(HttpStatus.NOT_MODIFIED), validators);
+    }
+
+    /**
+     * Respuesta 200 con los validadores actuales, a la que se añade el cuerpo
+     */
+    public static ResponseEntity.BodyBuilder ok(Validators validators) {
+        return withValidators(ResponseEntity.ok(), validators);
+    }
+
+    private static <B extends ResponseEntity.HeadersBuilder<B>> B withValidators(B builder, Validators validators) {
+        builder.eTag(validators.etag())
+            .cacheControl(CacheControl.noCache().cachePrivate())
+            .varyBy(HttpHeaders.AUTHORIZATION);
+        if (validators.lastModified() != null) {
+            builder.lastModified(validators.lastModified());
+        }
+        return builder;
+    }
+
+    /**
+     * Validadores de la versión actual de una colección.
+     *
+     * @param etag         ETag fuerte, entre comillas.
+     * @param lastModified Momento de la última modificación, o null si no se conoce.
+     */
+    public record Validators(
+        String etag,
+        Instant lastModified
+    ) {
+
+        /**
+         * Validadores de una colección de un usuario a partir de su versión. El ETag incluye el
+         * usuario para que dos usuarios en el mismo dispositivo no compartan respuestas.
+         */
+        public static Validators of(String collection, UUID userId, long version, Instant lastModified) {
+            return new Validators("\"" + collection + "-" + userId + "-" + version + "\"", lastModified);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package es.gymlog.config;
+
+import es.gymlog.exception.IdentityProviderUnavailableException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Cliente HTTP para las llamadas a proveedores de identidad (Graph API de Facebook, JWKS de
+ * Google y Apple).
+ * <p>
+ * Usa un pool de conexiones propio y acotado, separado del resto de la aplicación, con
+ * tiempos máximos de conexión, de espera de conexión libre y de respuesta. Así, si un proveedor
+ * responde lento, los logins fallan rápido en lugar de acumularse sin límite. Las llamadas que
+ * se hacen por cada login se protegen además con un circuit breaker por proveedor, obtenido
+ * de {@code identityProviderCircuitBreakers}.
+ */
+@Configuration
+public class IdentityProviderClientConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider identityProviderConnectionProvider(SecurityProperties securityProperties) {
+        SecurityProperties.ProviderClientConfig config = securityProperties.identityProviders();
+        return ConnectionProvider.builder("identity-providers")
+            .maxConnections(config.maxConnections())
+            .pendingAcquireMaxCount(config.pendingAcquireMaxCount())
+            .pendingAcquireTimeout(config.pendingAcquireTimeout())
+            .maxIdleTime(config.maxIdleTime())
+            .metrics(true)
+            .build();
+    }
+
+    @Bean
+    public WebClient identityProviderWebClient(WebClient.Builder webClientBuilder,
+                                               ConnectionProvider identityProviderConnectionProvider,
+                                               SecurityProperties securityProperties) {
+        SecurityProperties.ProviderClientConfig config = securityProperties.identityProviders();
+        HttpClient httpClient = HttpClient.create(identityProviderConnectionProvider)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) config.connectTimeout().toMillis())
+            .responseTimeout(config.responseTimeout());
+        return webClientBuilder
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .build();
+    }
+
+    /**
+     * Registro de circuit breakers de proveedores de identidad. Solo los errores
+     * {@link IdentityProviderUnavailableException} cuentan como fallo.
+     */
+    @Bean
+    public CircuitBreakerRegistry identityProviderCircuitBreakers(SecurityProperties securityProperties,
+                                                                  MeterRegistry meterRegistry) {
+        SecurityProperties.CircuitBreakerSettings settings = securityProperties.identityProviders().circuitBreaker();
+        CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+            .failureRateThreshold(settings.failureRateThreshold())
+            .slowCallDurationThreshold(settings.slowCallDurationThreshold())
+            .slowCallRateThreshold(settings.slowCallRateThreshold())
+            .slidingWindowSize(settings.slidingWindowSize())
+            .minimumNumberOfCalls(settings.minimumNumberOfCalls())
+            .waitDurationInOpenState(settings.waitDurationInOpenState())
+            .recordExceptions(IdentityProviderUnavailableException.class)
+            .build();
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(config);
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+        return registry;
+    }
+}
@@ -0,0 +1,79 @@
+package es.gymlog.config;
+
+import es.gymlog.config.TenantResolver.TenantContext;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Datos de la petición autenticada actual: usuario, tenant y roles.
+ * <p>
+ * {@link RequestContextWebFilter} lo construye una sola vez por petición a partir del JWT y lo
+ * guarda en el Context de Reactor, de modo que los servicios lo leen con {@link #current()} o
+ * {@link #currentUserId()} sin volver a recorrer el contexto de seguridad ni parsear el token.
+ *
+ * @param userId     ID del usuario (subject del JWT).
+ * @param tenantId   ID del tenant del usuario.
+ * @param schemaName Esquema del tenant.
+ * @param roles      Autoridades concedidas a la petición.
+ */
+public record RequestContext(
+    UUID userId,
+    UUID tenantId,
+    String schemaName,
+    Set<String> roles
+) {
+
+    private static final Class<RequestContext> REQUEST_CONTEXT_KEY = RequestContext.class;
+
+    public RequestContext {
+        roles = Set.copyOf(roles);
+    }
+
+    /**
+     * Construye el contexto a partir de la autenticación JWT y el tenant ya resueltos
+     */
+    public static RequestContext of(JwtAuthenticationToken authentication, TenantContext tenantContext) {
+        return new RequestContext(
+            UUID.fromString(authentication.getToken().getSubject()),
+            tenantContext.tenantId(),
+            tenantContext.schemaName(),
+            authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toUnmodifiableSet())
+        );
+    }
+
+    /**
+     * Obtiene el contexto de la petición actual, o vacío si la petición no está autenticada.
+     */
+    public static Mono<RequestContext> current() {
+        return Mono.deferContextual(context -> Mono.justOrEmpty(context.<RequestContext>getOrEmpty(REQUEST_CONTEXT_KEY)));
+    }
+
+    /**
+     * Obtiene el ID del usuario autenticado, o vacío si la petición no está autenticada.
+     */
+    public static Mono<UUID> currentUserId() {
+        return current().map(RequestContext::userId);
+    }
+
+    /**
+     * Comprueba si la petición tiene la autoridad indicada
+     */
+    public boolean hasRole(String role) {
+        return roles.contains(role);
+    }
+
+    /**
+     * Crea un Context de Reactor con este contexto de petición, para usar con {@code contextWrite}.
+     */
+    public Context toContext() {
+        return Context.of(REQUEST_CONTEXT_KEY, this);
+    }
+}
@@ -0,0 +1,53 @@
+package es.gymlog.config;
+
+import es.gymlog.exception.TenantTokenRevokedException;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+import static org.springframework.http.HttpStatus.FORBIDDEN;
+import static org.springframework.http.HttpStatus.UNAUTHORIZED;
+
+/**
+ * Filtro web que resuelve una sola vez por petición el usuario y el tenant del JWT y los deja
+ * en el Context de Reactor: el {@link RequestContext}, que leen los servicios, y el contexto de
+ * tenant ({@link TenantContextHolder}), con el que los repositorios usan el pool de su esquema.
+ * <p>
+ * Se ejecuta después de la cadena de Spring Security, por lo que el JWT ya está
+ * disponible. Las peticiones sin JWT (p. ej. el login social) continúan sin tenant, y las
+ * que traen el JWT de un tenant desactivado o modificado se rechazan con 401.
+ */
+@Component
+public class RequestContextWebFilter implements WebFilter {
+
+    private final TenantResolver tenantResolver;
+
+    public RequestContextWebFilter(TenantResolver tenantResolver) {
+        this.tenantResolver = tenantResolver;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return ReactiveSecurityContextHolder.getContext()
+            .map(SecurityContext::getAuthentication)
+            .ofType(JwtAuthenticationToken.class)
+            .flatMap(authentication -> tenantResolver.resolveTenantContext(authentication.getToken())
+                .map(tenantContext -> TenantContextHolder.withTenantContext(tenantContext)
+                    .putAll(RequestContext.of(authentication, tenantContext).toContext().readOnly())))
+            .onErrorMap(IllegalArgumentException.class, e -> new ResponseStatusException(FORBIDDEN, e.getMessage()))
+            .onErrorMap(TenantTokenRevokedException.class, e -> new ResponseStatusException(UNAUTHORIZED, e.getMessage()))
+            .map(Optional::of)
+            .defaultIfEmpty(Optional.empty())
+            .flatMap(requestContext -> requestContext
+                .map(context -> chain.filter(exchange).contextWrite(context))
+                .orElseGet(() -> chain.filter(exchange)));
+    }
+}
@@ -6,6 +6,7 @@ import com.nimbusds.jose.jwk.OctetSequenceKey;
 import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
 import com.nimbusds.jose.jwk.source.JWKSource;
 import com.nimbusds.jose.proc.SecurityContext;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -16,6 +17,10 @@ import org.springframework.security.oauth2.jwt.JwtEncoder;
 import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
 import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
 import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.DelegatingJwtGrantedAuthoritiesConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+import org.springframework.security.oauth2.server.resource.authentication.ReactiveJwtAuthenticationConverterAdapter;
 import org.springframework.security.web.server.SecurityWebFilterChain;
 
 import javax.crypto.spec.SecretKeySpec;
@@ -25,11 +30,20 @@ import javax.crypto.spec.SecretKeySpec;
 @EnableConfigurationProperties(SecurityProperties.class)
 public class SecurityConfig {
 
+    /** Claim del JWT con los roles del usuario en su gimnasio (p. ej. ["OWNER"]), de su tabla 'user_roles' */
+    public static final String CLAIM_ROLES = "roles";
+    /** Claim del JWT con los roles de la plataforma (p. ej. ["ADMIN"]), de {@code gymlog.security.platform-admins} */
+    public static final String CLAIM_PLATFORM_ROLES = "platformRoles";
+    /** Prefijo de las autoridades de los roles del gimnasio, separadas de las de la plataforma */
+    public static final String GYM_ROLE_PREFIX = "ROLE_GYM_";
+
     private final SecurityProperties securityProperties;
     private final SecretKeySpec secretKey;
+    private final MeterRegistry meterRegistry;
 
-    public SecurityConfig(SecurityProperties securityProperties) {
+    public SecurityConfig(SecurityProperties securityProperties, MeterRegistry meterRegistry) {
         this.securityProperties = securityProperties;
+        this.meterRegistry = meterRegistry;
         this.secretKey = new SecretKeySpec(securityProperties.jwtKey().getBytes(), "HMACSHA256");
     }
 
@@ -41,9 +55,12 @@ public class SecurityConfig {
                 .pathMatchers("/api/v1/auth/social-login").permitAll()
                 .pathMatchers(HttpMethod.GET, "/management/health").permitAll()
                 .pathMatchers("/management/**").hasRole("ADMIN")
+                .pathMatchers("/api/v1/training-stats/gym").hasRole("GYM_OWNER")
                 .anyExchange().authenticated()
             )
-            .oauth2ResourceServer(oauth2 -> oauth2.jwt(jwt -> jwt.jwtDecoder(jwtDecoder())))
+            .oauth2ResourceServer(oauth2 -> oauth2.jwt(jwt -> jwt
+                .jwtDecoder(jwtDecoder())
+                .jwtAuthenticationConverter(jwtAuthenticationConverter())))
             .csrf(ServerHttpSecurity.CsrfSpec::disable);
 
         return http.build();
@@ -51,7 +68,30 @@ public class SecurityConfig {
 
     @Bean
     public ReactiveJwtDecoder jwtDecoder() {
-        return NimbusReactiveJwtDecoder.withSecretKey(secretKey).build();
+        // Los tokens ya verificados se reutilizan sin volver a parsearlos ni comprobar su firma
+        return new CachingReactiveJwtDecoder(
+            NimbusReactiveJwtDecoder.withSecretKey(secretKey).build(),
+            securityProperties.jwtCache(),
+            meterRegistry);
+    }
+
+    /**
+     * Convierte los roles del claim {@link #CLAIM_ROLES} en autoridades {@code ROLE_GYM_*} y los
+     * del claim {@link #CLAIM_PLATFORM_ROLES} en autoridades {@code ROLE_*}. Los roles del
+     * gimnasio salen de tablas que cada gimnasio puede modificar, así que nunca se convierten en
+     * autoridades de la plataforma: un rol "ADMIN" en 'user_roles' es {@code ROLE_GYM_ADMIN}.
+     */
+    private static ReactiveJwtAuthenticationConverterAdapter jwtAuthenticationConverter() {
+        JwtGrantedAuthoritiesConverter gymRolesConverter = new JwtGrantedAuthoritiesConverter();
+        gymRolesConverter.setAuthoritiesClaimName(CLAIM_ROLES);
+        gymRolesConverter.setAuthorityPrefix(GYM_ROLE_PREFIX);
+        JwtGrantedAuthoritiesConverter platformRolesConverter = new JwtGrantedAuthoritiesConverter();
+        platformRolesConverter.setAuthoritiesClaimName(CLAIM_PLATFORM_ROLES);
+        platformRolesConverter.setAuthorityPrefix("ROLE_");
+        JwtAuthenticationConverter authenticationConverter = new JwtAuthenticationConverter();
+        authenticationConverter.setJwtGrantedAuthoritiesConverter(
+            new DelegatingJwtGrantedAuthoritiesConverter(gymRolesConverter, platformRolesConverter));
+        return new ReactiveJwtAuthenticationConverterAdapter(authenticationConverter);
     }
 
     @Bean
@@ -1,7 +1,11 @@
 package es.gymlog.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * Propiedades de configuración de seguridad personalizadas para la aplicación.
@@ -12,12 +16,24 @@ import java.util.List;
  * @param issuerUris Lista de URIs de los emisores de JWT en los que se confía.
  * @param jwtKey La clave secreta para firmar y verificar los JWT de la aplicación.
  * @param social Configuraciones específicas para proveedores sociales.
+ * @param socialLoginCache Configuración de la caché de logins sociales ya verificados.
+ * @param identityProviders Cliente HTTP usado para llamar a los proveedores sociales.
+ * @param jwtCache Configuración de la caché de JWT propios ya verificados.
+ * @param login Configuración del acceso de las cuentas sociales a los gimnasios.
+ * @param platformAdmins Cuentas sociales con el rol ADMIN de la plataforma (endpoints /management),
+ *                       como "proveedor:id" (p. ej. "google:1234"). Es la única fuente de ese rol:
+ *                       los roles de cada gimnasio nunca lo conceden.
  */
 @ConfigurationProperties(prefix = "gymlog.security")
 public record SecurityProperties(
     List<String> issuerUris, 
     String jwtKey,
-    SocialConfig social
+    SocialConfig social,
+    @DefaultValue SocialLoginCacheConfig socialLoginCache,
+    @DefaultValue ProviderClientConfig identityProviders,
+    @DefaultValue JwtCacheConfig jwtCache,
+    @DefaultValue LoginConfig login,
+    @DefaultValue List<String> platformAdmins
 ) {
     
     /**
@@ -31,24 +47,122 @@ public record SecurityProperties(
     
     /**
      * Configuración específica para Google
+     *
+     * @param clientIds Client IDs válidos como audiencia de los ID tokens.
+     * @param jwksUri   URI del JWKS con las claves de firma de Google (por defecto, el de Google).
+     *                  Permite apuntar a un JWKS local en pruebas.
      */
     public record GoogleConfig(
-        List<String> clientIds
+        List<String> clientIds,
+        String jwksUri
     ) {}
     
     /**
      * Configuración específica para Facebook
+     *
+     * @param appId     App ID de Facebook.
+     * @param appSecret App Secret de Facebook.
+     * @param graphUri  URI base de la Graph API (por defecto, la de Facebook).
+     *                  Permite apuntar a un servidor local en pruebas.
      */
     public record FacebookConfig(
         String appId,
-        String appSecret
+        String appSecret,
+        String graphUri
     ) {}
     
     /**
      * Configuración específica para Apple
+     *
+     * @param teamId   Team ID de Apple Developer.
+     * @param bundleId Bundle ID de la app, audiencia de los ID tokens.
+     * @param jwksUri  URI del JWKS con las claves de firma de Apple (por defecto, el de Apple).
+     *                 Permite apuntar a un JWKS local en pruebas.
      */
     public record AppleConfig(
         String teamId,
-        String bundleId
+        String bundleId,
+        String jwksUri
+    ) {}
+
+    /**
+     * Configuración de la caché de logins sociales, que evita repetir la validación con el
+     * proveedor y la búsqueda del usuario cuando el cliente reintenta con el mismo token.
+     *
+     * @param maximumSize Número máximo de logins en caché.
+     * @param defaultTtl  Tiempo en caché de los tokens sin caducidad conocida (Facebook).
+     * @param maxTtl      Tiempo máximo en caché, aunque el token caduque más tarde.
+     */
+    public record SocialLoginCacheConfig(
+        @DefaultValue("10000") long maximumSize,
+        @DefaultValue("5m") Duration defaultTtl,
+        @DefaultValue("1h") Duration maxTtl
+    ) {}
+
+    /**
+     * Configuración de la caché de JWT de la aplicación ya verificados, que evita parsear y
+     * verificar la firma del mismo token en cada petición.
+     *
+     * @param maximumSize Número máximo de tokens en caché.
+     * @param maxTtl      Tiempo máximo en caché, aunque el token caduque más tarde.
+     */
+    public record JwtCacheConfig(
+        @DefaultValue("50000") long maximumSize,
+        @DefaultValue("10m") Duration maxTtl
+    ) {}
+
+    /**
+     * Configuración del acceso de las cuentas sociales a los gimnasios en el login. Una cuenta
+     * solo entra en un gimnasio al que ya pertenece, al que está invitada o que admite altas abiertas.
+     *
+     * @param openRegistrationTenantIds Gimnasios en los que cualquier cuenta social puede darse de alta
+     *                                  sin invitación (p. ej. el de demostración).
+     * @param invitationTtl             Validez de las invitaciones.
+     */
+    public record LoginConfig(
+        @DefaultValue List<UUID> openRegistrationTenantIds,
+        @DefaultValue("7d") Duration invitationTtl
+    ) {}
+
+    /**
+     * Configuración del cliente HTTP compartido por las llamadas a proveedores de identidad
+     * (Graph API de Facebook, JWKS de Google y Apple).
+     *
+     * @param maxConnections         Conexiones máximas abiertas hacia los proveedores.
+     * @param pendingAcquireMaxCount Peticiones máximas esperando conexión; el resto falla al momento.
+     * @param pendingAcquireTimeout  Espera máxima por una conexión libre.
+     * @param connectTimeout         Tiempo máximo para establecer la conexión.
+     * @param responseTimeout        Tiempo máximo de espera de la respuesta.
+     * @param maxIdleTime            Tiempo que una conexión ociosa permanece en el pool.
+     * @param circuitBreaker         Circuit breaker de las llamadas a cada proveedor.
+     */
+    public record ProviderClientConfig(
+        @DefaultValue("50") int maxConnections,
+        @DefaultValue("100") int pendingAcquireMaxCount,
+        @DefaultValue("1s") Duration pendingAcquireTimeout,
+        @DefaultValue("2s") Duration connectTimeout,
+        @DefaultValue("3s") Duration responseTimeout,
+        @DefaultValue("30s") Duration maxIdleTime,
+        @DefaultValue CircuitBreakerSettings circuitBreaker
+    ) {}
+
+    /**
+     * Configuración del circuit breaker de un proveedor de identidad. Solo cuentan como fallo
+     * los errores del proveedor (no disponible, 5xx, tiempo agotado), no los tokens inválidos.
+     *
+     * @param failureRateThreshold      Porcentaje de fallos que abre el circuito.
+     * @param slowCallDurationThreshold Duración a partir de la cual una llamada cuenta como lenta.
+     * @param slowCallRateThreshold     Porcentaje de llamadas lentas que abre el circuito.
+     * @param slidingWindowSize         Número de llamadas consideradas.
+     * @param minimumNumberOfCalls      Llamadas mínimas antes de evaluar los porcentajes.
+     * @param waitDurationInOpenState   Tiempo con el circuito abierto antes de volver a probar.
+     */
+    public record CircuitBreakerSettings(
+        @DefaultValue("50") float failureRateThreshold,
+        @DefaultValue("2s") Duration slowCallDurationThreshold,
+        @DefaultValue("80") float slowCallRateThreshold,
+        @DefaultValue("20") int slidingWindowSize,
+        @DefaultValue("10") int minimumNumberOfCalls,
+        @DefaultValue("30s") Duration waitDurationInOpenState
     ) {}
-}
\ No newline at end of file
+}
@@ -0,0 +1,261 @@
+package es.gymlog.config;
+
+import es.gymlog.entity.TenantPlan;
+import es.gymlog.exception.TenantBulkheadFullException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bulkhead por tenant para las operaciones de base de datos.
+ * <p>
+ * Cada tenant puede tener en curso a la vez tantas operaciones (conexiones en uso) como
+ * permita su plan, y entre todos los tenants no más de {@code global-limit}. Las operaciones
+ * que no pueden empezar esperan en una cola por tenant; cada vez que se libera un permiso,
+ * los tenants con operaciones en espera se atienden por turnos (round robin), de modo que un
+ * tenant con cientos de operaciones encoladas no retrasa a los demás.
+ * <p>
+ * Una operación se rechaza con {@link TenantBulkheadFullException} si la cola de su tenant
+ * está llena o si espera más de {@code max-wait}.
+ * <p>
+ * Métricas publicadas, etiquetadas por tenant (nombre del esquema):
+ * <ul>
+ *   <li>{@code gymlog.tenant.bulkhead.queued}: operaciones en espera.</li>
+ *   <li>{@code gymlog.tenant.bulkhead.active}: operaciones en curso.</li>
+ *   <li>{@code gymlog.tenant.bulkhead.rejected}: operaciones rechazadas, por motivo (queue_full, timeout).</li>
+ * </ul>
+ */
+public class TenantBulkhead {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantBulkhead.class);
+
+    private static final String QUEUED_METRIC = "gymlog.tenant.bulkhead.queued";
+    private static final String ACTIVE_METRIC = "gymlog.tenant.bulkhead.active";
+    private static final String REJECTED_METRIC = "gymlog.tenant.bulkhead.rejected";
+
+    private final TenantProperties.BulkheadConfig config;
+    private final MeterRegistry meterRegistry;
+
+    // Estado protegido por el monitor de esta instancia
+    private final Map<String, TenantState> tenants = new HashMap<>();
+    private final Deque<TenantState> waitingTenants = new ArrayDeque<>();
+    private int globalActive;
+
+    public TenantBulkhead(TenantProperties.BulkheadConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Obtiene un permiso para ejecutar una operación del tenant indicado. El permiso
+     * debe liberarse con {@link Permit#release()} al terminar la operación.
+     */
+    public Mono<Permit> acquire(String tenantKey, TenantPlan plan) {
+        int limit = config.limitFor(plan);
+        return Mono.<Permit>create(sink -> {
+                Waiter waiter = new Waiter(sink);
+                Permit permit = null;
+                boolean queueFull = false;
+                TenantState state;
+                synchronized (this) {
+                    state = tenants.computeIfAbsent(tenantKey, this::createState);
+                    state.limit = limit;
+                    if (state.waiters.isEmpty() && state.active < limit && globalActive < config.globalLimit()) {
+                        permit = grant(state);
+                    } else if (state.waiters.size() >= config.maxQueuedPerTenant()) {
+                        queueFull = true;
+                    } else {
+                        enqueue(state, waiter);
+                        sink.onCancel(() -> cancel(state, waiter));
+                    }
+                }
+
+                if (permit != null) {
+                    sink.success(permit);
+                } else if (queueFull) {
+                    state.rejectedQueueFull.increment();
+                    sink.error(new TenantBulkheadFullException(
+                        "Demasiadas operaciones en espera para el tenant: " + tenantKey));
+                }
+            })
+            .timeout(config.maxWait(), Mono.defer(() -> {
+                rejectedTimeout(tenantKey);
+                return Mono.error(new TenantBulkheadFullException(
+                    "Tiempo de espera agotado para el tenant: " + tenantKey));
+            }));
+    }
+
+    private synchronized void rejectedTimeout(String tenantKey) {
+        TenantState state = tenants.get(tenantKey);
+        if (state != null) {
+            state.rejectedTimeout.increment();
+        }
+    }
+
+    private Permit grant(TenantState state) {
+        state.active++;
+        globalActive++;
+        state.updateGauges();
+        return new Permit(state);
+    }
+
+    private void enqueue(TenantState state, Waiter waiter) {
+        if (state.waiters.isEmpty()) {
+            waitingTenants.addLast(state);
+        }
+        state.waiters.addLast(waiter);
+        state.updateGauges();
+    }
+
+    /**
+     * Una operación en espera se ha cancelado (petición abortada o tiempo agotado).
+     * Si el permiso ya se le había concedido pero no llegó a entregarse, se devuelve.
+     */
+    private void cancel(TenantState state, Waiter waiter) {
+        Permit grantedPermit;
+        synchronized (this) {
+            if (state.waiters.remove(waiter)) {
+                if (state.waiters.isEmpty()) {
+                    waitingTenants.remove(state);
+                }
+                state.updateGauges();
+                return;
+            }
+            grantedPermit = waiter.permit;
+        }
+        if (grantedPermit != null) {
+            grantedPermit.release();
+        }
+    }
+
+    private void release(TenantState state) {
+        List<Waiter> granted;
+        synchronized (this) {
+            state.active--;
+            globalActive--;
+            state.updateGauges();
+            granted = dispatch();
+        }
+        // Completar fuera del monitor: el suscriptor continúa en este mismo hilo
+        granted.forEach(waiter -> waiter.sink.success(waiter.permit));
+    }
+
+    /**
+     * Concede permisos a las operaciones en espera, una por tenant y turno, mientras
+     * quede capacidad global y algún tenant con operaciones en espera esté bajo su límite.
+     */
+    private List<Waiter> dispatch() {
+        List<Waiter> granted = new ArrayList<>();
+        boolean progress = true;
+        while (progress && globalActive < config.globalLimit() && !waitingTenants.isEmpty()) {
+            progress = false;
+            for (int turns = waitingTenants.size(); turns > 0 && globalActive < config.globalLimit(); turns--) {
+                TenantState state = waitingTenants.pollFirst();
+                if (state.active < state.limit) {
+                    Waiter waiter = state.waiters.pollFirst();
+                    waiter.permit = grant(state);
+                    granted.add(waiter);
+                    progress = true;
+                }
+                if (!state.waiters.isEmpty()) {
+                    waitingTenants.addLast(state);
+                }
+            }
+        }
+        return granted;
+    }
+
+    private TenantState createState(String tenantKey) {
+        logger.debug("Registrando bulkhead para el tenant '{}'", tenantKey);
+        TenantState state = new TenantState(
+            Counter.builder(REJECTED_METRIC)
+                .description("Operaciones de base de datos rechazadas por el bulkhead del tenant")
+                .tag("tenant", tenantKey)
+                .tag("reason", "queue_full")
+                .register(meterRegistry),
+            Counter.builder(REJECTED_METRIC)
+                .description("Operaciones de base de datos rechazadas por el bulkhead del tenant")
+                .tag("tenant", tenantKey)
+                .tag("reason", "timeout")
+                .register(meterRegistry));
+        Gauge.builder(QUEUED_METRIC, state, tenantState -> tenantState.queuedGauge)
+            .description("Operaciones de base de datos en espera en el bulkhead del tenant")
+            .tag("tenant", tenantKey)
+            .register(meterRegistry);
+        Gauge.builder(ACTIVE_METRIC, state, tenantState -> tenantState.activeGauge)
+            .description("Operaciones de base de datos en curso del tenant")
+            .tag("tenant", tenantKey)
+            .register(meterRegistry);
+        return state;
+    }
+
+    /**
+     * Permiso concedido a una operación. Liberarlo más de una vez no tiene efecto.
+     */
+    public final class Permit {
+
+        private final TenantState state;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(TenantState state) {
+            this.state = state;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                TenantBulkhead.this.release(state);
+            }
+        }
+    }
+
+    /**
+     * Operación en espera de permiso
+     */
+    private static final class Waiter {
+
+        private final MonoSink<Permit> sink;
+        private Permit permit;
+
+        private Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * Estado del bulkhead de un tenant
+     */
+    private static final class TenantState {
+
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+        private final Counter rejectedQueueFull;
+        private final Counter rejectedTimeout;
+        private int limit;
+        private int active;
+
+        // Copias para las métricas, que se leen fuera del monitor
+        private volatile int queuedGauge;
+        private volatile int activeGauge;
+
+        private TenantState(Counter rejectedQueueFull, Counter rejectedTimeout) {
+            this.rejectedQueueFull = rejectedQueueFull;
+            this.rejectedTimeout = rejectedTimeout;
+        }
+
+        private void updateGauges() {
+            queuedGauge = waiters.size();
+            activeGauge = active;
+        }
+    }
+}
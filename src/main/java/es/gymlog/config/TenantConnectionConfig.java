@@ -0,0 +1,72 @@
+package es.gymlog.config;
+
+import es.gymlog.entity.TenantPlan;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
+import org.springframework.data.r2dbc.dialect.PostgresDialect;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Configuración de las conexiones R2DBC para la arquitectura multi-tenant.
+ * Sustituye la {@link ConnectionFactory} autoconfigurada por Spring Boot por una
+ * fábrica que enruta cada operación al pool del esquema (y shard) del tenant actual.
+ */
+@Configuration
+@EnableConfigurationProperties(TenantProperties.class)
+public class TenantConnectionConfig {
+
+    /**
+     * Registra los shards que alojan esquemas de tenant.
+     *
+     * @param r2dbcProperties   Propiedades estándar de conexión (spring.r2dbc), usadas para el shard por defecto.
+     * @param tenantProperties  Propiedades con los shards adicionales.
+     * @param defaultDataSource DataSource JDBC de la aplicación, usado por las migraciones del shard por defecto.
+     * @return El registro de shards.
+     */
+    @Bean
+    public TenantShards tenantShards(R2dbcProperties r2dbcProperties,
+                                     TenantProperties tenantProperties,
+                                     ObjectProvider<DataSource> defaultDataSource) {
+        TenantProperties.ShardConfig defaultShard = new TenantProperties.ShardConfig(
+            r2dbcProperties.getUrl(), r2dbcProperties.getUsername(), r2dbcProperties.getPassword());
+        return new TenantShards(defaultShard, tenantProperties.shards(), defaultDataSource);
+    }
+
+    /**
+     * Crea la fábrica de conexiones con enrutado por tenant.
+     *
+     * @param tenantShards     Shards a los que se enrutan las conexiones.
+     * @param tenantProperties Propiedades de los pools y del bulkhead por tenant.
+     * @param meterRegistry    Registro de métricas del bulkhead.
+     * @return La fábrica de conexiones usada por repositorios, DatabaseClient y transacciones.
+     */
+    @Bean
+    public TenantRoutingConnectionFactory connectionFactory(TenantShards tenantShards,
+                                                            TenantProperties tenantProperties,
+                                                            MeterRegistry meterRegistry) {
+        TenantBulkhead bulkhead = tenantProperties.bulkhead().enabled()
+            ? new TenantBulkhead(tenantProperties.bulkhead(), meterRegistry)
+            : null;
+        return new TenantRoutingConnectionFactory(tenantShards, tenantProperties.pool(), bulkhead);
+    }
+
+    /**
+     * Registra los conversores del plan de tenant, que se guarda en minúsculas en 'public.tenants'.
+     *
+     * @return Las conversiones personalizadas de Spring Data R2DBC.
+     */
+    @Bean
+    public R2dbcCustomConversions r2dbcCustomConversions() {
+        return R2dbcCustomConversions.of(PostgresDialect.INSTANCE, List.of(
+            new TenantPlan.PlanReadingConverter(),
+            new TenantPlan.PlanWritingConverter()));
+    }
+}
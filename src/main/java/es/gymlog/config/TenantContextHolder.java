@@ -0,0 +1,44 @@
+package es.gymlog.config;
+
+import es.gymlog.config.TenantResolver.TenantContext;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.function.Function;
+
+/**
+ * Acceso al contexto de tenant almacenado en el Context de Reactor.
+ * <p>
+ * Es el equivalente multi-tenant a {@code ReactiveSecurityContextHolder}: el
+ * {@link RequestContextWebFilter} guarda el tenant resuelto una vez por petición y
+ * {@link TenantRoutingConnectionFactory} lo lee para elegir el pool de conexiones.
+ */
+public final class TenantContextHolder {
+
+    private static final Class<TenantContext> TENANT_CONTEXT_KEY = TenantContext.class;
+
+    private TenantContextHolder() {
+    }
+
+    /**
+     * Obtiene el contexto de tenant de la suscripción actual, o vacío si no hay ninguno.
+     */
+    public static Mono<TenantContext> getTenantContext() {
+        return Mono.deferContextual(context -> Mono.justOrEmpty(context.<TenantContext>getOrEmpty(TENANT_CONTEXT_KEY)));
+    }
+
+    /**
+     * Crea un Context de Reactor con el tenant indicado, para usar con {@code contextWrite}.
+     */
+    public static Context withTenantContext(TenantContext tenantContext) {
+        return Context.of(TENANT_CONTEXT_KEY, tenantContext);
+    }
+
+    /**
+     * Elimina el tenant del Context de Reactor, para usar con {@code contextWrite} en operaciones
+     * sobre el catálogo de tenants ('public' del shard por defecto) dentro de la petición de un tenant.
+     */
+    public static Function<Context, Context> clearTenantContext() {
+        return context -> context.delete(TENANT_CONTEXT_KEY);
+    }
+}
@@ -1,5 +1,6 @@
 package es.gymlog.config;
 
+import es.gymlog.config.TenantResolver.TenantContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.r2dbc.core.DatabaseClient;
@@ -8,21 +9,21 @@ import reactor.core.publisher.Mono;
 
 /**
  * Configurador de contexto de base de datos dinámico para arquitectura multi-tenant.
- * 
- * En R2DBC reactivo, no podemos cambiar el esquema de la conexión de forma global
- * como en JDBC tradicional. En su lugar, debemos ejecutar "SET search_path" 
- * al inicio de cada operación que requiera contexto de tenant.
- * 
+ *
+ * El esquema de cada operación lo decide {@link TenantRoutingConnectionFactory} a partir
+ * del tenant guardado en el Context de Reactor, por lo que no se ejecuta ningún
+ * "SET search_path" por operación: cada pool de tenant ya tiene su esquema fijado.
+ *
  * Esta clase proporciona utilidades para:
- * 1. Configurar el search_path de PostgreSQL por operación
- * 2. Ejecutar operaciones en el contexto de un tenant
- * 3. Gestionar el contexto de esquema para operaciones de base de datos
+ * 1. Ejecutar operaciones en el contexto del tenant actual
+ * 2. Ejecutar operaciones en el contexto de un esquema concreto (p. ej. fuera de una petición web)
+ * 3. Ejecutar operaciones sobre el esquema 'public'
  */
 @Component
 public class TenantDatabaseConfigurer {
 
     private static final Logger logger = LoggerFactory.getLogger(TenantDatabaseConfigurer.class);
-    
+
     private final DatabaseClient databaseClient;
     private final TenantResolver tenantResolver;
 
@@ -35,8 +36,9 @@ public class TenantDatabaseConfigurer {
      * Ejecuta una operación en el contexto del tenant actual (extraído del JWT)
      */
     public <T> Mono<T> executeInTenantContext(TenantDatabaseOperation<T> operation) {
-        return tenantResolver.resolveSchemaName()
-            .flatMap(schemaName -> executeInSchemaContext(schemaName, operation))
+        return tenantResolver.resolveTenantContext()
+            .switchIfEmpty(Mono.error(new IllegalStateException("No hay un tenant asociado a la petición actual")))
+            .flatMap(tenantContext -> executeInContext(tenantContext, operation))
             .doOnError(error -> logger.error("Error ejecutando operación en contexto de tenant", error));
     }
 
@@ -44,21 +46,7 @@ public class TenantDatabaseConfigurer {
      * Ejecuta una operación en el contexto de un esquema específico
      */
     public <T> Mono<T> executeInSchemaContext(String schemaName, TenantDatabaseOperation<T> operation) {
-        logger.debug("Ejecutando operación en esquema: {}", schemaName);
-        
-        // Configurar search_path para el esquema del tenant
-        return databaseClient.sql("SET search_path TO " + schemaName + ", public")
-            .then()
-            .then(Mono.defer(() -> {
-                try {
-                    return operation.execute(databaseClient);
-                } catch (Exception e) {
-                    return Mono.error(e);
-                }
-            }))
-            .doOnSuccess(result -> logger.debug("Operación completada en esquema: {}", schemaName))
-            .doOnError(error -> logger.error("Error en operación para esquema {}: {}", 
-                                           schemaName, error.getMessage()));
+        return executeInContext(TenantContext.forSchema(schemaName), operation);
     }
 
     /**
@@ -69,23 +57,21 @@ public class TenantDatabaseConfigurer {
         return executeInSchemaContext("public", operation);
     }
 
-    /**
-     * Configura el search_path para un esquema específico y devuelve el DatabaseClient
-     * para uso inmediato. La configuración del search_path es temporal para la conexión actual.
-     */
-    public Mono<DatabaseClient> withSchemaContext(String schemaName) {
-        return databaseClient.sql("SET search_path TO " + schemaName + ", public")
-            .then()
-            .thenReturn(databaseClient)
-            .doOnSuccess(client -> logger.debug("DatabaseClient configurado para esquema: {}", schemaName));
-    }
+    private <T> Mono<T> executeInContext(TenantContext tenantContext, TenantDatabaseOperation<T> operation) {
+        String schemaName = tenantContext.schemaName();
+        logger.debug("Ejecutando operación en esquema: {}", schemaName);
 
-    /**
-     * Configura el search_path para el tenant actual y devuelve el DatabaseClient
-     */
-    public Mono<DatabaseClient> withTenantContext() {
-        return tenantResolver.resolveSchemaName()
-            .flatMap(this::withSchemaContext);
+        return Mono.defer(() -> {
+                try {
+                    return operation.execute(databaseClient);
+                } catch (Exception e) {
+                    return Mono.error(e);
+                }
+            })
+            .contextWrite(TenantContextHolder.withTenantContext(tenantContext))
+            .doOnSuccess(result -> logger.debug("Operación completada en esquema: {}", schemaName))
+            .doOnError(error -> logger.error("Error en operación para esquema {}: {}",
+                                           schemaName, error.getMessage()));
     }
 
     /**
@@ -95,4 +81,4 @@ public class TenantDatabaseConfigurer {
     public interface TenantDatabaseOperation<T> {
         Mono<T> execute(DatabaseClient databaseClient);
     }
-}
\ No newline at end of file
+}
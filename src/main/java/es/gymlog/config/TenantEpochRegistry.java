@@ -0,0 +1,136 @@
+package es.gymlog.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tabla en memoria con el epoch actual de cada tenant activo.
+ * <p>
+ * Los JWT de la aplicación llevan firmados el esquema, el shard, el plan y el epoch del tenant,
+ * así que {@link TenantResolver} construye el contexto de tenant sin consultar 'public.tenants'.
+ * Esta tabla es lo único que se comprueba en cada petición: un token solo se acepta si su epoch
+ * coincide con el actual. El epoch lo aumenta un trigger al desactivar el tenant o cambiar su
+ * esquema, shard o plan, lo que invalida los tokens emitidos antes.
+ * <p>
+ * La tabla se recarga en segundo plano cada {@code refresh-interval} y, en esta instancia,
+ * al invalidar un tenant en {@link TenantResolver#evict(UUID)}. Los tokens de tenants que no
+ * están en la tabla, o con un epoch más reciente, provocan una recarga inmediata, compartida
+ * entre peticiones y como mucho una cada {@code min-refresh-interval}.
+ */
+@Component
+public class TenantEpochRegistry implements SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantEpochRegistry.class);
+
+    private final DatabaseClient databaseClient;
+    private final TenantProperties.EpochConfig config;
+    private final AtomicReference<Mono<Map<UUID, Long>>> inFlightRefresh = new AtomicReference<>();
+
+    private volatile Map<UUID, Long> epochs = Map.of();
+    private volatile long lastRefreshNanos;
+    private Disposable refreshTask;
+
+    public TenantEpochRegistry(DatabaseClient databaseClient, TenantProperties tenantProperties) {
+        this.databaseClient = databaseClient;
+        this.config = tenantProperties.epochs();
+        this.lastRefreshNanos = System.nanoTime() - config.minRefreshInterval().toNanos();
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        refreshTask = Flux.interval(Duration.ZERO, config.refreshInterval())
+            .onBackpressureDrop()
+            .concatMap(tick -> refresh().onErrorResume(error -> Mono.empty()))
+            .subscribe();
+    }
+
+    @Override
+    public void destroy() {
+        if (refreshTask != null) {
+            refreshTask.dispose();
+        }
+    }
+
+    /**
+     * Comprueba que el epoch de un token es el actual del tenant. Un tenant inactivo o
+     * inexistente no tiene epoch actual, por lo que sus tokens nunca son válidos.
+     */
+    public Mono<Boolean> isCurrent(UUID tenantId, long epoch) {
+        Long knownEpoch = epochs.get(tenantId);
+        if (knownEpoch != null && knownEpoch >= epoch) {
+            return Mono.just(knownEpoch == epoch);
+        }
+        // Tenant desconocido o token más reciente que la tabla: puede que la tabla esté desfasada
+        return refreshOnMiss().map(refreshedEpochs -> Long.valueOf(epoch).equals(refreshedEpochs.get(tenantId)));
+    }
+
+    /**
+     * Devuelve el epoch actual de un tenant, o vacío si no existe o está inactivo
+     */
+    public Mono<Long> currentEpoch(UUID tenantId) {
+        Long knownEpoch = epochs.get(tenantId);
+        if (knownEpoch != null) {
+            return Mono.just(knownEpoch);
+        }
+        return refreshOnMiss().mapNotNull(refreshedEpochs -> refreshedEpochs.get(tenantId));
+    }
+
+    /**
+     * Recarga la tabla en segundo plano, p. ej. tras modificar un tenant en esta instancia
+     */
+    public void refreshNow() {
+        refresh().subscribe(null, error -> { });
+    }
+
+    private Mono<Map<UUID, Long>> refreshOnMiss() {
+        if (System.nanoTime() - lastRefreshNanos < config.minRefreshInterval().toNanos()) {
+            return Mono.just(epochs);
+        }
+        return refresh().onErrorResume(error -> Mono.just(epochs));
+    }
+
+    /**
+     * Recarga los epochs de los tenants activos. Las recargas simultáneas comparten la consulta.
+     */
+    private Mono<Map<UUID, Long>> refresh() {
+        Mono<Map<UUID, Long>> inFlight = inFlightRefresh.get();
+        if (inFlight != null) {
+            return inFlight;
+        }
+
+        Mono<Map<UUID, Long>> refresh = Mono.defer(() -> {
+                lastRefreshNanos = System.nanoTime();
+                return databaseClient.sql("SELECT id, epoch FROM public.tenants WHERE is_active = true")
+                    .map(row -> Map.entry(row.get("id", UUID.class), row.get("epoch", Long.class)))
+                    .all()
+                    .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+            })
+            .<Map<UUID, Long>>map(Map::copyOf)
+            .doOnNext(loadedEpochs -> {
+                epochs = loadedEpochs;
+                logger.debug("Epochs de tenant recargados: {} tenants activos", loadedEpochs.size());
+            })
+            .doOnError(error -> logger.error("Error recargando los epochs de tenant: {}", error.getMessage()))
+            // Consulta sobre el catálogo de tenants, aunque se dispare dentro de la petición de un tenant
+            .contextWrite(TenantContextHolder.clearTenantContext())
+            .doFinally(signal -> inFlightRefresh.set(null))
+            .cache();
+        if (!inFlightRefresh.compareAndSet(null, refresh)) {
+            Mono<Map<UUID, Long>> concurrentRefresh = inFlightRefresh.get();
+            return concurrentRefresh != null ? concurrentRefresh : Mono.just(epochs);
+        }
+        return refresh;
+    }
+}
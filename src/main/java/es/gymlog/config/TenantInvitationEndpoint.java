@@ -0,0 +1,36 @@
+package es.gymlog.config;
+
+import es.gymlog.service.TenantMembershipService;
+import es.gymlog.service.TenantMembershipService.TenantInvitation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+/**
+ * Endpoint de administración de invitaciones a gimnasios, expuesto en /management/tenantinvitations
+ * (solo para administradores).
+ * <ul>
+ *   <li>{@code POST /management/tenantinvitations/{tenantId}} con {@code {"email": "..."}}:
+ *       invita a la cuenta social con ese email a darse de alta en el gimnasio
+ *       ({@link TenantMembershipService}).</li>
+ * </ul>
+ */
+@Component
+@Endpoint(id = "tenantinvitations")
+public class TenantInvitationEndpoint {
+
+    private final TenantMembershipService tenantMembershipService;
+
+    public TenantInvitationEndpoint(TenantMembershipService tenantMembershipService) {
+        this.tenantMembershipService = tenantMembershipService;
+    }
+
+    @WriteOperation
+    public Mono<TenantInvitation> invite(@Selector UUID tenantId, String email) {
+        return tenantMembershipService.invite(tenantId, email);
+    }
+}
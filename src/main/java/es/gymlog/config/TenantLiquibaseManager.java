@@ -1,6 +1,9 @@
 package es.gymlog.config;
 
 import es.gymlog.repository.TenantRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.spi.R2dbcException;
 import liquibase.Contexts;
 import liquibase.LabelExpression;
 import liquibase.Liquibase;
@@ -11,57 +14,142 @@ import liquibase.exception.LiquibaseException;
 import liquibase.resource.ClassLoaderResourceAccessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * Gestor de migraciones Liquibase para arquitectura multi-tenant.
- * 
+ *
  * Este componente se ejecuta automáticamente al arrancar la aplicación y:
  * 1. Ejecuta migraciones en el esquema 'public' (tabla de tenants)
- * 2. Obtiene la lista de todos los tenants activos
- * 3. Itera sobre cada tenant y ejecuta migraciones en su esquema
- * 4. Crea esquemas que no existan automáticamente
+ * 2. Obtiene la lista de todos los tenants activos y el shard en el que reside cada uno
+ * 3. Omite los esquemas cuya huella del changelog coincide con la actual, sin iniciar Liquibase
+ * 4. Migra el resto de esquemas en paralelo, con un número acotado de hilos
+ * 5. Crea esquemas que no existan automáticamente
+ *
+ * El tiempo de cada migración se publica en la métrica {@code gymlog.tenant.migration},
+ * etiquetada por esquema y resultado (migrated, cloned, skipped, failed).
+ *
+ * En modo {@code lazy} (gymlog.tenants.migration.mode) solo se migra 'public' durante el
+ * arranque. Cada esquema se migra en la primera petición resuelta por {@link TenantResolver}
+ * ({@link #ensureMigrated(String, String)}): las peticiones concurrentes esperan a una única
+ * migración en curso por esquema, y un proceso en segundo plano migra los tenants restantes.
+ *
+ * El esquema plantilla {@code gym_template} se mantiene siempre migrado para que los nuevos
+ * tenants se creen clonándolo en una única operación en el servidor
+ * ({@link #runMigrationsForNewTenant(String, String)}) en lugar de reproducir todo el changelog.
+ *
+ * Los esquemas de tenant se migran en la instancia de su shard ({@link TenantShards}); el
+ * esquema 'public', la plantilla y las huellas de migración residen en el shard por defecto.
  */
 @Component
-public class TenantLiquibaseManager implements SmartInitializingSingleton {
+public class TenantLiquibaseManager implements SmartInitializingSingleton, DisposableBean {
 
     private static final Logger logger = LoggerFactory.getLogger(TenantLiquibaseManager.class);
-    
+
+    private static final String CHANGELOG_RESOURCES = "classpath:db/changelog/*";
+    /** Cabecera de un changeset en formato SQL; el grupo 1 son sus atributos */
+    private static final Pattern CHANGESET_HEADER = Pattern.compile("^--\\s*changeset\\b(.*)$", Pattern.MULTILINE);
+    private static final Pattern CHANGESET_CONTEXT = Pattern.compile("\\bcontext:(\\S+)");
+    private static final String MIGRATION_TIMER = "gymlog.tenant.migration";
+    private static final String TEMPLATE_SCHEMA = "gym_template";
+    /** undefined_function (sin clone_tenant_schema) e invalid_schema_name (sin plantilla) */
+    private static final Set<String> TEMPLATE_MISSING_SQL_STATES = Set.of("42883", "3F000");
+
     private final DataSource dataSource;
+    private final TenantShards tenantShards;
+    private final DatabaseClient databaseClient;
     private final LiquibaseProperties liquibaseProperties;
     private final TenantRepository tenantRepository;
+    private final TenantProperties.MigrationConfig migrationConfig;
+    private final MeterRegistry meterRegistry;
+    private final String changelogFingerprint;
+    private final ExecutorService migrationExecutor;
+    private final Scheduler migrationScheduler;
 
-    public TenantLiquibaseManager(DataSource dataSource, 
+    // Migración (en curso o completada) de cada esquema en modo lazy
+    private final Map<String, Mono<Void>> tenantMigrations = new ConcurrentHashMap<>();
+    private volatile Disposable backgroundSweeper;
+
+    public TenantLiquibaseManager(TenantShards tenantShards,
+                                 DatabaseClient databaseClient,
                                  LiquibaseProperties liquibaseProperties,
-                                 TenantRepository tenantRepository) {
-        this.dataSource = dataSource;
+                                 TenantRepository tenantRepository,
+                                 TenantProperties tenantProperties,
+                                 MeterRegistry meterRegistry) {
+        this.dataSource = tenantShards.dataSource(TenantShards.DEFAULT_SHARD);
+        this.tenantShards = tenantShards;
+        this.databaseClient = databaseClient;
         this.liquibaseProperties = liquibaseProperties;
         this.tenantRepository = tenantRepository;
+        this.migrationConfig = tenantProperties.migration();
+        this.meterRegistry = meterRegistry;
+        this.changelogFingerprint = computeChangelogFingerprint();
+        this.migrationExecutor = Executors.newFixedThreadPool(
+            migrationConfig.parallelism(),
+            Thread.ofPlatform().name("tenant-migration-", 0).daemon(true).factory());
+        this.migrationScheduler = Schedulers.fromExecutorService(migrationExecutor);
     }
 
     @Override
     public void afterSingletonsInstantiated() {
         logger.info("Iniciando gestión de migraciones multi-tenant...");
-        
+
         try {
             // Paso 1: Ejecutar migraciones en esquema public (solo tabla tenants)
             runPublicSchemaMigrations();
-            
+
+            // Paso 1b: Mantener al día el esquema plantilla usado para crear nuevos tenants
+            runTemplateSchemaMigrations();
+
             // Paso 2: Obtener lista de tenants y ejecutar migraciones en cada esquema
-            runTenantMigrations();
-            
+            // (o programarlas en segundo plano en modo lazy)
+            if (migrationConfig.mode() == TenantProperties.MigrationMode.LAZY) {
+                scheduleLazyTenantMigrations();
+            } else {
+                runTenantMigrations();
+            }
+
             logger.info("Gestión de migraciones multi-tenant completada exitosamente");
-            
+
         } catch (Exception e) {
             logger.error("Error crítico durante la gestión de migraciones multi-tenant", e);
             throw new RuntimeException("Fallo en migraciones multi-tenant", e);
@@ -74,83 +162,206 @@ public class TenantLiquibaseManager implements SmartInitializingSingleton {
      */
     private void runPublicSchemaMigrations() throws LiquibaseException, SQLException {
         logger.info("Ejecutando migraciones en esquema 'public'...");
-        
+
         try (Connection connection = dataSource.getConnection()) {
             Database database = DatabaseFactory.getInstance()
                 .findCorrectDatabaseImplementation(new JdbcConnection(connection));
-            
+
             // Configurar para usar esquema public
             database.setDefaultSchemaName("public");
-            
+
             try (Liquibase liquibase = new Liquibase(
                     liquibaseProperties.getChangeLog(),
                     new ClassLoaderResourceAccessor(),
                     database)) {
-                
+
                 // Solo ejecutar changesets específicos para public (tenants)
                 // Usamos contextos para filtrar - solo el changeset de tenants
                 liquibase.update(new Contexts("public"), new LabelExpression());
-                
+
                 logger.info("Migraciones en esquema 'public' completadas");
             }
         }
     }
 
     /**
-     * Obtiene la lista de tenants activos y ejecuta migraciones en cada esquema
+     * Migra el esquema plantilla si su huella no coincide con la del changelog actual
+     */
+    private void runTemplateSchemaMigrations() throws LiquibaseException, SQLException {
+        if (isUpToDate(TEMPLATE_SCHEMA)) {
+            recordMigrationTime(TEMPLATE_SCHEMA, "skipped", 0);
+            logger.info("Esquema plantilla '{}' ya actualizado", TEMPLATE_SCHEMA);
+            return;
+        }
+        migrateTenant(TenantShards.DEFAULT_SHARD, TEMPLATE_SCHEMA);
+    }
+
+    /**
+     * Obtiene la lista de tenants activos y ejecuta en paralelo las migraciones
+     * de los esquemas que no están al día con el changelog actual
      */
-    private void runTenantMigrations() {
+    private void runTenantMigrations() throws SQLException {
         logger.info("Obteniendo lista de tenants activos...");
-        
-        // Usar bloqueo reactivo para obtener los esquemas
-        List<String> schemaNames = tenantRepository.findAllActiveSchemaNames()
-            .collectList()
-            .block(Duration.ofSeconds(30));
-        
-        if (schemaNames == null || schemaNames.isEmpty()) {
+
+        List<TenantSchema> tenantSchemas = findActiveTenantSchemas();
+        if (tenantSchemas.isEmpty()) {
             logger.warn("No se encontraron tenants activos. Creando tenant demo por defecto...");
             createDemoTenantSchema();
             return;
         }
-        
-        logger.info("Encontrados {} tenants activos: {}", schemaNames.size(), schemaNames);
-        
-        // Ejecutar migraciones para cada esquema de tenant
-        for (String schemaName : schemaNames) {
-            try {
-                runMigrationsForTenant(schemaName);
-            } catch (Exception e) {
-                logger.error("Error ejecutando migraciones para tenant '{}': {}", 
-                           schemaName, e.getMessage(), e);
-                // Continuar con el siguiente tenant en lugar de fallar completamente
-            }
+
+        logger.info("Encontrados {} tenants activos: {}", tenantSchemas.size(), tenantSchemas);
+
+        // Omitir los esquemas cuya huella coincide con la del changelog actual
+        Map<String, String> appliedFingerprints = loadAppliedFingerprints();
+        Map<Boolean, List<TenantSchema>> schemasByUpToDate = tenantSchemas.stream()
+            .collect(Collectors.partitioningBy(tenantSchema ->
+                changelogFingerprint.equals(appliedFingerprints.get(tenantSchema.schemaName()))));
+        List<TenantSchema> pendingSchemas = schemasByUpToDate.get(false);
+        schemasByUpToDate.get(true).forEach(tenantSchema -> recordMigrationTime(tenantSchema.schemaName(), "skipped", 0));
+
+        logger.info("{} esquemas ya actualizados; {} pendientes de migrar con paralelismo {}",
+                   schemasByUpToDate.get(true).size(), pendingSchemas.size(), migrationConfig.parallelism());
+
+        // Ejecutar migraciones para cada esquema pendiente en el pool de hilos acotado
+        CompletableFuture.allOf(pendingSchemas.stream()
+                .map(tenantSchema -> CompletableFuture.runAsync(() -> {
+                    try {
+                        migrateTenant(tenantSchema.shard(), tenantSchema.schemaName());
+                    } catch (Exception e) {
+                        // Continuar con el siguiente tenant en lugar de fallar completamente
+                        logger.error("Error ejecutando migraciones para tenant '{}': {}",
+                                   tenantSchema.schemaName(), e.getMessage(), e);
+                    }
+                }, migrationExecutor))
+                .toArray(CompletableFuture[]::new))
+            .join();
+    }
+
+    /**
+     * Modo lazy: registra como migrados los esquemas ya al día y programa en segundo plano
+     * la migración del resto, compartiendo la migración en curso con las peticiones que lleguen.
+     */
+    private void scheduleLazyTenantMigrations() throws SQLException {
+        List<TenantSchema> tenantSchemas = findActiveTenantSchemas();
+        if (tenantSchemas.isEmpty()) {
+            logger.warn("No se encontraron tenants activos. Creando tenant demo por defecto...");
+            createDemoTenantSchema();
+            return;
         }
+
+        Map<String, String> appliedFingerprints = loadAppliedFingerprints();
+        List<TenantSchema> pendingSchemas = tenantSchemas.stream()
+            .filter(tenantSchema -> {
+                if (changelogFingerprint.equals(appliedFingerprints.get(tenantSchema.schemaName()))) {
+                    tenantMigrations.put(tenantSchema.schemaName(), Mono.empty());
+                    return false;
+                }
+                return true;
+            })
+            .toList();
+
+        logger.info("Modo lazy: {} esquemas ya actualizados; {} se migrarán bajo demanda o en segundo plano",
+                   tenantSchemas.size() - pendingSchemas.size(), pendingSchemas.size());
+
+        // Dejar al menos un hilo libre para las migraciones disparadas por peticiones
+        int sweeperConcurrency = Math.max(1, migrationConfig.parallelism() - 1);
+        backgroundSweeper = Flux.fromIterable(pendingSchemas)
+            .delaySubscription(migrationConfig.sweeperDelay())
+            .flatMap(tenantSchema -> ensureMigrated(tenantSchema.shard(), tenantSchema.schemaName())
+                .onErrorResume(error -> Mono.empty()), sweeperConcurrency)
+            .subscribe(null,
+                error -> logger.error("Error en la migración en segundo plano de tenants", error),
+                () -> logger.info("Migración en segundo plano de tenants completada"));
     }
 
     /**
-     * Ejecuta migraciones de Liquibase para un tenant específico
+     * Obtiene el shard y el esquema de todos los tenants activos
      */
-    private void runMigrationsForTenant(String schemaName) throws LiquibaseException, SQLException {
-        logger.info("Ejecutando migraciones para tenant '{}'...", schemaName);
-        
-        try (Connection connection = dataSource.getConnection()) {
+    private List<TenantSchema> findActiveTenantSchemas() {
+        // Usar bloqueo reactivo para obtener los esquemas
+        List<TenantSchema> tenantSchemas = tenantRepository.findByIsActiveTrue()
+            .map(tenant -> new TenantSchema(tenant.shard(), tenant.schemaName()))
+            .collectList()
+            .block(Duration.ofSeconds(30));
+        return tenantSchemas == null ? List.of() : tenantSchemas;
+    }
+
+    /**
+     * Garantiza que el esquema indicado está migrado antes de usarlo.
+     * <p>
+     * En modo eager no hace nada (todos los esquemas se migraron al arrancar). En modo lazy,
+     * la primera llamada para un esquema inicia su migración en el pool de migraciones y las
+     * llamadas concurrentes esperan a esa misma migración. Si falla, se descarta para que
+     * una petición posterior pueda reintentarla.
+     */
+    public Mono<Void> ensureMigrated(String shard, String schemaName) {
+        if (migrationConfig.mode() != TenantProperties.MigrationMode.LAZY) {
+            return Mono.empty();
+        }
+        return tenantMigrations.computeIfAbsent(schemaName, key -> createLazyMigration(shard, schemaName));
+    }
+
+    private Mono<Void> createLazyMigration(String shard, String schemaName) {
+        return Mono.<Void>fromRunnable(() -> {
+                try {
+                    if (isUpToDate(schemaName)) {
+                        recordMigrationTime(schemaName, "skipped", 0);
+                    } else {
+                        migrateTenant(shard, schemaName);
+                    }
+                } catch (Exception e) {
+                    logger.error("Error ejecutando migraciones para tenant '{}': {}",
+                               schemaName, e.getMessage(), e);
+                    throw new IllegalStateException("Error en migraciones para tenant: " + schemaName, e);
+                }
+            })
+            .subscribeOn(migrationScheduler)
+            .doOnError(error -> tenantMigrations.remove(schemaName))
+            .cache();
+    }
+
+    /**
+     * Migra un esquema de tenant en la instancia de su shard registrando su duración.
+     * También lo usa {@link TenantShardMover} para preparar el esquema en el shard de destino.
+     */
+    void migrateTenant(String shard, String schemaName) throws LiquibaseException, SQLException {
+        long start = System.nanoTime();
+        String outcome = "failed";
+        try {
+            runMigrationsForTenant(shard, schemaName);
+            outcome = "migrated";
+        } finally {
+            recordMigrationTime(schemaName, outcome, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Ejecuta migraciones de Liquibase para un tenant específico y guarda la huella
+     * del changelog aplicado
+     */
+    private void runMigrationsForTenant(String shard, String schemaName) throws LiquibaseException, SQLException {
+        logger.info("Ejecutando migraciones para tenant '{}' en el shard '{}'...", schemaName, shard);
+
+        try (Connection connection = tenantShards.dataSource(shard).getConnection()) {
             // Crear esquema si no existe
             createSchemaIfNotExists(connection, schemaName);
-            
+
             Database database = DatabaseFactory.getInstance()
                 .findCorrectDatabaseImplementation(new JdbcConnection(connection));
-            
+
             // Configurar para usar el esquema del tenant
             database.setDefaultSchemaName(schemaName);
-            
+
             try (Liquibase liquibase = new Liquibase(
                     liquibaseProperties.getChangeLog(),
                     new ClassLoaderResourceAccessor(),
                     database)) {
-                
+
                 // Ejecutar todas las migraciones excepto las del contexto 'public'
                 liquibase.update(new Contexts("tenant"), new LabelExpression());
-                
+                saveAppliedFingerprint(schemaName);
+
                 logger.info("Migraciones completadas para tenant '{}'", schemaName);
             }
         }
@@ -161,20 +372,131 @@ public class TenantLiquibaseManager implements SmartInitializingSingleton {
      */
     private void createSchemaIfNotExists(Connection connection, String schemaName) throws SQLException {
         String createSchemaSQL = "CREATE SCHEMA IF NOT EXISTS " + schemaName;
-        
+
         try (Statement statement = connection.createStatement()) {
             statement.execute(createSchemaSQL);
             logger.debug("Esquema '{}' verificado/creado", schemaName);
         }
     }
 
+    /**
+     * Obtiene la huella del changelog aplicado en cada esquema de tenant
+     */
+    private Map<String, String> loadAppliedFingerprints() throws SQLException {
+        Map<String, String> fingerprints = new HashMap<>();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(
+                 "SELECT schema_name, changelog_fingerprint FROM public.tenant_schema_versions")) {
+            while (resultSet.next()) {
+                fingerprints.put(resultSet.getString(1), resultSet.getString(2));
+            }
+        }
+        return fingerprints;
+    }
+
+    /**
+     * Comprueba si la huella aplicada en el esquema coincide con la del changelog actual
+     */
+    private boolean isUpToDate(String schemaName) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT changelog_fingerprint FROM public.tenant_schema_versions WHERE schema_name = ?")) {
+            statement.setString(1, schemaName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && changelogFingerprint.equals(resultSet.getString(1));
+            }
+        }
+    }
+
+    /**
+     * Registra la huella del changelog actual como aplicada en el esquema indicado.
+     * Las huellas de todos los shards se guardan en el esquema 'public' del shard por defecto.
+     */
+    private void saveAppliedFingerprint(String schemaName) throws SQLException {
+        String upsertSQL = """
+            INSERT INTO public.tenant_schema_versions (schema_name, changelog_fingerprint, migrated_at)
+            VALUES (?, ?, CURRENT_TIMESTAMP)
+            ON CONFLICT (schema_name) DO UPDATE
+            SET changelog_fingerprint = EXCLUDED.changelog_fingerprint, migrated_at = EXCLUDED.migrated_at
+            """;
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(upsertSQL)) {
+            statement.setString(1, schemaName);
+            statement.setString(2, changelogFingerprint);
+            statement.executeUpdate();
+        }
+    }
+
+    private void recordMigrationTime(String schemaName, String outcome, long durationNanos) {
+        Timer.builder(MIGRATION_TIMER)
+            .description("Duración de las migraciones Liquibase por esquema de tenant")
+            .tag("schema", schemaName)
+            .tag("outcome", outcome)
+            .register(meterRegistry)
+            .record(Duration.ofNanos(durationNanos));
+    }
+
+    /**
+     * Calcula una huella SHA-256 de los changesets de contexto 'tenant' del changelog. Cualquier
+     * cambio en ellos (nuevo changeset o modificación) produce una huella distinta y fuerza la
+     * migración de los esquemas de tenant; los changesets de 'public' no cuentan, porque no se
+     * aplican en esos esquemas.
+     */
+    private static String computeChangelogFingerprint() {
+        try {
+            Resource[] resources = new PathMatchingResourcePatternResolver().getResources(CHANGELOG_RESOURCES);
+            Arrays.sort(resources, Comparator.comparing(Resource::getFilename, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Resource resource : resources) {
+                String filename = resource.getFilename();
+                if (filename == null || !filename.endsWith(".sql")) {
+                    continue;
+                }
+                String changelog;
+                try (InputStream inputStream = resource.getInputStream()) {
+                    changelog = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+                }
+                for (String changeset : tenantChangesets(changelog)) {
+                    digest.update(filename.getBytes(StandardCharsets.UTF_8));
+                    digest.update(changeset.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No se pudo calcular la huella del changelog", e);
+        }
+    }
+
+    /**
+     * Changesets de un fichero en formato SQL de Liquibase cuyo contexto incluye 'tenant', cada
+     * uno desde su línea "-- changeset" hasta la siguiente
+     */
+    private static List<String> tenantChangesets(String changelog) {
+        List<String> changesets = new ArrayList<>();
+        Matcher header = CHANGESET_HEADER.matcher(changelog);
+        boolean found = header.find();
+        while (found) {
+            int start = header.start();
+            Matcher context = CHANGESET_CONTEXT.matcher(header.group(1));
+            boolean tenant = context.find() && Arrays.asList(context.group(1).split(",")).contains("tenant");
+            found = header.find();
+            if (tenant) {
+                changesets.add(changelog.substring(start, found ? header.start() : changelog.length()));
+            }
+        }
+        return changesets;
+    }
+
     /**
      * Crea el esquema para el tenant demo si no existen tenants
      */
     private void createDemoTenantSchema() {
         try (Connection connection = dataSource.getConnection()) {
             createSchemaIfNotExists(connection, "gym_demo");
-            runMigrationsForTenant("gym_demo");
+            runMigrationsForTenant(TenantShards.DEFAULT_SHARD, "gym_demo");
             logger.info("Esquema demo 'gym_demo' creado y migrado");
         } catch (Exception e) {
             logger.error("Error creando esquema demo", e);
@@ -182,19 +504,86 @@ public class TenantLiquibaseManager implements SmartInitializingSingleton {
     }
 
     /**
-     * Método público para ejecutar migraciones en un nuevo tenant
-     * (usado cuando se crea un tenant dinámicamente)
+     * Método público para crear el esquema de un nuevo tenant en su shard
+     * (usado cuando se crea un tenant dinámicamente).
+     * <p>
+     * Clona el esquema plantilla (tablas, índices, secuencias, claves foráneas, datos semilla
+     * e historial de Liquibase) con {@code public.clone_tenant_schema} en una única sentencia
+     * transaccional del shard, sin ocupar un hilo JDBC. Solo si el shard no tiene la plantilla o
+     * la función (p. ej. un shard distinto del por defecto) se ejecutan las migraciones de
+     * Liquibase en el pool de migraciones. Cualquier otro error, como que el esquema ya exista,
+     * se propaga: el tenant nuevo no debe quedar asociado a un esquema existente.
+     *
+     * @param shard      Shard en el que se crea el esquema.
+     * @param schemaName Esquema del nuevo tenant.
      */
-    public Mono<Void> runMigrationsForNewTenant(String schemaName) {
-        return Mono.fromRunnable(() -> {
-            try {
-                logger.info("Ejecutando migraciones para nuevo tenant '{}'...", schemaName);
-                runMigrationsForTenant(schemaName);
-                logger.info("Migraciones completadas para nuevo tenant '{}'", schemaName);
-            } catch (Exception e) {
-                logger.error("Error ejecutando migraciones para nuevo tenant '{}'", schemaName, e);
-                throw new RuntimeException("Error en migraciones para tenant: " + schemaName, e);
+    public Mono<Void> runMigrationsForNewTenant(String shard, String schemaName) {
+        return Mono.defer(() -> {
+                long start = System.nanoTime();
+                logger.info("Clonando esquema plantilla '{}' para nuevo tenant '{}' en el shard '{}'...",
+                           TEMPLATE_SCHEMA, schemaName, shard);
+                return shardDatabaseClient(shard)
+                    .sql("SELECT public.clone_tenant_schema(:sourceSchema, :targetSchema)")
+                    .bind("sourceSchema", TEMPLATE_SCHEMA)
+                    .bind("targetSchema", schemaName)
+                    .then()
+                    // La función y la plantilla están en 'public' del shard, no en el esquema de quien llama
+                    .contextWrite(TenantContextHolder.clearTenantContext())
+                    .doOnSuccess(result -> {
+                        recordMigrationTime(schemaName, "cloned", System.nanoTime() - start);
+                        logger.info("Esquema de nuevo tenant '{}' creado desde la plantilla", schemaName);
+                    });
+            })
+            .onErrorResume(TenantLiquibaseManager::isTemplateMissing, error -> {
+                logger.warn("El shard '{}' no tiene la plantilla para '{}' ({}). Ejecutando migraciones de Liquibase...",
+                           shard, schemaName, error.getMessage());
+                return Mono.<Void>fromRunnable(() -> {
+                        try {
+                            migrateTenant(shard, schemaName);
+                        } catch (Exception e) {
+                            logger.error("Error ejecutando migraciones para nuevo tenant '{}'", schemaName, e);
+                            throw new RuntimeException("Error en migraciones para tenant: " + schemaName, e);
+                        }
+                    })
+                    .subscribeOn(migrationScheduler);
+            })
+            .doOnSuccess(result -> tenantMigrations.put(schemaName, Mono.empty()));
+    }
+
+    /**
+     * Cliente del esquema 'public' del shard: el de la aplicación para el shard por defecto y
+     * uno sin pool para el resto (la creación de tenants es poco frecuente)
+     */
+    private DatabaseClient shardDatabaseClient(String shard) {
+        if (TenantShards.DEFAULT_SHARD.equals(shard)) {
+            return databaseClient;
+        }
+        return DatabaseClient.create(tenantShards.createConnectionFactory(shard));
+    }
+
+    /**
+     * Indica si el clonado falló porque el shard no tiene la función o el esquema plantilla
+     */
+    private static boolean isTemplateMissing(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof R2dbcException r2dbcException) {
+                return TEMPLATE_MISSING_SQL_STATES.contains(r2dbcException.getSqlState());
             }
-        });
+        }
+        return false;
+    }
+
+    /**
+     * Esquema de un tenant y shard en el que reside
+     */
+    private record TenantSchema(String shard, String schemaName) {}
+
+    @Override
+    public void destroy() {
+        Disposable sweeper = backgroundSweeper;
+        if (sweeper != null) {
+            sweeper.dispose();
+        }
+        migrationScheduler.dispose();
     }
-}
\ No newline at end of file
+}
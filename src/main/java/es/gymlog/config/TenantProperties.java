@@ -0,0 +1,150 @@
+package es.gymlog.config;
+
+import es.gymlog.entity.TenantPlan;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Propiedades de configuración de la arquitectura multi-tenant.
+ * <p>
+ * Se vinculan desde el prefijo "gymlog.tenants" del archivo {@code application.yml}.
+ *
+ * @param pool      Configuración de los pools de conexiones R2DBC por esquema de tenant.
+ * @param cache     Configuración de la caché de contextos de tenant.
+ * @param migration Configuración de las migraciones Liquibase de los esquemas de tenant.
+ * @param bulkhead  Límites de operaciones de base de datos concurrentes por tenant.
+ * @param epochs    Refresco de los epochs de tenant usados para validar los JWT.
+ * @param shards    Instancias de Postgres adicionales que pueden alojar esquemas de tenant,
+ *                  por nombre de shard. El shard "default" es siempre la base de datos de
+ *                  spring.r2dbc, que además contiene el esquema 'public'.
+ */
+@ConfigurationProperties(prefix = "gymlog.tenants")
+public record TenantProperties(
+    @DefaultValue PoolConfig pool,
+    @DefaultValue CacheConfig cache,
+    @DefaultValue MigrationConfig migration,
+    @DefaultValue BulkheadConfig bulkhead,
+    @DefaultValue EpochConfig epochs,
+    Map<String, ShardConfig> shards
+) {
+
+    public TenantProperties {
+        shards = shards == null ? Map.of() : Map.copyOf(shards);
+    }
+
+    /**
+     * Configuración de los pools de conexiones que se crean bajo demanda para cada esquema.
+     *
+     * @param maxSize     Número máximo de conexiones por esquema. No debe ser menor que el
+     *                    límite del bulkhead del plan más alto.
+     * @param maxIdleTime Tiempo máximo que una conexión puede permanecer ociosa dentro del pool.
+     * @param idleTimeout Tiempo sin uso tras el cual se cierra el pool completo de un tenant.
+     */
+    public record PoolConfig(
+        @DefaultValue("8") int maxSize,
+        @DefaultValue("30s") Duration maxIdleTime,
+        @DefaultValue("10m") Duration idleTimeout
+    ) {}
+
+    /**
+     * Configuración de la caché de {@code TenantContext} usada por {@code TenantResolver}.
+     *
+     * @param maximumSize Número máximo de tenants en caché.
+     * @param timeToLive  Tiempo tras el cual una entrada se vuelve a cargar de la base de datos.
+     */
+    public record CacheConfig(
+        @DefaultValue("10000") long maximumSize,
+        @DefaultValue("10m") Duration timeToLive
+    ) {}
+
+    /**
+     * Configuración de las migraciones de esquemas de tenant.
+     *
+     * @param mode         Momento en el que se migran los esquemas de tenant.
+     * @param parallelism  Número máximo de esquemas migrados en paralelo. Cada migración usa
+     *                     una conexión JDBC, por lo que no debe superar el tamaño de su pool.
+     * @param sweeperDelay En modo {@code lazy}, espera tras el arranque antes de migrar en
+     *                     segundo plano los esquemas que aún no han recibido peticiones.
+     */
+    public record MigrationConfig(
+        @DefaultValue("eager") MigrationMode mode,
+        @DefaultValue("4") int parallelism,
+        @DefaultValue("30s") Duration sweeperDelay
+    ) {}
+
+    /**
+     * Configuración del bulkhead por tenant: limita las conexiones en uso de cada tenant según
+     * su plan y reparte de forma equitativa entre tenants las operaciones que esperan turno.
+     *
+     * @param enabled            Activa o desactiva el bulkhead.
+     * @param basic              Operaciones concurrentes permitidas a un tenant del plan basic.
+     * @param premium            Operaciones concurrentes permitidas a un tenant del plan premium.
+     * @param enterprise         Operaciones concurrentes permitidas a un tenant del plan enterprise.
+     * @param globalLimit        Operaciones concurrentes permitidas entre todos los tenants.
+     * @param maxQueuedPerTenant Operaciones en espera por tenant a partir de las cuales se rechazan.
+     * @param maxWait            Tiempo máximo de espera de una operación antes de rechazarla.
+     */
+    public record BulkheadConfig(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("2") int basic,
+        @DefaultValue("4") int premium,
+        @DefaultValue("8") int enterprise,
+        @DefaultValue("50") int globalLimit,
+        @DefaultValue("100") int maxQueuedPerTenant,
+        @DefaultValue("5s") Duration maxWait
+    ) {
+
+        /**
+         * Devuelve el límite de operaciones concurrentes del plan indicado
+         */
+        public int limitFor(TenantPlan plan) {
+            return switch (plan) {
+                case BASIC -> basic;
+                case PREMIUM -> premium;
+                case ENTERPRISE -> enterprise;
+            };
+        }
+    }
+
+    /**
+     * Configuración de la tabla en memoria de epochs de los tenants activos, con la que se
+     * rechazan los JWT de tenants desactivados o modificados sin consultar la base de datos.
+     *
+     * @param refreshInterval    Cada cuánto se recarga la tabla en segundo plano. Es el retraso
+     *                           máximo con el que otra instancia deja de aceptar los tokens de un
+     *                           tenant desactivado.
+     * @param minRefreshInterval Tiempo mínimo entre recargas provocadas por tokens de tenants
+     *                           desconocidos (p. ej. recién creados).
+     */
+    public record EpochConfig(
+        @DefaultValue("30s") Duration refreshInterval,
+        @DefaultValue("5s") Duration minRefreshInterval
+    ) {}
+
+    /**
+     * Conexión a una instancia de Postgres que aloja esquemas de tenant.
+     *
+     * @param url      URL R2DBC de la instancia (p. ej. r2dbc:postgresql://db-2:5432/gymlog).
+     *                 La URL JDBC usada por las migraciones se deriva de ella.
+     * @param username Usuario de la base de datos.
+     * @param password Contraseña de la base de datos.
+     */
+    public record ShardConfig(
+        String url,
+        String username,
+        String password
+    ) {}
+
+    /**
+     * Modos de migración de los esquemas de tenant.
+     */
+    public enum MigrationMode {
+        /** Todos los esquemas se migran antes de terminar el arranque. */
+        EAGER,
+        /** Solo se migra 'public' al arrancar; cada esquema se migra en su primera petición. */
+        LAZY
+    }
+}
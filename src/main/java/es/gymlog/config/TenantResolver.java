@@ -1,5 +1,9 @@
 package es.gymlog.config;
 
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import es.gymlog.entity.TenantPlan;
+import es.gymlog.exception.TenantTokenRevokedException;
 import es.gymlog.repository.TenantRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,59 +16,185 @@ import reactor.core.publisher.Mono;
 import java.util.UUID;
 
 /**
- * Resolvedor de tenant que extrae el tenantId del JWT y resuelve el esquema correspondiente.
+ * Resolvedor de tenant que extrae el tenant del JWT y resuelve el esquema correspondiente.
  * 
  * Este componente es fundamental para la arquitectura multi-tenant ya que:
- * 1. Extrae el tenantId del JWT de cada petición
- * 2. Consulta la tabla de tenants para obtener el schema_name
+ * 1. Extrae el tenant del JWT de cada petición
+ * 2. Obtiene su esquema, shard y plan
  * 3. Proporciona el contexto de tenant para el resto de la aplicación
+ *
+ * Los JWT emitidos en el login llevan firmados el esquema, el shard, el plan y el epoch del
+ * tenant (ver {@link #CLAIM_SCHEMA_NAME} y siguientes), así que el contexto se construye
+ * directamente desde el token. Solo se comprueba, en memoria, que el epoch siga siendo el
+ * actual ({@link TenantEpochRegistry}); si no, el token se rechaza con
+ * {@link TenantTokenRevokedException}. Los tokens sin esos claims (emitidos antes de
+ * incluirlos) se resuelven por tenantId, y solo se aceptan si el tenant tiene epoch actual,
+ * es decir, si sigue activo.
+ *
+ * La relación tenantId → (shard, schema_name) casi nunca cambia, así que se guarda en una caché
+ * asíncrona acotada por tamaño y TTL. Las peticiones concurrentes de un tenant que no está
+ * en caché comparten una única consulta a 'public.tenants'. Cuando un tenant se desactive
+ * o cambie de esquema o de shard debe invalidarse con {@link #evict(UUID)}.
  */
 @Component
 public class TenantResolver {
 
     private static final Logger logger = LoggerFactory.getLogger(TenantResolver.class);
+
+    public static final String CLAIM_TENANT_ID = "tenantId";
+    public static final String CLAIM_TENANT_NAME = "tenantName";
+    public static final String CLAIM_SCHEMA_NAME = "schemaName";
+    public static final String CLAIM_SHARD = "shard";
+    public static final String CLAIM_PLAN = "plan";
+    public static final String CLAIM_TENANT_EPOCH = "tenantEpoch";
     
     private final TenantRepository tenantRepository;
+    private final TenantLiquibaseManager tenantLiquibaseManager;
+    private final TenantEpochRegistry tenantEpochRegistry;
+    private final AsyncLoadingCache<UUID, TenantContext> tenantContextCache;
 
-    public TenantResolver(TenantRepository tenantRepository) {
+    public TenantResolver(TenantRepository tenantRepository,
+                          TenantLiquibaseManager tenantLiquibaseManager,
+                          TenantEpochRegistry tenantEpochRegistry,
+                          TenantProperties tenantProperties) {
         this.tenantRepository = tenantRepository;
+        this.tenantLiquibaseManager = tenantLiquibaseManager;
+        this.tenantEpochRegistry = tenantEpochRegistry;
+        this.tenantContextCache = Caffeine.newBuilder()
+            .maximumSize(tenantProperties.cache().maximumSize())
+            .expireAfterWrite(tenantProperties.cache().timeToLive())
+            .buildAsync((tenantId, executor) -> loadTenantContext(tenantId).toFuture());
     }
 
     /**
-     * Resuelve el contexto de tenant desde el JWT de la petición actual
+     * Resuelve el contexto de tenant de la petición actual: el que ya dejó en el Context
+     * {@link RequestContextWebFilter} o, si no lo hay, el del JWT de la petición.
+     * Devuelve vacío si la petición no está autenticada con un JWT.
      */
     public Mono<TenantContext> resolveTenantContext() {
-        return ReactiveSecurityContextHolder.getContext()
-            .cast(org.springframework.security.core.context.SecurityContext.class)
-            .map(securityContext -> securityContext.getAuthentication())
-            .cast(JwtAuthenticationToken.class)
-            .map(jwtAuthenticationToken -> {
-                Jwt jwt = jwtAuthenticationToken.getToken();
-                String tenantIdStr = jwt.getClaim("tenantId");
-                
-                if (tenantIdStr == null || tenantIdStr.isEmpty()) {
-                    logger.warn("JWT no contiene tenantId válido");
-                    throw new IllegalStateException("JWT debe contener tenantId");
-                }
-                
-                return UUID.fromString(tenantIdStr);
-            })
-            .flatMap(this::resolveTenantContextById)
+        return TenantContextHolder.getTenantContext()
+            .switchIfEmpty(Mono.defer(() -> ReactiveSecurityContextHolder.getContext()
+                .cast(org.springframework.security.core.context.SecurityContext.class)
+                .map(securityContext -> securityContext.getAuthentication())
+                .ofType(JwtAuthenticationToken.class)
+                .flatMap(jwtAuthenticationToken -> resolveTenantContext(jwtAuthenticationToken.getToken()))));
+    }
+
+    /**
+     * Resuelve el contexto de tenant desde un JWT ya verificado
+     */
+    public Mono<TenantContext> resolveTenantContext(Jwt jwt) {
+        return resolveFromClaims(jwt)
+            // En modo de migración lazy, la primera petición de un tenant migra su esquema
+            .flatMap(context -> tenantLiquibaseManager.ensureMigrated(context.shard(), context.schemaName()).thenReturn(context))
             .doOnNext(context -> logger.debug("Contexto de tenant resuelto: {}", context.schemaName()))
             .doOnError(error -> logger.error("Error resolviendo contexto de tenant", error));
     }
 
     /**
-     * Resuelve el contexto de tenant por ID
+     * Construye el contexto de tenant desde los claims del JWT, comprobando solo su epoch
+     */
+    private Mono<TenantContext> resolveFromClaims(Jwt jwt) {
+        String tenantIdStr = jwt.getClaimAsString(CLAIM_TENANT_ID);
+        if (tenantIdStr == null || tenantIdStr.isEmpty()) {
+            logger.warn("JWT no contiene tenantId válido");
+            return Mono.error(new IllegalStateException("JWT debe contener tenantId"));
+        }
+        UUID tenantId = UUID.fromString(tenantIdStr);
+
+        String schemaName = jwt.getClaimAsString(CLAIM_SCHEMA_NAME);
+        Number epoch = jwt.getClaim(CLAIM_TENANT_EPOCH);
+        if (schemaName == null || epoch == null) {
+            // Token emitido antes de incluir el tenant en los claims: sin epoch firmado con el que
+            // comparar, se acepta mientras el tenant siga activo
+            return tenantEpochRegistry.currentEpoch(tenantId)
+                .switchIfEmpty(Mono.error(new TenantTokenRevokedException(
+                    "El tenant del token está inactivo; es necesario iniciar sesión de nuevo")))
+                .flatMap(currentEpoch -> resolveTenantContextAtEpoch(tenantId, currentEpoch));
+        }
+
+        TenantContext context = new TenantContext(
+            tenantId,
+            jwt.getClaimAsString(CLAIM_TENANT_NAME),
+            schemaName,
+            jwt.getClaimAsString(CLAIM_SHARD),
+            TenantPlan.fromString(jwt.getClaimAsString(CLAIM_PLAN)),
+            epoch.longValue()
+        );
+        return tenantEpochRegistry.isCurrent(tenantId, context.epoch())
+            .flatMap(current -> current
+                ? Mono.just(context)
+                : Mono.error(new TenantTokenRevokedException(
+                    "El tenant del token está inactivo o ha cambiado; es necesario iniciar sesión de nuevo")));
+    }
+
+    /**
+     * Resuelve el contexto actual de un tenant activo para emitir un JWT (login). A diferencia
+     * de {@link #resolveTenantContextById(UUID)}, descarta el contexto en caché si es anterior
+     * al epoch actual del tenant, y migra su esquema si aún no lo está.
+     */
+    public Mono<TenantContext> resolveCurrentTenantContext(UUID tenantId) {
+        return tenantEpochRegistry.currentEpoch(tenantId)
+            .switchIfEmpty(Mono.error(new IllegalArgumentException("Tenant no encontrado: " + tenantId)))
+            .flatMap(epoch -> resolveTenantContextAtEpoch(tenantId, epoch))
+            .flatMap(context -> tenantLiquibaseManager.ensureMigrated(context.shard(), context.schemaName()).thenReturn(context));
+    }
+
+    /**
+     * Resuelve el contexto de tenant por ID, descartando el de la caché si es anterior al epoch indicado
+     */
+    private Mono<TenantContext> resolveTenantContextAtEpoch(UUID tenantId, long epoch) {
+        return resolveTenantContextById(tenantId)
+            .flatMap(context -> {
+                if (context.epoch() >= epoch) {
+                    return Mono.just(context);
+                }
+                evict(tenantId);
+                return resolveTenantContextById(tenantId);
+            });
+    }
+
+    /**
+     * Resuelve el contexto de tenant por ID, usando la caché de tenants
      */
     public Mono<TenantContext> resolveTenantContextById(UUID tenantId) {
+        // suppressCancel: cancelar una petición no debe cancelar la carga compartida con otras
+        return Mono.fromFuture(() -> tenantContextCache.get(tenantId), true)
+            .switchIfEmpty(Mono.error(new IllegalArgumentException("Tenant no encontrado: " + tenantId)));
+    }
+
+    /**
+     * Elimina un tenant de la caché. Debe invocarse al desactivar un tenant o cambiar su esquema o shard.
+     */
+    public void evict(UUID tenantId) {
+        logger.info("Invalidando contexto de tenant en caché: {}", tenantId);
+        tenantContextCache.synchronous().invalidate(tenantId);
+        tenantEpochRegistry.refreshNow();
+    }
+
+    /**
+     * Vacía por completo la caché de tenants.
+     */
+    public void evictAll() {
+        tenantContextCache.synchronous().invalidateAll();
+    }
+
+    /**
+     * Carga el contexto de un tenant activo desde 'public.tenants'.
+     * Si no existe o está inactivo se completa vacío y no se guarda en caché.
+     */
+    private Mono<TenantContext> loadTenantContext(UUID tenantId) {
+        logger.debug("Cargando contexto de tenant desde base de datos: {}", tenantId);
         return tenantRepository.findById(tenantId)
+            .filter(tenant -> Boolean.TRUE.equals(tenant.isActive()))
             .map(tenant -> new TenantContext(
                 tenant.id(),
                 tenant.name(),
-                tenant.schemaName()
-            ))
-            .switchIfEmpty(Mono.error(new IllegalArgumentException("Tenant no encontrado: " + tenantId)));
+                tenant.schemaName(),
+                tenant.shard(),
+                tenant.plan(),
+                tenant.epoch() != null ? tenant.epoch() : 0L
+            ));
     }
 
     /**
@@ -85,7 +215,7 @@ public class TenantResolver {
             .cast(JwtAuthenticationToken.class)
             .map(jwtAuthenticationToken -> {
                 Jwt jwt = jwtAuthenticationToken.getToken();
-                String tenantIdStr = jwt.getClaim("tenantId");
+                String tenantIdStr = jwt.getClaim(CLAIM_TENANT_ID);
                 
                 if (tenantIdStr == null || tenantIdStr.isEmpty()) {
                     throw new IllegalStateException("JWT debe contener tenantId");
@@ -114,10 +244,31 @@ public class TenantResolver {
 
     /**
      * Record que representa el contexto de un tenant
+     *
+     * @param epoch Epoch del tenant con el que se obtuvo el contexto (0 en contextos internos).
      */
     public record TenantContext(
         UUID tenantId,
         String tenantName,
-        String schemaName
-    ) {}
+        String schemaName,
+        String shard,
+        TenantPlan plan,
+        long epoch
+    ) {
+
+        /**
+         * Crea un contexto que solo identifica el esquema, para operaciones internas
+         * que no parten de un tenant concreto (migraciones, esquema 'public', etc.)
+         */
+        public static TenantContext forSchema(String schemaName) {
+            return forSchema(TenantShards.DEFAULT_SHARD, schemaName);
+        }
+
+        /**
+         * Crea un contexto que solo identifica el esquema dentro de un shard concreto
+         */
+        public static TenantContext forSchema(String shard, String schemaName) {
+            return new TenantContext(null, null, schemaName, shard, null, 0);
+        }
+    }
 }
\ No newline at end of file
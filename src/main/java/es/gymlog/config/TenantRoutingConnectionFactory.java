@@ -0,0 +1,223 @@
+package es.gymlog.config;
+
+import es.gymlog.config.TenantResolver.TenantContext;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.pool.PoolMetrics;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Wrapped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * {@link ConnectionFactory} que enruta cada conexión al pool del esquema del tenant actual,
+ * en el shard (instancia de Postgres) en el que reside.
+ * <p>
+ * Sustituye al antiguo "SET search_path" por operación, que costaba un round trip extra
+ * y no garantizaba que la siguiente sentencia usara la misma conexión del pool compartido:
+ * <ol>
+ *   <li>El tenant se lee del Context de Reactor ({@link TenantContextHolder}).</li>
+ *   <li>Cada esquema tiene su propio pool pequeño sobre la instancia de su shard
+ *       ({@link TenantShards}), creado perezosamente en el primer uso.</li>
+ *   <li>El search_path se fija una única vez, al crear cada conexión física del pool.</li>
+ *   <li>Los pools de tenants sin actividad se cierran periódicamente.</li>
+ *   <li>Cada conexión de un tenant ocupa un permiso de su {@link TenantBulkhead}, que se
+ *       libera al cerrarla, limitando las operaciones concurrentes según su plan.</li>
+ * </ol>
+ * Las operaciones sin tenant (tabla de tenants, health checks) usan el pool del esquema 'public'
+ * del shard por defecto.
+ * Las operaciones internas sobre un esquema sin plan (migraciones, clonado) no pasan por el bulkhead.
+ */
+public class TenantRoutingConnectionFactory implements ConnectionFactory, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantRoutingConnectionFactory.class);
+
+    private static final String PUBLIC_SCHEMA = "public";
+    private static final Pattern SCHEMA_NAME_PATTERN = Pattern.compile("[a-z_][a-z0-9_]{0,62}");
+
+    private final TenantShards shards;
+    private final TenantProperties.PoolConfig poolConfig;
+    private final TenantBulkhead bulkhead;
+    private final Map<String, ConnectionFactory> shardConnectionFactories = new ConcurrentHashMap<>();
+    private final Map<PoolKey, TenantPool> pools = new ConcurrentHashMap<>();
+    private final Disposable evictionTask;
+
+    /**
+     * @param bulkhead Bulkhead por tenant, o {@code null} si está desactivado.
+     */
+    public TenantRoutingConnectionFactory(TenantShards shards,
+                                          TenantProperties.PoolConfig poolConfig,
+                                          TenantBulkhead bulkhead) {
+        this.shards = shards;
+        this.poolConfig = poolConfig;
+        this.bulkhead = bulkhead;
+        this.evictionTask = Flux.interval(poolConfig.idleTimeout().dividedBy(2))
+            .subscribe(tick -> evictIdlePools());
+    }
+
+    @Override
+    public Mono<Connection> create() {
+        return TenantContextHolder.getTenantContext()
+            .defaultIfEmpty(TenantContext.forSchema(PUBLIC_SCHEMA))
+            .flatMap(tenantContext -> {
+                PoolKey poolKey = new PoolKey(tenantContext.shard(), tenantContext.schemaName());
+                if (bulkhead == null || tenantContext.plan() == null) {
+                    return acquire(poolKey);
+                }
+                return bulkhead.acquire(tenantContext.schemaName(), tenantContext.plan())
+                    .flatMap(permit -> acquire(poolKey)
+                        .map(connection -> releaseOnClose(connection, permit))
+                        .doOnError(error -> permit.release())
+                        .doOnCancel(permit::release));
+            });
+    }
+
+    private Mono<Connection> acquire(PoolKey poolKey) {
+        return pools.computeIfAbsent(poolKey, this::createPool).acquire();
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return shardConnectionFactory(TenantShards.DEFAULT_SHARD).getMetadata();
+    }
+
+    /**
+     * Cierra el pool de un esquema en un shard, p. ej. después de mover el tenant a otro shard.
+     */
+    public void evictPool(String shard, String schemaName) {
+        TenantPool pool = pools.remove(new PoolKey(shard, schemaName));
+        if (pool != null) {
+            logger.info("Cerrando pool de conexiones del esquema '{}' en el shard '{}'", schemaName, shard);
+            pool.dispose();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        evictionTask.dispose();
+        pools.values().forEach(TenantPool::dispose);
+        pools.clear();
+    }
+
+    /**
+     * Crea el pool de un esquema. Cada conexión física fija su search_path al crearse,
+     * por lo que las sentencias posteriores no necesitan ningún round trip adicional.
+     */
+    private TenantPool createPool(PoolKey poolKey) {
+        String schemaName = poolKey.schemaName();
+        if (!SCHEMA_NAME_PATTERN.matcher(schemaName).matches()) {
+            throw new IllegalArgumentException("Nombre de esquema no válido: " + schemaName);
+        }
+
+        String searchPath = PUBLIC_SCHEMA.equals(schemaName) ? PUBLIC_SCHEMA : schemaName + ", " + PUBLIC_SCHEMA;
+        ConnectionPoolConfiguration configuration = ConnectionPoolConfiguration.builder(shardConnectionFactory(poolKey.shard()))
+            .name("tenant-" + poolKey.shard() + "-" + schemaName)
+            .initialSize(0)
+            .maxSize(poolConfig.maxSize())
+            .maxIdleTime(poolConfig.maxIdleTime())
+            .postAllocate(connection -> Flux.from(connection.createStatement("SET search_path TO " + searchPath).execute())
+                .flatMap(Result::getRowsUpdated)
+                .then())
+            .build();
+
+        logger.info("Creando pool de conexiones para esquema '{}' en el shard '{}'", schemaName, poolKey.shard());
+        return new TenantPool(schemaName, new ConnectionPool(configuration));
+    }
+
+    private ConnectionFactory shardConnectionFactory(String shard) {
+        return shardConnectionFactories.computeIfAbsent(shard, shards::createConnectionFactory);
+    }
+
+    /**
+     * Envuelve la conexión para devolver el permiso del bulkhead cuando se cierra
+     * (es decir, cuando vuelve al pool). Implementa {@link Wrapped} para que Spring
+     * pueda acceder a la conexión original.
+     */
+    private static Connection releaseOnClose(Connection connection, TenantBulkhead.Permit permit) {
+        return (Connection) Proxy.newProxyInstance(
+            TenantRoutingConnectionFactory.class.getClassLoader(),
+            new Class<?>[] {Connection.class, Wrapped.class},
+            (proxy, method, args) -> switch (method.getName()) {
+                case "close" -> Mono.from(connection.close()).doFinally(signal -> permit.release());
+                case "unwrap" -> connection;
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "toString" -> "TenantBulkheadConnection[" + connection + "]";
+                default -> {
+                    try {
+                        yield method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                }
+            });
+    }
+
+    /**
+     * Cierra los pools de los tenants que no han tenido actividad durante el tiempo configurado.
+     * El pool del esquema 'public' nunca se cierra.
+     */
+    private void evictIdlePools() {
+        long now = System.nanoTime();
+        pools.forEach((poolKey, pool) -> {
+            if (!PUBLIC_SCHEMA.equals(poolKey.schemaName())
+                && pool.isIdle(now, poolConfig.idleTimeout())
+                && pools.remove(poolKey, pool)) {
+                logger.info("Cerrando pool de conexiones inactivo del esquema '{}' en el shard '{}'",
+                           poolKey.schemaName(), poolKey.shard());
+                pool.dispose();
+            }
+        });
+    }
+
+    /**
+     * Identifica el pool de un esquema dentro de un shard
+     */
+    private record PoolKey(String shard, String schemaName) {}
+
+    /**
+     * Pool de conexiones de un esquema junto con el instante de su último uso.
+     */
+    private static final class TenantPool {
+
+        private final String schemaName;
+        private final ConnectionPool connectionPool;
+        private volatile long lastAccessNanos = System.nanoTime();
+
+        private TenantPool(String schemaName, ConnectionPool connectionPool) {
+            this.schemaName = schemaName;
+            this.connectionPool = connectionPool;
+        }
+
+        private Mono<Connection> acquire() {
+            lastAccessNanos = System.nanoTime();
+            return connectionPool.create();
+        }
+
+        private boolean isIdle(long now, Duration idleTimeout) {
+            boolean inUse = connectionPool.getMetrics()
+                .map(PoolMetrics::acquiredSize)
+                .orElse(0) > 0;
+            return !inUse && now - lastAccessNanos > idleTimeout.toNanos();
+        }
+
+        private void dispose() {
+            connectionPool.disposeLater()
+                .subscribe(null, error -> logger.warn("Error cerrando pool del esquema '{}': {}", schemaName, error.getMessage()));
+        }
+    }
+}
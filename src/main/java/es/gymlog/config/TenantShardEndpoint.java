@@ -0,0 +1,45 @@
+package es.gymlog.config;
+
+import es.gymlog.config.TenantShardMover.TenantMoveResult;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Endpoint de administración de shards de tenant, expuesto en /management/tenantshards
+ * (solo para administradores).
+ * <ul>
+ *   <li>{@code GET /management/tenantshards}: shards configurados.</li>
+ *   <li>{@code POST /management/tenantshards/{tenantId}} con {@code {"targetShard": "..."}}:
+ *       mueve el esquema del tenant a otro shard ({@link TenantShardMover}).</li>
+ * </ul>
+ */
+@Component
+@Endpoint(id = "tenantshards")
+public class TenantShardEndpoint {
+
+    private final TenantShards tenantShards;
+    private final TenantShardMover tenantShardMover;
+
+    public TenantShardEndpoint(TenantShards tenantShards, TenantShardMover tenantShardMover) {
+        this.tenantShards = tenantShards;
+        this.tenantShardMover = tenantShardMover;
+    }
+
+    @ReadOperation
+    public Map<String, Set<String>> shards() {
+        return Map.of("shards", tenantShards.names());
+    }
+
+    @WriteOperation
+    public Mono<TenantMoveResult> moveTenant(@Selector UUID tenantId, String targetShard) {
+        return tenantShardMover.moveTenant(tenantId, targetShard);
+    }
+}
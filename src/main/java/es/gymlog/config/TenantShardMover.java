@@ -0,0 +1,390 @@
+package es.gymlog.config;
+
+import es.gymlog.entity.Tenant;
+import es.gymlog.repository.TenantRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Mueve el esquema de un tenant de un shard (instancia de Postgres) a otro con la aplicación en marcha.
+ * <p>
+ * El movimiento congela solo al tenant afectado:
+ * <ol>
+ *   <li>Desactiva el tenant, de modo que esta instancia rechaza sus peticiones mientras dura la copia.</li>
+ *   <li>Renombra el esquema de origen a {@code <esquema>_moved_<epoch>}. Desde ese momento ninguna
+ *       petición puede resolver sus tablas por nombre, tampoco las de otras instancias que aún no
+ *       hayan visto la desactivación.</li>
+ *   <li>Crea el esquema en el shard de destino aplicando el changelog con Liquibase.</li>
+ *   <li>Bloquea en modo SHARE las tablas del esquema renombrado, lo que espera a que terminen las
+ *       escrituras que ya las tenían abiertas, y copia todas las filas desde esa instantánea, tabla a
+ *       tabla en orden de claves foráneas y en una única transacción de destino. Después ajusta las secuencias.</li>
+ *   <li>Cambia el shard del tenant y lo reactiva.</li>
+ * </ol>
+ * El esquema renombrado se conserva para poder recuperarlo y se elimina manualmente cuando ya no
+ * sea necesario. Si la copia falla, se elimina el esquema de destino, el de origen recupera su
+ * nombre y el tenant se reactiva en su shard original.
+ * <p>
+ * Las cachés de tenant de otras instancias de la aplicación no se invalidan: hasta que recarguen
+ * los epochs (gymlog.tenants.epochs.refresh-interval) sus peticiones fallarán al no encontrar el
+ * esquema de origen, en lugar de escribir en él.
+ */
+@Component
+public class TenantShardMover {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantShardMover.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private final TenantRepository tenantRepository;
+    private final TenantResolver tenantResolver;
+    private final TenantShards tenantShards;
+    private final TenantLiquibaseManager tenantLiquibaseManager;
+    private final TenantRoutingConnectionFactory connectionFactory;
+
+    public TenantShardMover(TenantRepository tenantRepository,
+                            TenantResolver tenantResolver,
+                            TenantShards tenantShards,
+                            TenantLiquibaseManager tenantLiquibaseManager,
+                            TenantRoutingConnectionFactory connectionFactory) {
+        this.tenantRepository = tenantRepository;
+        this.tenantResolver = tenantResolver;
+        this.tenantShards = tenantShards;
+        this.tenantLiquibaseManager = tenantLiquibaseManager;
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Mueve el esquema del tenant indicado al shard de destino
+     */
+    public Mono<TenantMoveResult> moveTenant(UUID tenantId, String targetShard) {
+        return tenantRepository.findById(tenantId)
+            .switchIfEmpty(Mono.error(new IllegalArgumentException("Tenant no encontrado: " + tenantId)))
+            .flatMap(tenant -> {
+                validateMove(tenant, targetShard);
+                logger.info("Moviendo tenant '{}' (esquema '{}') del shard '{}' al shard '{}'...",
+                           tenantId, tenant.schemaName(), tenant.shard(), targetShard);
+                String retiredSchema = retiredSchemaName(tenant.schemaName());
+                return freeze(tenant)
+                    .then(tenantLiquibaseManager.ensureMigrated(tenant.shard(), tenant.schemaName()))
+                    .then(Mono.fromRunnable(() -> renameSchema(tenant.shard(), tenant.schemaName(), retiredSchema))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                    .then(Mono.fromCallable(() -> copySchema(tenant.schemaName(), retiredSchema, tenant.shard(), targetShard))
+                        .subscribeOn(Schedulers.boundedElastic()))
+                    .onErrorResume(error -> rollback(tenant, targetShard, retiredSchema, error))
+                    .flatMap(copiedRows -> switchShard(tenant, targetShard)
+                        .thenReturn(new TenantMoveResult(tenantId, tenant.schemaName(),
+                            tenant.shard(), targetShard, copiedRows, retiredSchema)));
+            })
+            .doOnNext(result -> logger.info("Tenant '{}' movido al shard '{}': {}", tenantId, targetShard, result.copiedRows()))
+            // El catálogo de tenants está en el shard por defecto, aunque quien invoque sea un tenant de otro shard
+            .contextWrite(TenantContextHolder.clearTenantContext());
+    }
+
+    private void validateMove(Tenant tenant, String targetShard) {
+        if (!tenantShards.contains(targetShard)) {
+            throw new IllegalArgumentException("Shard no configurado: " + targetShard);
+        }
+        if (targetShard.equals(tenant.shard())) {
+            throw new IllegalArgumentException("El tenant ya reside en el shard: " + targetShard);
+        }
+        if (!Boolean.TRUE.equals(tenant.isActive())) {
+            throw new IllegalArgumentException("Solo se pueden mover tenants activos: " + tenant.id());
+        }
+    }
+
+    private Mono<Void> freeze(Tenant tenant) {
+        return tenantRepository.save(tenant.withActive(false))
+            .doOnNext(saved -> tenantResolver.evict(tenant.id()))
+            .then();
+    }
+
+    private Mono<Void> switchShard(Tenant tenant, String targetShard) {
+        return tenantRepository.save(tenant.withShard(targetShard).withActive(true))
+            .doOnNext(saved -> {
+                tenantResolver.evict(tenant.id());
+                connectionFactory.evictPool(tenant.shard(), tenant.schemaName());
+            })
+            .then();
+    }
+
+    /**
+     * Deshace un movimiento fallido: elimina el esquema de destino, devuelve su nombre al de
+     * origen y reactiva el tenant en su shard
+     */
+    private <T> Mono<T> rollback(Tenant tenant, String targetShard, String retiredSchema, Throwable error) {
+        logger.error("Error moviendo tenant '{}' al shard '{}'. Restaurando en el shard '{}'",
+                    tenant.id(), targetShard, tenant.shard(), error);
+        return Mono.fromRunnable(() -> dropSchema(targetShard, tenant.schemaName()))
+            .subscribeOn(Schedulers.boundedElastic())
+            .onErrorResume(dropError -> {
+                logger.error("No se pudo eliminar el esquema '{}' del shard '{}'", tenant.schemaName(), targetShard, dropError);
+                return Mono.empty();
+            })
+            .then(Mono.fromRunnable(() -> {
+                    if (schemaExists(tenant.shard(), retiredSchema)) {
+                        renameSchema(tenant.shard(), retiredSchema, tenant.schemaName());
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic()))
+            .then(tenantRepository.save(tenant.withActive(true)))
+            .doOnNext(saved -> tenantResolver.evict(tenant.id()))
+            // Sin su esquema de origen el tenant no puede funcionar: se deja desactivado
+            .onErrorResume(restoreError -> {
+                logger.error("No se pudo restaurar el esquema '{}' del shard '{}'; el tenant '{}' queda desactivado",
+                            retiredSchema, tenant.shard(), tenant.id(), restoreError);
+                return Mono.empty();
+            })
+            .then(Mono.<T>error(error));
+    }
+
+    /**
+     * Crea el esquema en el shard de destino y copia en él todas las filas del esquema de origen,
+     * ya renombrado.
+     *
+     * @return Número de filas copiadas por tabla.
+     */
+    private Map<String, Long> copySchema(String schemaName, String sourceSchema, String sourceShard, String targetShard) throws Exception {
+        tenantLiquibaseManager.migrateTenant(targetShard, schemaName);
+
+        try (Connection source = tenantShards.dataSource(sourceShard).getConnection();
+             Connection target = tenantShards.dataSource(targetShard).getConnection()) {
+            // Instantánea consistente del origen y una única transacción en el destino
+            source.setAutoCommit(false);
+            source.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            target.setAutoCommit(false);
+
+            try {
+                List<String> tables = findTablesInInsertOrder(target, schemaName);
+
+                // Antes de la primera consulta, para que la instantánea incluya las escrituras que
+                // ya tenían abiertas las tablas al renombrar el esquema y ninguna posterior
+                if (!tables.isEmpty()) {
+                    try (Statement statement = source.createStatement()) {
+                        statement.execute("LOCK TABLE " + tables.stream()
+                            .map(table -> quote(sourceSchema) + "." + quote(table))
+                            .collect(Collectors.joining(", ")) + " IN SHARE MODE");
+                    }
+                }
+
+                // Vaciar los datos semilla que haya insertado el changelog en el destino
+                if (!tables.isEmpty()) {
+                    try (Statement statement = target.createStatement()) {
+                        statement.execute("TRUNCATE TABLE " + tables.stream()
+                            .map(table -> quote(schemaName) + "." + quote(table))
+                            .collect(Collectors.joining(", ")));
+                    }
+                }
+
+                Map<String, Long> copiedRows = new LinkedHashMap<>();
+                for (String table : tables) {
+                    copiedRows.put(table, copyTable(source, target, sourceSchema, schemaName, table));
+                }
+                copySequenceValues(source, target, sourceSchema, schemaName);
+
+                target.commit();
+                source.commit();
+                return copiedRows;
+            } catch (Exception e) {
+                target.rollback();
+                source.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Obtiene las tablas de datos del esquema (sin las de Liquibase) ordenadas de forma que
+     * cada tabla aparece después de las tablas a las que referencia
+     */
+    private List<String> findTablesInInsertOrder(Connection connection, String schemaName) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("""
+                SELECT table_name FROM information_schema.tables
+                WHERE table_schema = ? AND table_type = 'BASE TABLE'
+                  AND table_name NOT IN ('databasechangelog', 'databasechangeloglock')
+                ORDER BY table_name
+                """)) {
+            statement.setString(1, schemaName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    tables.add(resultSet.getString(1));
+                }
+            }
+        }
+
+        Map<String, Set<String>> dependencies = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement("""
+                SELECT child.relname, parent.relname
+                FROM pg_constraint con
+                JOIN pg_class child ON child.oid = con.conrelid
+                JOIN pg_class parent ON parent.oid = con.confrelid
+                JOIN pg_namespace n ON n.oid = child.relnamespace
+                WHERE con.contype = 'f' AND n.nspname = ? AND con.conrelid <> con.confrelid
+                """)) {
+            statement.setString(1, schemaName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    dependencies.computeIfAbsent(resultSet.getString(1), table -> new HashSet<>()).add(resultSet.getString(2));
+                }
+            }
+        }
+
+        // Orden topológico (Kahn)
+        List<String> ordered = new ArrayList<>();
+        Set<String> pending = new HashSet<>(tables);
+        Deque<String> ready = new ArrayDeque<>();
+        tables.stream()
+            .filter(table -> Collections.disjoint(dependencies.getOrDefault(table, Set.of()), pending))
+            .forEach(ready::add);
+        while (!ready.isEmpty()) {
+            String table = ready.poll();
+            if (!pending.remove(table)) {
+                continue;
+            }
+            ordered.add(table);
+            tables.stream()
+                .filter(pending::contains)
+                .filter(candidate -> !ready.contains(candidate))
+                .filter(candidate -> Collections.disjoint(dependencies.getOrDefault(candidate, Set.of()), pending))
+                .forEach(ready::add);
+        }
+        if (!pending.isEmpty()) {
+            throw new IllegalStateException("Dependencias circulares entre las tablas: " + pending);
+        }
+        return ordered;
+    }
+
+    private long copyTable(Connection source, Connection target, String sourceSchema, String schemaName, String table) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (PreparedStatement statement = target.prepareStatement("""
+                SELECT column_name FROM information_schema.columns
+                WHERE table_schema = ? AND table_name = ?
+                ORDER BY ordinal_position
+                """)) {
+            statement.setString(1, schemaName);
+            statement.setString(2, table);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    columns.add(resultSet.getString(1));
+                }
+            }
+        }
+
+        String qualifiedTable = quote(schemaName) + "." + quote(table);
+        String columnList = columns.stream().map(TenantShardMover::quote).collect(Collectors.joining(", "));
+        String placeholders = columns.stream().map(column -> "?").collect(Collectors.joining(", "));
+
+        long rows = 0;
+        try (PreparedStatement select = source.prepareStatement(
+                 "SELECT " + columnList + " FROM " + quote(sourceSchema) + "." + quote(table));
+             PreparedStatement insert = target.prepareStatement(
+                 "INSERT INTO " + qualifiedTable + " (" + columnList + ") VALUES (" + placeholders + ")")) {
+            select.setFetchSize(BATCH_SIZE);
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    for (int i = 1; i <= columns.size(); i++) {
+                        insert.setObject(i, resultSet.getObject(i));
+                    }
+                    insert.addBatch();
+                    if (++rows % BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+                }
+            }
+            insert.executeBatch();
+        }
+        logger.debug("Copiadas {} filas de '{}'", rows, qualifiedTable);
+        return rows;
+    }
+
+    private void copySequenceValues(Connection source, Connection target, String sourceSchema, String schemaName) throws SQLException {
+        try (PreparedStatement select = source.prepareStatement(
+                 "SELECT sequencename, last_value FROM pg_sequences WHERE schemaname = ? AND last_value IS NOT NULL");
+             PreparedStatement setval = target.prepareStatement("SELECT setval(?::regclass, ?, true)")) {
+            select.setString(1, sourceSchema);
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    setval.setString(1, quote(schemaName) + "." + quote(resultSet.getString(1)));
+                    setval.setLong(2, resultSet.getLong(2));
+                    setval.execute();
+                }
+            }
+        }
+    }
+
+    private void renameSchema(String shard, String schemaName, String newName) {
+        try (Connection connection = tenantShards.dataSource(shard).getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("ALTER SCHEMA " + quote(schemaName) + " RENAME TO " + quote(newName));
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error renombrando el esquema '" + schemaName + "' del shard '" + shard + "'", e);
+        }
+    }
+
+    private boolean schemaExists(String shard, String schemaName) {
+        try (Connection connection = tenantShards.dataSource(shard).getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM pg_namespace WHERE nspname = ?")) {
+            statement.setString(1, schemaName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error consultando el esquema '" + schemaName + "' del shard '" + shard + "'", e);
+        }
+    }
+
+    private void dropSchema(String shard, String schemaName) {
+        try (Connection connection = tenantShards.dataSource(shard).getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP SCHEMA IF EXISTS " + quote(schemaName) + " CASCADE");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Error eliminando el esquema '" + schemaName + "' del shard '" + shard + "'", e);
+        }
+    }
+
+    private static String retiredSchemaName(String schemaName) {
+        String suffix = "_moved_" + System.currentTimeMillis() / 1000;
+        String base = schemaName.length() + suffix.length() > 63 ? schemaName.substring(0, 63 - suffix.length()) : schemaName;
+        return base + suffix;
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Resultado del movimiento de un tenant entre shards
+     *
+     * @param copiedRows    Filas copiadas por tabla.
+     * @param retiredSchema Nombre con el que queda el esquema en el shard de origen.
+     */
+    public record TenantMoveResult(
+        UUID tenantId,
+        String schemaName,
+        String sourceShard,
+        String targetShard,
+        Map<String, Long> copiedRows,
+        String retiredSchema
+    ) {}
+}
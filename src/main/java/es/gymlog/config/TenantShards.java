@@ -0,0 +1,124 @@
+package es.gymlog.config;
+
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.r2dbc.ConnectionFactoryBuilder;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de los shards (instancias de Postgres) que alojan esquemas de tenant.
+ * <p>
+ * El shard {@value #DEFAULT_SHARD} es la base de datos configurada en spring.r2dbc, que
+ * contiene además el esquema 'public' con el catálogo de tenants. El resto se declaran en
+ * gymlog.tenants.shards. Para cada shard se ofrece:
+ * <ul>
+ *   <li>Una {@link ConnectionFactory}, sobre la que {@link TenantRoutingConnectionFactory} crea los pools.</li>
+ *   <li>Un {@link DataSource} JDBC para las migraciones y el movimiento de tenants entre shards,
+ *       con la URL JDBC derivada de la URL R2DBC.</li>
+ * </ul>
+ */
+public class TenantShards implements DisposableBean {
+
+    public static final String DEFAULT_SHARD = "default";
+
+    private final Map<String, TenantProperties.ShardConfig> shards;
+    private final ObjectProvider<DataSource> defaultDataSource;
+    private final Map<String, DataSource> dataSources = new ConcurrentHashMap<>();
+
+    public TenantShards(TenantProperties.ShardConfig defaultShard,
+                        Map<String, TenantProperties.ShardConfig> additionalShards,
+                        ObjectProvider<DataSource> defaultDataSource) {
+        Map<String, TenantProperties.ShardConfig> allShards = new LinkedHashMap<>();
+        allShards.put(DEFAULT_SHARD, defaultShard);
+        additionalShards.forEach((name, config) -> {
+            if (DEFAULT_SHARD.equals(name)) {
+                throw new IllegalArgumentException("El shard '" + DEFAULT_SHARD + "' se configura con spring.r2dbc");
+            }
+            allShards.put(name, config);
+        });
+        this.shards = Map.copyOf(allShards);
+        this.defaultDataSource = defaultDataSource;
+    }
+
+    /**
+     * Nombres de todos los shards configurados, incluido el de por defecto
+     */
+    public Set<String> names() {
+        return shards.keySet();
+    }
+
+    /**
+     * Comprueba que el shard está configurado
+     */
+    public boolean contains(String shard) {
+        return shards.containsKey(shard);
+    }
+
+    /**
+     * Crea una fábrica de conexiones R2DBC (sin pool) hacia el shard indicado
+     */
+    public ConnectionFactory createConnectionFactory(String shard) {
+        TenantProperties.ShardConfig config = getConfig(shard);
+        return ConnectionFactoryBuilder.withUrl(config.url())
+            .username(config.username())
+            .password(config.password())
+            .build();
+    }
+
+    /**
+     * Devuelve el DataSource JDBC del shard indicado. El del shard por defecto es el
+     * DataSource de la aplicación; el resto se crean en el primer uso.
+     */
+    public DataSource dataSource(String shard) {
+        if (DEFAULT_SHARD.equals(shard)) {
+            return defaultDataSource.getObject();
+        }
+        return dataSources.computeIfAbsent(shard, name -> {
+            TenantProperties.ShardConfig config = getConfig(name);
+            return DataSourceBuilder.create()
+                .url(toJdbcUrl(config.url()))
+                .username(config.username())
+                .password(config.password())
+                .build();
+        });
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (DataSource dataSource : dataSources.values()) {
+            if (dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+        dataSources.clear();
+    }
+
+    private TenantProperties.ShardConfig getConfig(String shard) {
+        TenantProperties.ShardConfig config = shards.get(shard);
+        if (config == null) {
+            throw new IllegalArgumentException("Shard no configurado: " + shard);
+        }
+        return config;
+    }
+
+    /**
+     * Deriva la URL JDBC a partir de la URL R2DBC (r2dbc:[pool:]postgresql://... -> jdbc:postgresql://...)
+     */
+    static String toJdbcUrl(String r2dbcUrl) {
+        if (r2dbcUrl == null || !r2dbcUrl.startsWith("r2dbc:")) {
+            throw new IllegalArgumentException("URL R2DBC no válida: " + r2dbcUrl);
+        }
+        String driverUrl = r2dbcUrl.substring("r2dbc:".length());
+        if (driverUrl.startsWith("pool:")) {
+            driverUrl = driverUrl.substring("pool:".length());
+        }
+        return "jdbc:" + driverUrl;
+    }
+}
@@ -4,8 +4,19 @@ import es.gymlog.api.AuthApi;
 import es.gymlog.api.dto.AuthResponseDTO;
 import es.gymlog.api.dto.SocialLoginDTO;
 import es.gymlog.api.dto.UserDTO;
+import es.gymlog.config.SecurityConfig;
+import es.gymlog.config.SecurityProperties;
+import es.gymlog.config.TenantContextHolder;
+import es.gymlog.config.TenantResolver;
+import es.gymlog.config.TenantResolver.TenantContext;
+import es.gymlog.exception.IdentityProviderUnavailableException;
+import es.gymlog.exception.InvalidSocialTokenException;
 import es.gymlog.mapper.UserMapper;
+import es.gymlog.model.User;
+import es.gymlog.service.SocialLoginCache;
 import es.gymlog.service.SocialTokenValidationService;
+import es.gymlog.service.SocialTokenValidationService.SocialUserInfo;
+import es.gymlog.service.TenantMembershipService;
 import es.gymlog.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,34 +28,47 @@ import org.springframework.security.oauth2.jwt.JwtEncoder;
 import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
-import static org.springframework.http.HttpStatus.UNAUTHORIZED;
-
 @RestController
 public class AuthController implements AuthApi {
 
     private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
 
+    private static final String TENANT_ID_HEADER = "X-Tenant-ID";
+
     private final JwtEncoder jwtEncoder;
     private final UserService userService;
     private final UserMapper userMapper;
     private final SocialTokenValidationService socialTokenValidationService;
+    private final TenantResolver tenantResolver;
+    private final SocialLoginCache socialLoginCache;
+    private final TenantMembershipService tenantMembershipService;
+    private final Set<String> platformAdmins;
 
     public AuthController(JwtEncoder jwtEncoder, 
                          UserService userService, 
                          UserMapper userMapper,
-                         SocialTokenValidationService socialTokenValidationService) {
+                         SocialTokenValidationService socialTokenValidationService,
+                         TenantResolver tenantResolver,
+                         SocialLoginCache socialLoginCache,
+                         TenantMembershipService tenantMembershipService,
+                         SecurityProperties securityProperties) {
         this.jwtEncoder = jwtEncoder;
         this.userService = userService;
         this.userMapper = userMapper;
         this.socialTokenValidationService = socialTokenValidationService;
+        this.tenantResolver = tenantResolver;
+        this.socialLoginCache = socialLoginCache;
+        this.tenantMembershipService = tenantMembershipService;
+        this.platformAdmins = Set.copyOf(securityProperties.platformAdmins());
     }
 
     @Override
@@ -60,7 +84,7 @@ public class AuthController implements AuthApi {
                 userDTO.email(jwt.getClaim("email"));
                 userDTO.name(jwt.getClaim("name"));
                 // Añadir tenantId al response (aunque no esté en UserDTO, se puede usar en headers)
-                String tenantId = jwt.getClaim("tenantId");
+                String tenantId = jwt.getClaim(TenantResolver.CLAIM_TENANT_ID);
                 logger.debug("Usuario autenticado con tenantId: {}", tenantId);
                 // El resto de campos no se incluyen en el token por simplicidad
                 return ResponseEntity.ok(userDTO);
@@ -69,57 +93,139 @@ public class AuthController implements AuthApi {
 
     @Override
     public Mono<ResponseEntity<AuthResponseDTO>> socialLogin(Mono<SocialLoginDTO> socialLoginDTOMono, ServerWebExchange exchange) {
-        return socialLoginDTOMono
-            .flatMap(socialLoginDTO -> {
-                String provider = socialLoginDTO.getProvider().getValue();
-                String token = socialLoginDTO.getToken();
-                
-                logger.info("Iniciando validación de token social para proveedor: {}", provider);
-                
-                // Validar el token social real
-                return socialTokenValidationService.validateToken(provider, token)
-                    .flatMap(socialUserInfo -> {
-                        logger.info("Token social validado exitosamente para usuario: {}", socialUserInfo.email());
-                        
-                        // Buscar o crear usuario en la base de datos
-                        return userService.findOrCreateUserFromSocial(
-                            provider, 
-                            socialUserInfo.id(), 
-                            socialUserInfo.email(), 
-                            socialUserInfo.name()
-                        );
-                    })
-                    .flatMap(user -> {
-                        // Generar JWT propio de la aplicación con tenantId
-                        // TODO: Implementar lógica para determinar el tenant del usuario
-                        // Por ahora usamos el tenant demo por defecto
-                        String tenantId = "00000000-0000-0000-0000-000000000001"; // Tenant demo
-                        
-                        JwtClaimsSet claims = JwtClaimsSet.builder()
-                            .issuer("gymlog")
-                            .subject(user.id().toString())
-                            .claim("email", user.email())
-                            .claim("name", user.displayName())
-                            .claim("tenantId", tenantId) // Añadir tenantId al JWT
-                            .issuedAt(Instant.now())
-                            .expiresAt(Instant.now().plus(24, ChronoUnit.HOURS)) // 24 horas de expiración
-                            .build();
-
-                        // Como JwtEncoder no es reactivo, usamos Mono.fromCallable
-                        return Mono.fromCallable(() -> jwtEncoder.encode(JwtEncoderParameters.from(claims)))
-                            .map(jwt -> {
-                                logger.info("JWT generado exitosamente para usuario: {}", user.email());
-                                
-                                AuthResponseDTO authResponse = new AuthResponseDTO();
-                                authResponse.jwt(jwt.getTokenValue());
-                                authResponse.user(userMapper.toDto(user));
-                                return ResponseEntity.ok(authResponse);
-                            });
-                    });
-            })
-            .onErrorMap(throwable -> {
-                logger.error("Error durante el proceso de login social", throwable);
-                return new ResponseStatusException(UNAUTHORIZED, "Token social inválido: " + throwable.getMessage());
+        UUID requestedTenantId;
+        try {
+            requestedTenantId = requestedTenantId(exchange);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(e);
+        }
+
+        return socialLoginDTOMono.flatMap(socialLoginDTO -> {
+            String provider = socialLoginDTO.getProvider().getValue();
+            String token = socialLoginDTO.getToken();
+
+            // Reintento con un token ya verificado: no se repite la validación ni la búsqueda del usuario
+            return socialLoginCache.get(requestedTenantId, provider, token)
+                .map(cachedLogin -> loginFromCache(requestedTenantId, provider, token, cachedLogin))
+                .orElseGet(Mono::empty)
+                .switchIfEmpty(Mono.defer(() -> login(requestedTenantId, provider, token)));
+        });
+    }
+
+    /**
+     * Reutiliza un login en caché si la cuenta sigue perteneciendo al gimnasio, con sus roles
+     * actuales (ambas son búsquedas por clave primaria). Si ya no pertenece, descarta la entrada
+     * y devuelve vacío para repetir el login completo.
+     */
+    private Mono<ResponseEntity<AuthResponseDTO>> loginFromCache(UUID requestedTenantId, String provider, String token,
+                                                                 SocialLoginCache.SocialLogin cachedLogin) {
+        User user = cachedLogin.user();
+        return tenantMembershipService.isMember(cachedLogin.tenantId(), provider, cachedLogin.userInfo().id())
+            .flatMap(member -> {
+                if (!member) {
+                    socialLoginCache.invalidate(requestedTenantId, provider, token);
+                    return Mono.empty();
+                }
+                logger.debug("Login social resuelto desde caché para usuario: {}", user.email());
+                return tenantResolver.resolveCurrentTenantContext(cachedLogin.tenantId())
+                    .flatMap(tenantContext -> userService.findRoleNames(user.id())
+                        .contextWrite(TenantContextHolder.withTenantContext(tenantContext))
+                        .flatMap(roles -> issueToken(tenantContext, user, roles)));
+            });
+    }
+
+    /**
+     * Login completo: valida el token con el proveedor, resuelve el gimnasio y da de alta al usuario
+     */
+    private Mono<ResponseEntity<AuthResponseDTO>> login(UUID requestedTenantId, String provider, String token) {
+        logger.info("Iniciando validación de token social para proveedor: {}", provider);
+
+        return validateSocialToken(provider, token)
+            .flatMap(socialUserInfo -> {
+                logger.info("Token social validado exitosamente para usuario: {}", socialUserInfo.email());
+
+                // El tenant se consulta una sola vez, aquí: el JWT emitido lleva su esquema, shard, plan y epoch
+                return tenantMembershipService.resolveLoginTenant(requestedTenantId, provider, socialUserInfo)
+                    .flatMap(tenantContext -> userService.findOrCreateUserFromSocial(
+                                provider,
+                                socialUserInfo.id(),
+                                socialUserInfo.email(),
+                                socialUserInfo.name()
+                            )
+                            .flatMap(user -> userService.findRoleNames(user.id())
+                                .flatMap(roles -> tenantMembershipService.addMember(tenantContext.tenantId(), provider, socialUserInfo.id())
+                                    .then(Mono.fromRunnable(() -> socialLoginCache.put(requestedTenantId, provider, token,
+                                        socialUserInfo, tenantContext.tenantId(), user)))
+                                    .then(issueToken(tenantContext, user, roles))))
+                            // Buscar o crear usuario en el esquema del tenant (aún no hay JWT del que resolverlo)
+                            .contextWrite(TenantContextHolder.withTenantContext(tenantContext)));
             });
     }
-}
\ No newline at end of file
+
+    /**
+     * Valida el token con el proveedor. Solo los rechazos del token se responden con 401; el
+     * resto de errores (proveedor no disponible, proveedor no soportado) conservan su tipo.
+     */
+    private Mono<SocialUserInfo> validateSocialToken(String provider, String token) {
+        return socialTokenValidationService.validateToken(provider, token)
+            // Si el proveedor no está disponible no es culpa del token: se responde 503, no 401
+            .onErrorMap(error -> !(error instanceof IdentityProviderUnavailableException || error instanceof IllegalArgumentException),
+                error -> new InvalidSocialTokenException("Token social inválido", error));
+    }
+
+    /**
+     * Genera el JWT propio de la aplicación con el tenant firmado en los claims
+     */
+    private Mono<ResponseEntity<AuthResponseDTO>> issueToken(TenantContext tenantContext, User user, List<String> roles) {
+        JwtClaimsSet claims = JwtClaimsSet.builder()
+            .issuer("gymlog")
+            .subject(user.id().toString())
+            .claim("email", user.email())
+            .claim("name", user.displayName())
+            .claim(TenantResolver.CLAIM_TENANT_ID, tenantContext.tenantId().toString())
+            .claim(TenantResolver.CLAIM_TENANT_NAME, tenantContext.tenantName())
+            .claim(TenantResolver.CLAIM_SCHEMA_NAME, tenantContext.schemaName())
+            .claim(TenantResolver.CLAIM_SHARD, tenantContext.shard())
+            .claim(TenantResolver.CLAIM_PLAN, tenantContext.plan().getValue())
+            .claim(TenantResolver.CLAIM_TENANT_EPOCH, tenantContext.epoch())
+            .claim(SecurityConfig.CLAIM_ROLES, roles)
+            .claim(SecurityConfig.CLAIM_PLATFORM_ROLES, platformRoles(user))
+            .issuedAt(Instant.now())
+            .expiresAt(Instant.now().plus(24, ChronoUnit.HOURS)) // 24 horas de expiración
+            .build();
+
+        // Como JwtEncoder no es reactivo, usamos Mono.fromCallable
+        return Mono.fromCallable(() -> jwtEncoder.encode(JwtEncoderParameters.from(claims)))
+            .map(jwt -> {
+                logger.info("JWT generado exitosamente para usuario: {}", user.email());
+
+                AuthResponseDTO authResponse = new AuthResponseDTO();
+                authResponse.jwt(jwt.getTokenValue());
+                authResponse.user(userMapper.toDto(user));
+                return ResponseEntity.ok(authResponse);
+            });
+    }
+
+    /**
+     * Roles de la plataforma del usuario: solo los da la configuración, nunca el gimnasio
+     */
+    private List<String> platformRoles(User user) {
+        return platformAdmins.contains(user.provider() + ":" + user.providerId()) ? List.of("ADMIN") : List.of();
+    }
+
+    /**
+     * Tenant que pide el cliente en la cabecera X-Tenant-ID, o null si no la envía. Solo se
+     * acepta si la cuenta tiene acceso a él ({@link TenantMembershipService}).
+     */
+    private static UUID requestedTenantId(ServerWebExchange exchange) {
+        String tenantIdHeader = exchange.getRequest().getHeaders().getFirst(TENANT_ID_HEADER);
+        if (tenantIdHeader == null || tenantIdHeader.isBlank()) {
+            return null;
+        }
+        try {
+            return UUID.fromString(tenantIdHeader.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("X-Tenant-ID debe ser un UUID válido");
+        }
+    }
+}
@@ -3,7 +3,10 @@ package es.gymlog.controller;
 import es.gymlog.api.ExercisesApi;
 import es.gymlog.api.dto.CreateExerciseDTO;
 import es.gymlog.api.dto.ExerciseDTO;
+import es.gymlog.api.dto.ExerciseProgressPointDTO;
 import es.gymlog.api.dto.UpdateExerciseDTO;
+import es.gymlog.config.ConditionalGetSupport;
+import es.gymlog.service.ExerciseProgressService;
 import es.gymlog.service.ExerciseService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -12,15 +15,20 @@ import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDate;
 import java.util.UUID;
 
 @RestController
 public class ExerciseController implements ExercisesApi {
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final ExerciseService exerciseService;
+    private final ExerciseProgressService exerciseProgressService;
 
-    public ExerciseController(ExerciseService exerciseService) {
+    public ExerciseController(ExerciseService exerciseService, ExerciseProgressService exerciseProgressService) {
         this.exerciseService = exerciseService;
+        this.exerciseProgressService = exerciseProgressService;
     }
 
     @Override
@@ -31,9 +39,22 @@ public class ExerciseController implements ExercisesApi {
     }
 
     @Override
-    public Mono<ResponseEntity<Flux<ExerciseDTO>>> apiV1ExercisesGet(String name, String targetMuscleGroup, ServerWebExchange exchange) {
-        // TODO: Aplicar filtros de búsqueda
-        return Mono.just(ResponseEntity.ok(exerciseService.getAllExercises()));
+    public Mono<ResponseEntity<Flux<ExerciseDTO>>> apiV1ExercisesGet(String name, String targetMuscleGroup, String cursor, Integer limit, ServerWebExchange exchange) {
+        return exerciseService.searchExercises(name, targetMuscleGroup, cursor, limit)
+            .map(page -> {
+                ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                if (page.etag() != null) {
+                    ConditionalGetSupport.Validators validators = new ConditionalGetSupport.Validators(page.etag(), null);
+                    if (ConditionalGetSupport.isNotModified(exchange, validators)) {
+                        return ConditionalGetSupport.notModified(validators).<Flux<ExerciseDTO>>build();
+                    }
+                    response = ConditionalGetSupport.ok(validators);
+                }
+                if (page.nextCursor() != null) {
+                    response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+                }
+                return response.body(Flux.fromIterable(page.exercises()));
+            });
     }
 
     @Override
@@ -42,4 +63,12 @@ public class ExerciseController implements ExercisesApi {
             .flatMap(dto -> exerciseService.updateExercise(id, dto))
             .map(ResponseEntity::ok);
     }
+
+    @Override
+    public Mono<ResponseEntity<Flux<ExerciseProgressPointDTO>>> apiV1ExercisesIdProgressGet(UUID id, LocalDate from, LocalDate to, ServerWebExchange exchange) {
+        // Un punto por día: se reúne antes de responder para que un rango inválido dé 400 y no un 200 cortado
+        return exerciseProgressService.getProgress(id, from, to)
+            .collectList()
+            .map(points -> ResponseEntity.ok(Flux.fromIterable(points)));
+    }
 }
@@ -6,6 +6,7 @@ import es.gymlog.api.dto.RoutineDTO;
 import es.gymlog.api.dto.RoutineDayDTO;
 import es.gymlog.api.dto.RoutineDetailDTO;
 import es.gymlog.api.dto.UpdateRoutineDTO;
+import es.gymlog.config.ConditionalGetSupport;
 import es.gymlog.service.RoutineDayService;
 import es.gymlog.service.RoutineService;
 import org.springframework.http.HttpStatus;
@@ -43,13 +44,14 @@ public class RoutineController implements RoutinesApi {
 
     @Override
     public Mono<ResponseEntity<RoutineDetailDTO>> apiV1RoutinesIdGet(UUID id, ServerWebExchange exchange) {
-        // TODO: Implementar la obtención del detalle completo de la rutina
-        return Mono.just(ResponseEntity.notFound().build());
+        return routineService.getRoutineDetail(id)
+            .map(ResponseEntity::ok)
+            .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
     @Override
     public Mono<ResponseEntity<Flux<RoutineDTO>>> apiV1RoutinesGet(ServerWebExchange exchange) {
-        return Mono.just(ResponseEntity.ok(routineService.getAllRoutines()));
+        return ConditionalGetSupport.collection(exchange, routineService.getRoutinesValidators(), routineService::getAllRoutines);
     }
 
     @Override
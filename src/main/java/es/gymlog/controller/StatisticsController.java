@@ -0,0 +1,35 @@
+package es.gymlog.controller;
+
+import es.gymlog.api.StatisticsApi;
+import es.gymlog.api.dto.TrainingStatsDTO;
+import es.gymlog.api.dto.TrainingStatsPeriod;
+import es.gymlog.service.TrainingStatsService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+
+@RestController
+public class StatisticsController implements StatisticsApi {
+
+    private final TrainingStatsService trainingStatsService;
+
+    public StatisticsController(TrainingStatsService trainingStatsService) {
+        this.trainingStatsService = trainingStatsService;
+    }
+
+    @Override
+    public Mono<ResponseEntity<Flux<TrainingStatsDTO>>> apiV1TrainingStatsGet(TrainingStatsPeriod period, LocalDate from, LocalDate to, ServerWebExchange exchange) {
+        return trainingStatsService.getUserStats(period, from, to)
+            .map(stats -> ResponseEntity.ok(Flux.fromIterable(stats)));
+    }
+
+    @Override
+    public Mono<ResponseEntity<Flux<TrainingStatsDTO>>> apiV1TrainingStatsGymGet(TrainingStatsPeriod period, LocalDate from, LocalDate to, ServerWebExchange exchange) {
+        return trainingStatsService.getGymStats(period, from, to)
+            .map(stats -> ResponseEntity.ok(Flux.fromIterable(stats)));
+    }
+}
@@ -5,12 +5,15 @@ import es.gymlog.api.dto.CreateExerciseLogDTO;
 import es.gymlog.api.dto.CreateWorkoutSessionDTO;
 import es.gymlog.api.dto.ExerciseLogDTO;
 import es.gymlog.api.dto.WorkoutSessionDTO;
+import es.gymlog.api.dto.WorkoutSessionHistoryDTO;
 import es.gymlog.service.ExerciseLogService;
 import es.gymlog.service.WorkoutSessionService;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.UUID;
@@ -18,6 +21,8 @@ import java.util.UUID;
 @RestController
 public class WorkoutSessionController implements WorkoutSessionsApi {
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final WorkoutSessionService workoutSessionService;
     private final ExerciseLogService exerciseLogService;
 
@@ -39,4 +44,24 @@ public class WorkoutSessionController implements WorkoutSessionsApi {
             .flatMap(dto -> exerciseLogService.logExercise(sessionId, dto))
             .map(dto -> ResponseEntity.status(HttpStatus.CREATED).body(dto));
     }
+
+    @Override
+    public Mono<ResponseEntity<Flux<WorkoutSessionHistoryDTO>>> apiV1WorkoutSessionsGet(String cursor, Integer limit, ServerWebExchange exchange) {
+        boolean streaming = exchange.getRequest().getHeaders().getAccept().stream()
+            .anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
+        if (streaming) {
+            // Historial completo, una sesión por línea, con la contrapresión del cliente
+            return Mono.just(ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(workoutSessionService.streamHistory(cursor)));
+        }
+        return workoutSessionService.getHistoryPage(cursor, limit)
+            .map(page -> {
+                ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                if (page.nextCursor() != null) {
+                    response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+                }
+                return response.body(Flux.fromIterable(page.sessions()));
+            });
+    }
 }
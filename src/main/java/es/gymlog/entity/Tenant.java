@@ -10,7 +10,11 @@ import java.util.UUID;
 /**
  * Entidad que representa un tenant (cliente/gimnasio) en la arquitectura multi-tenant.
  * Esta entidad se almacena en el esquema 'public' y contiene la información básica
- * de cada cliente, incluyendo el nombre del esquema de BD asignado.
+ * de cada cliente, incluyendo el nombre del esquema de BD asignado y el shard
+ * (instancia de Postgres) en el que reside ese esquema.
+ * <p>
+ * El epoch identifica la versión de esos datos que llevan los JWT: los tokens emitidos con
+ * un epoch anterior dejan de aceptarse (ver {@code TenantEpochRegistry}).
  */
 @Table("tenants")
 public record Tenant(
@@ -38,9 +42,16 @@ public record Tenant(
     @Column("schema_name")
     String schemaName,
     
+    @Column("shard")
+    String shard,
+    
     @Column("is_active")
     Boolean isActive,
     
+    // Lo mantiene un trigger: aumenta al desactivar el tenant o cambiar su esquema, shard o plan
+    @Column("epoch")
+    Long epoch,
+    
     @Column("created_at")
     Instant createdAt,
     
@@ -63,7 +74,9 @@ public record Tenant(
             address,
             phone,
             schemaName,
+            "default", // Shard por defecto
             true, // Activo por defecto
+            0L,
             now,
             now
         );
@@ -74,7 +87,7 @@ public record Tenant(
      */
     public Tenant withUpdatedAt(Instant updatedAt) {
         return new Tenant(id, name, email, plan, description, address, phone, 
-                         schemaName, isActive, createdAt, updatedAt);
+                         schemaName, shard, isActive, epoch, createdAt, updatedAt);
     }
     
     /**
@@ -82,34 +95,15 @@ public record Tenant(
      */
     public Tenant withActive(boolean active) {
         return new Tenant(id, name, email, plan, description, address, phone, 
-                         schemaName, active, createdAt, Instant.now());
-    }
-}
-
-/**
- * Enum que representa los diferentes planes de suscripción disponibles
- */
-enum TenantPlan {
-    BASIC("basic"),
-    PREMIUM("premium"),
-    ENTERPRISE("enterprise");
-    
-    private final String value;
-    
-    TenantPlan(String value) {
-        this.value = value;
-    }
-    
-    public String getValue() {
-        return value;
+                         schemaName, shard, active, epoch, createdAt, Instant.now());
     }
     
-    public static TenantPlan fromString(String value) {
-        for (TenantPlan plan : TenantPlan.values()) {
-            if (plan.value.equalsIgnoreCase(value)) {
-                return plan;
-            }
-        }
-        throw new IllegalArgumentException("Plan no válido: " + value);
+    /**
+     * Cambia el shard en el que reside el esquema del tenant
+     */
+    public Tenant withShard(String shard) {
+        return new Tenant(id, name, email, plan, description, address, phone, 
+                         schemaName, shard, isActive, epoch, createdAt, Instant.now());
     }
-}
\ No newline at end of file
+}
+
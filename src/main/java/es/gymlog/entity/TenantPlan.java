@@ -0,0 +1,55 @@
+package es.gymlog.entity;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+/**
+ * Enum que representa los diferentes planes de suscripción disponibles
+ */
+public enum TenantPlan {
+    BASIC("basic"),
+    PREMIUM("premium"),
+    ENTERPRISE("enterprise");
+    
+    private final String value;
+    
+    TenantPlan(String value) {
+        this.value = value;
+    }
+    
+    public String getValue() {
+        return value;
+    }
+    
+    public static TenantPlan fromString(String value) {
+        for (TenantPlan plan : TenantPlan.values()) {
+            if (plan.value.equalsIgnoreCase(value)) {
+                return plan;
+            }
+        }
+        throw new IllegalArgumentException("Plan no válido: " + value);
+    }
+
+    /**
+     * Lee el plan desde la columna 'plan', que guarda el valor en minúsculas
+     */
+    @ReadingConverter
+    public static class PlanReadingConverter implements Converter<String, TenantPlan> {
+        @Override
+        public TenantPlan convert(String source) {
+            return fromString(source);
+        }
+    }
+
+    /**
+     * Escribe el plan con el valor en minúsculas que exige el CHECK de 'public.tenants'
+     */
+    @WritingConverter
+    public static class PlanWritingConverter implements Converter<TenantPlan, String> {
+        @Override
+        public String convert(TenantPlan source) {
+            return source.getValue();
+        }
+    }
+}
@@ -28,6 +28,27 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
     }
 
+    @ExceptionHandler(TenantBulkheadFullException.class)
+    public ResponseEntity<ErrorResponseDTO> handleTenantBulkheadFull(TenantBulkheadFullException ex) {
+        log.warn("Petición rechazada por el bulkhead del tenant: {}", ex.getMessage());
+        var errorResponse = new ErrorResponseDTO("TOO_MANY_REQUESTS", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(errorResponse);
+    }
+
+    @ExceptionHandler(InvalidSocialTokenException.class)
+    public ResponseEntity<ErrorResponseDTO> handleInvalidSocialToken(InvalidSocialTokenException ex) {
+        log.warn("Token social rechazado: {}", ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage());
+        var errorResponse = new ErrorResponseDTO("UNAUTHORIZED", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(errorResponse);
+    }
+
+    @ExceptionHandler(IdentityProviderUnavailableException.class)
+    public ResponseEntity<ErrorResponseDTO> handleIdentityProviderUnavailable(IdentityProviderUnavailableException ex) {
+        log.warn("Proveedor de identidad no disponible: {}", ex.getMessage());
+        var errorResponse = new ErrorResponseDTO("SERVICE_UNAVAILABLE", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorResponse);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponseDTO> handleGenericException(Exception ex) {
         log.error("Error no esperado en la aplicación", ex);
@@ -0,0 +1,16 @@
+package es.gymlog.exception;
+
+/**
+ * Excepción lanzada cuando un proveedor de identidad no responde, responde con error o su
+ * circuit breaker está abierto. No indica que el token del usuario sea inválido.
+ */
+public class IdentityProviderUnavailableException extends RuntimeException {
+
+    public IdentityProviderUnavailableException(String message) {
+        super(message);
+    }
+
+    public IdentityProviderUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
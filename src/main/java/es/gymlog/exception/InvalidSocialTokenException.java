@@ -0,0 +1,12 @@
+package es.gymlog.exception;
+
+/**
+ * Excepción lanzada cuando el proveedor social rechaza el token del login (firma, caducidad,
+ * audiencia o token desconocido). El detalle solo se registra; al cliente se le responde 401.
+ */
+public class InvalidSocialTokenException extends RuntimeException {
+
+    public InvalidSocialTokenException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,12 @@
+package es.gymlog.exception;
+
+/**
+ * Excepción lanzada cuando un tenant supera su cupo de operaciones de base de datos
+ * concurrentes y la operación no puede esperar turno (cola llena o tiempo de espera agotado).
+ */
+public class TenantBulkheadFullException extends RuntimeException {
+
+    public TenantBulkheadFullException(String message) {
+        super(message);
+    }
+}
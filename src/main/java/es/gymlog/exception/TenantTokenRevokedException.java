@@ -0,0 +1,12 @@
+package es.gymlog.exception;
+
+/**
+ * Excepción lanzada cuando un JWT pertenece a un tenant desactivado o cuyos datos (esquema,
+ * shard o plan) han cambiado desde que se emitió. El cliente debe volver a iniciar sesión.
+ */
+public class TenantTokenRevokedException extends RuntimeException {
+
+    public TenantTokenRevokedException(String message) {
+        super(message);
+    }
+}
@@ -1,20 +1,122 @@
 package es.gymlog.mapper;
 
+import es.gymlog.api.dto.CreateExerciseLogDTO;
 import es.gymlog.api.dto.ExerciseLogDTO;
+import es.gymlog.api.dto.PersonalRecordType;
 import es.gymlog.model.ExerciseLog;
+import es.gymlog.repository.ExerciseLogRepository.LoggedExercise;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.MappingConstants;
+import org.mapstruct.Named;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Mapper para convertir entre la entidad ExerciseLog y sus DTOs.
+ * <p>
+ * La entidad guarda las repeticiones de cada serie ({@code int[]}) y el peso en gramos, junto al
+ * texto de repeticiones que envió el cliente. Los DTOs devuelven el texto tal como se envió
+ * ("10" con 3 series sigue siendo "10", no "10,10,10") y el peso en kg calculado desde los gramos.
  */
 @Mapper(componentModel = MappingConstants.ComponentModel.SPRING, uses = TimestampMapper.class)
 public interface ExerciseLogMapper {
 
+    Pattern REPS_PATTERN = Pattern.compile("\\d{1,4}(,\\d{1,4})*");
+    int MAX_REPS = 1000;
+    int MAX_SETS = 1000;
+    int MAX_WEIGHT_KG = 1000;
+
+    @Mapping(target = "weightKg", source = "weightGrams", qualifiedByName = "gramsToKg")
+    @Mapping(target = "personalRecord", ignore = true)
+    @Mapping(target = "personalRecordTypes", ignore = true)
     ExerciseLogDTO toDto(ExerciseLog exerciseLog);
 
+    @Mapping(target = "weightKg", source = "weightGrams", qualifiedByName = "gramsToKg")
+    @Mapping(target = "personalRecordTypes", expression = "java(personalRecordTypes(loggedExercise))")
+    @Mapping(target = "personalRecord", expression = "java(loggedExercise.heaviestWeight() || loggedExercise.mostRepsAtWeight() || loggedExercise.bestEstimatedOneRepMax())")
+    ExerciseLogDTO toDto(LoggedExercise loggedExercise);
+
     @Mapping(target = "id", ignore = true) // Se genera uno nuevo
     @Mapping(target = "workoutSessionId", ignore = true) // Se establece en el servicio
+    @Mapping(target = "reps", expression = "java(parseReps(dto.getRepsAchieved(), dto.getSetsCompleted()))")
+    @Mapping(target = "weightGrams", expression = "java(toGrams(dto.getWeightKg()))")
     ExerciseLog toEntity(ExerciseLogDTO dto);
+
+    /**
+     * Repeticiones de cada serie del registro a crear
+     */
+    default int[] reps(CreateExerciseLogDTO dto) {
+        return parseReps(dto.getRepsAchieved(), dto.getSetsCompleted());
+    }
+
+    /**
+     * Peso en gramos del registro a crear
+     */
+    default int weightGrams(CreateExerciseLogDTO dto) {
+        return toGrams(dto.getWeightKg());
+    }
+
+    @Named("gramsToKg")
+    default Double gramsToKg(Integer grams) {
+        return grams == null ? null : grams / 1000.0;
+    }
+
+    default List<PersonalRecordType> personalRecordTypes(LoggedExercise loggedExercise) {
+        List<PersonalRecordType> types = new ArrayList<>(3);
+        if (loggedExercise.heaviestWeight()) {
+            types.add(PersonalRecordType.HEAVIEST_WEIGHT);
+        }
+        if (loggedExercise.mostRepsAtWeight()) {
+            types.add(PersonalRecordType.MOST_REPS_AT_WEIGHT);
+        }
+        if (loggedExercise.bestEstimatedOneRepMax()) {
+            types.add(PersonalRecordType.BEST_ESTIMATED_1RM);
+        }
+        return types;
+    }
+
+    /**
+     * Convierte las repeticiones en una entrada por serie. Solo admite números de 0 a 1000
+     * separados por comas, uno por serie ("10,8,6" con 3 series) o uno solo para todas ("10"
+     * con 3 series); cualquier otro texto o número de valores es un error 400.
+     */
+    static int[] parseReps(String repsAchieved, Integer setsCompleted) {
+        if (setsCompleted == null || setsCompleted < 1 || setsCompleted > MAX_SETS) {
+            throw new IllegalArgumentException("Número de series no válido: " + setsCompleted + " (de 1 a " + MAX_SETS + ")");
+        }
+        if (repsAchieved == null || !REPS_PATTERN.matcher(repsAchieved).matches()) {
+            throw new IllegalArgumentException(
+                "Repeticiones no válidas: indique números separados por comas, p. ej. \"10,8,6\"");
+        }
+        String[] values = repsAchieved.split(",");
+        if (values.length != 1 && values.length != setsCompleted) {
+            throw new IllegalArgumentException("Se indican " + values.length + " repeticiones para " + setsCompleted
+                + " series: indique una por serie o una sola para todas");
+        }
+        int[] reps = new int[setsCompleted];
+        for (int i = 0; i < setsCompleted; i++) {
+            int value = Integer.parseInt(values[values.length == 1 ? 0 : i]);
+            if (value > MAX_REPS) {
+                throw new IllegalArgumentException("Número de repeticiones no válido: " + value + " (máximo " + MAX_REPS + ")");
+            }
+            reps[i] = value;
+        }
+        return reps;
+    }
+
+    /**
+     * Convierte un peso en kg a gramos enteros, con la precisión de 'weight_kg' (centésimas de kg)
+     */
+    static int toGrams(Double weightKg) {
+        if (weightKg == null) {
+            return 0;
+        }
+        if (!(weightKg >= 0 && weightKg <= MAX_WEIGHT_KG)) {
+            throw new IllegalArgumentException("Peso no válido: " + weightKg + " (de 0 a " + MAX_WEIGHT_KG + " kg)");
+        }
+        return (int) Math.rint(weightKg * 100) * 10;
+    }
 }
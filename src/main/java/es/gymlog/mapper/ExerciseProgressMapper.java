@@ -0,0 +1,25 @@
+package es.gymlog.mapper;
+
+import es.gymlog.api.dto.ExerciseProgressPointDTO;
+import es.gymlog.model.ExerciseProgressDaily;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingConstants;
+import org.mapstruct.Named;
+
+/**
+ * Mapper para convertir el progreso diario por ejercicio (en gramos) en los puntos de la gráfica (en kg).
+ */
+@Mapper(componentModel = MappingConstants.ComponentModel.SPRING)
+public interface ExerciseProgressMapper {
+
+    @Mapping(target = "bestE1rmKg", source = "bestE1rmGrams", qualifiedByName = "gramsToKg")
+    @Mapping(target = "topWeightKg", source = "topWeightGrams", qualifiedByName = "gramsToKg")
+    @Mapping(target = "totalVolumeKg", source = "totalVolumeGrams", qualifiedByName = "gramsToKg")
+    ExerciseProgressPointDTO toDto(ExerciseProgressDaily progress);
+
+    @Named("gramsToKg")
+    default Double gramsToKg(long grams) {
+        return grams / 1000.0;
+    }
+}
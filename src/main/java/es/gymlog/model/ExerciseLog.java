@@ -3,12 +3,18 @@ package es.gymlog.model;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.relational.core.mapping.Table;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.UUID;
 
 /**
  * Representa el registro de un ejercicio realizado en una sesión de entrenamiento.
+ * <p>
+ * Las repeticiones se guardan una por serie y el peso en gramos enteros, de modo que las
+ * métricas (volumen, 1RM estimado) se calculan con aritmética entera, sin parsear texto.
+ * 'repsAchieved' conserva el texto que envió el cliente. 'reps' y 'weightGrams' son nulos en los
+ * registros que escriban versiones anteriores hasta que los convierte el backfill, o si no se
+ * pueden convertir ('exercise_log_set_issues'). La columna 'weight_kg', que aún leen esas
+ * versiones, solo se escribe en SQL y no se mapea.
  */
 @Table("exercise_logs")
 public record ExerciseLog(
@@ -17,7 +23,8 @@ public record ExerciseLog(
     UUID routineExerciseId,
     int setsCompleted,
     String repsAchieved,
-    BigDecimal weightKg,
+    int[] reps,
+    Integer weightGrams,
     String notes,
     Instant recordedAt
 ) {}
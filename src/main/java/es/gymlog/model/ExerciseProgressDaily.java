@@ -0,0 +1,17 @@
+package es.gymlog.model;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Progreso diario de un usuario en un ejercicio (fila de 'exercise_progress_daily'), en gramos.
+ */
+public record ExerciseProgressDaily(
+    UUID userId,
+    UUID exerciseId,
+    LocalDate day,
+    int bestE1rmGrams,
+    int topWeightGrams,
+    long totalVolumeGrams,
+    int setsCount
+) {}
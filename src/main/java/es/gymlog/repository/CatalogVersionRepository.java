@@ -0,0 +1,38 @@
+package es.gymlog.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * Acceso a la tabla 'catalog_versions': versión de cada catálogo compartido por todos los
+ * usuarios del tenant.
+ * <p>
+ * Como {@link CollectionVersionRepository}, las sentencias que modifican un catálogo aumentan su
+ * versión en la misma sentencia (ver {@link ExerciseRepository#BUMP_EXERCISES_VERSION}), de modo
+ * que cualquier instancia sabe con una búsqueda por clave primaria si su copia en memoria sigue
+ * vigente.
+ */
+@Repository
+public class CatalogVersionRepository {
+
+    /** Catálogo de ejercicios */
+    public static final String EXERCISES = "exercises";
+
+    private final DatabaseClient databaseClient;
+
+    public CatalogVersionRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * Devuelve la versión de un catálogo del tenant actual, o 0 si nunca se ha modificado
+     */
+    public Mono<Long> find(String catalog) {
+        return databaseClient.sql("SELECT version FROM catalog_versions WHERE catalog = :catalog")
+            .bind("catalog", catalog)
+            .map(row -> row.get("version", Long.class))
+            .one()
+            .defaultIfEmpty(0L);
+    }
+}
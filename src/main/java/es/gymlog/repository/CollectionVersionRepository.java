@@ -0,0 +1,45 @@
+package es.gymlog.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Acceso a la tabla 'collection_versions': versión y fecha de última modificación de cada
+ * colección de un usuario.
+ * <p>
+ * Las sentencias que modifican una colección aumentan su versión en la misma sentencia (ver
+ * {@link RoutineRepository#BUMP_ROUTINES_VERSION}), de modo que leerla es una búsqueda por clave
+ * primaria que permite responder a un GET condicional sin leer la colección.
+ */
+@Repository
+public class CollectionVersionRepository {
+
+    private final DatabaseClient databaseClient;
+
+    public CollectionVersionRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * Devuelve la versión de una colección del usuario, o vacío si nunca se ha modificado
+     */
+    public Mono<CollectionVersion> find(UUID userId, String collection) {
+        return databaseClient.sql("SELECT version, modified_at FROM collection_versions WHERE user_id = :userId AND collection = :collection")
+            .bind("userId", userId)
+            .bind("collection", collection)
+            .map(row -> new CollectionVersion(row.get("version", Long.class), row.get("modified_at", Instant.class)))
+            .one();
+    }
+
+    /**
+     * Versión de una colección y momento de su última modificación
+     */
+    public record CollectionVersion(
+        long version,
+        Instant modifiedAt
+    ) {}
+}
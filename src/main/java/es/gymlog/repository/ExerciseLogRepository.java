@@ -1,9 +1,12 @@
 package es.gymlog.repository;
 
 import es.gymlog.model.ExerciseLog;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
 
+import java.time.Instant;
 import java.util.UUID;
 
 /**
@@ -11,4 +14,172 @@ import java.util.UUID;
  */
 @Repository
 public interface ExerciseLogRepository extends ReactiveCrudRepository<ExerciseLog, UUID> {
+
+    /**
+     * Métricas de un registro (alias {@code l}) calculadas en SQL con aritmética entera, como
+     * columnas de {@code m}: repeticiones de la mejor serie ({@code max_reps}), volumen en gramos
+     * ({@code volume_grams}) y 1RM estimado en gramos de la mejor serie con la fórmula de Epley,
+     * peso * (30 + reps) / 30 ({@code e1rm_grams}).
+     */
+    String SET_METRICS = """
+        CROSS JOIN LATERAL (
+            SELECT reps.max_reps,
+                   l.weight_grams::bigint * reps.total_reps AS volume_grams,
+                   CASE WHEN reps.max_reps <= 1 THEN l.weight_grams::bigint * reps.max_reps
+                        ELSE l.weight_grams::bigint * (30 + reps.max_reps) / 30 END AS e1rm_grams
+            FROM (SELECT COALESCE(max(r), 0) AS max_reps, COALESCE(sum(r), 0) AS total_reps FROM unnest(l.reps) AS r) reps
+        ) m
+        """;
+
+    /**
+     * Repeticiones y peso de un registro (alias {@code l}) a partir de sus columnas de texto
+     * ('reps_achieved', 'weight_kg'), como columnas de {@code s}: {@code reps}, {@code weight_grams}
+     * y, si no se pueden convertir, el motivo ({@code issue}). Solo se convierte el texto limpio:
+     * números de 0 a 1000 separados por comas, uno por serie o uno solo para todas, y pesos de 0 a
+     * 1000 kg. Mismas reglas que la migración 0020; lo usa el backfill con los registros que
+     * escriban versiones anteriores, que no rellenan 'reps' ni 'weight_grams'.
+     */
+    String LEGACY_SETS = """
+        CROSS JOIN LATERAL (
+            SELECT CASE WHEN p.issue IS NULL AND cardinality(p.parsed) = 1 THEN array_fill(p.parsed[1], ARRAY[l.sets_completed])
+                        WHEN p.issue IS NULL THEN p.parsed END AS reps,
+                   CASE WHEN l.weight_kg BETWEEN 0 AND 1000 THEN round(l.weight_kg * 1000)::int END AS weight_grams,
+                   COALESCE(p.issue, CASE WHEN l.weight_kg NOT BETWEEN 0 AND 1000 THEN 'WEIGHT_RANGE' END) AS issue
+            FROM (
+                SELECT v.parsed,
+                       CASE WHEN v.parsed IS NULL THEN 'REPS_FORMAT'
+                            WHEN 1000 < ANY(v.parsed) THEN 'REPS_RANGE'
+                            WHEN l.sets_completed NOT BETWEEN 1 AND 1000
+                                 OR cardinality(v.parsed) NOT IN (1, l.sets_completed) THEN 'SETS_MISMATCH'
+                       END AS issue
+                FROM (SELECT CASE WHEN l.reps_achieved ~ '^\\s*\\d{1,4}(\\s*,\\s*\\d{1,4})*\\s*$'
+                                  THEN string_to_array(regexp_replace(l.reps_achieved, '\\s', '', 'g'), ',')::int[]
+                             END AS parsed) v
+            ) p
+        ) s
+        """;
+
+    /**
+     * Registra un ejercicio en una sesión del usuario indicado, lo suma al progreso diario del
+     * usuario en ese ejercicio ('exercise_progress_daily') y a su volumen del día por grupo
+     * muscular ('training_volume_rollups'), y actualiza sus marcas personales.
+     * Comprobación de propiedad, inserción, agregados y marcas se ejecutan en una única sentencia.
+     * <p>
+     * Las marcas se comparan con las vigentes antes del registro, leídas por clave primaria en
+     * 'personal_records' y 'personal_rep_records'. El primer registro de un ejercicio (o de un
+     * peso, para las repeticiones) no cuenta como marca: no hay nada que superar.
+     * <p>
+     * Además de 'reps' y 'weight_grams' se escriben 'reps_achieved' y 'weight_kg', que siguen
+     * leyendo las versiones anteriores mientras convivan con esta. 'weight_kg' solo se escribe:
+     * el registro devuelto lleva el peso en gramos.
+     *
+     * @param id                El ID del nuevo registro.
+     * @param sessionId         El ID de la sesión de entrenamiento.
+     * @param userId            El ID del usuario que debe ser el propietario de la sesión.
+     * @param routineExerciseId El ID del ejercicio de la rutina.
+     * @param setsCompleted     Series completadas.
+     * @param repsAchieved      Repeticiones tal como las envió el cliente ("10,8,6").
+     * @param reps              Repeticiones de cada serie.
+     * @param weightGrams       Peso usado, en gramos.
+     * @param notes             Notas del registro.
+     * @param recordedAt        Momento del registro.
+     * @return Un Mono con el registro creado y sus marcas, o vacío si la sesión no existe o no pertenece al usuario.
+     */
+    @Query("""
+        WITH session AS (
+            SELECT user_id FROM workout_sessions WHERE id = :sessionId AND user_id = :userId
+        ), inserted AS (
+            INSERT INTO exercise_logs (id, workout_session_id, routine_exercise_id, sets_completed, reps_achieved, reps,
+                                       weight_kg, weight_grams, notes, recorded_at, progress_applied)
+            SELECT :id, :sessionId, :routineExerciseId, :setsCompleted, :repsAchieved, :reps,
+                   :weightGrams / 1000.0, :weightGrams, :notes, :recordedAt, true
+            FROM session
+            RETURNING id, workout_session_id, routine_exercise_id, sets_completed, reps_achieved, reps, weight_grams,
+                      notes, recorded_at
+        ), target AS (
+            SELECT s.user_id, re.exercise_id, e.target_muscle_group, l.weight_grams, l.sets_completed, l.recorded_at,
+                   m.max_reps, m.volume_grams, m.e1rm_grams
+            FROM inserted l
+            CROSS JOIN session s
+            JOIN routine_exercises re ON re.id = l.routine_exercise_id
+            JOIN exercises e ON e.id = re.exercise_id
+        """ + SET_METRICS + """
+        ), previous AS (
+            SELECT pr.max_weight_grams, pr.best_e1rm_grams, prr.max_reps
+            FROM target t
+            LEFT JOIN personal_records pr ON pr.user_id = t.user_id AND pr.exercise_id = t.exercise_id
+            LEFT JOIN personal_rep_records prr
+                ON prr.user_id = t.user_id AND prr.exercise_id = t.exercise_id AND prr.weight_grams = t.weight_grams
+        ), progress AS (
+            INSERT INTO exercise_progress_daily AS p (user_id, exercise_id, day, best_e1rm_grams, top_weight_grams,
+                                                      total_volume_grams, sets_count)
+            SELECT t.user_id, t.exercise_id, (t.recorded_at AT TIME ZONE 'UTC')::date, t.e1rm_grams, t.weight_grams,
+                   t.volume_grams, t.sets_completed
+            FROM target t
+            ON CONFLICT (user_id, exercise_id, day) DO UPDATE
+            SET best_e1rm_grams = GREATEST(p.best_e1rm_grams, EXCLUDED.best_e1rm_grams),
+                top_weight_grams = GREATEST(p.top_weight_grams, EXCLUDED.top_weight_grams),
+                total_volume_grams = p.total_volume_grams + EXCLUDED.total_volume_grams,
+                sets_count = p.sets_count + EXCLUDED.sets_count
+        ), volume AS (
+            INSERT INTO training_volume_rollups AS v (user_id, period, period_start, muscle_group, volume_grams, sets_count)
+            SELECT t.user_id, 'DAY', (t.recorded_at AT TIME ZONE 'UTC')::date, COALESCE(t.target_muscle_group, ''),
+                   t.volume_grams, t.sets_completed
+            FROM target t
+            ON CONFLICT (user_id, period, period_start, muscle_group) DO UPDATE
+            SET volume_grams = v.volume_grams + EXCLUDED.volume_grams,
+                sets_count = v.sets_count + EXCLUDED.sets_count
+        ), record AS (
+            INSERT INTO personal_records AS r (user_id, exercise_id, max_weight_grams, best_e1rm_grams)
+            SELECT t.user_id, t.exercise_id, t.weight_grams, t.e1rm_grams
+            FROM target t
+            ON CONFLICT (user_id, exercise_id) DO UPDATE
+            SET max_weight_grams = GREATEST(r.max_weight_grams, EXCLUDED.max_weight_grams),
+                best_e1rm_grams = GREATEST(r.best_e1rm_grams, EXCLUDED.best_e1rm_grams),
+                updated_at = CURRENT_TIMESTAMP
+            WHERE EXCLUDED.max_weight_grams > r.max_weight_grams OR EXCLUDED.best_e1rm_grams > r.best_e1rm_grams
+        ), rep_record AS (
+            INSERT INTO personal_rep_records AS r (user_id, exercise_id, weight_grams, max_reps)
+            SELECT t.user_id, t.exercise_id, t.weight_grams, t.max_reps
+            FROM target t
+            WHERE t.max_reps > 0
+            ON CONFLICT (user_id, exercise_id, weight_grams) DO UPDATE
+            SET max_reps = EXCLUDED.max_reps,
+                updated_at = CURRENT_TIMESTAMP
+            WHERE EXCLUDED.max_reps > r.max_reps
+        )
+        SELECT i.id, i.workout_session_id, i.routine_exercise_id, i.sets_completed, i.reps_achieved, i.reps,
+               i.weight_grams, i.notes, i.recorded_at,
+               COALESCE(t.weight_grams > p.max_weight_grams, false) AS heaviest_weight,
+               COALESCE(t.max_reps > p.max_reps, false) AS most_reps_at_weight,
+               COALESCE(t.e1rm_grams > p.best_e1rm_grams, false) AS best_estimated_one_rep_max
+        FROM inserted i
+        CROSS JOIN target t
+        CROSS JOIN previous p
+        """)
+    Mono<LoggedExercise> insertForSession(UUID id, UUID sessionId, UUID userId, UUID routineExerciseId,
+                                          int setsCompleted, String repsAchieved, int[] reps, int weightGrams, String notes,
+                                          Instant recordedAt);
+
+    /**
+     * Registro de ejercicio recién creado, con las marcas personales que ha superado
+     *
+     * @param heaviestWeight         Peso más alto del usuario en el ejercicio.
+     * @param mostRepsAtWeight       Más repeticiones en una serie con ese peso.
+     * @param bestEstimatedOneRepMax Mejor 1RM estimado del usuario en el ejercicio.
+     */
+    record LoggedExercise(
+        UUID id,
+        UUID workoutSessionId,
+        UUID routineExerciseId,
+        int setsCompleted,
+        String repsAchieved,
+        int[] reps,
+        int weightGrams,
+        String notes,
+        Instant recordedAt,
+        boolean heaviestWeight,
+        boolean mostRepsAtWeight,
+        boolean bestEstimatedOneRepMax
+    ) {}
 }
@@ -0,0 +1,151 @@
+package es.gymlog.repository;
+
+import es.gymlog.model.ExerciseProgressDaily;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Acceso a la tabla 'exercise_progress_daily' y a los registros de ejercicio pendientes de
+ * sumar a ella y a las marcas personales ('personal_records', 'personal_rep_records').
+ * <p>
+ * Los registros nuevos se suman al agregado en la misma sentencia que los inserta (ver
+ * {@link ExerciseLogRepository#insertForSession}). Los anteriores a la tabla los suma el
+ * backfill por lotes: cada lote marca sus registros con 'progress_applied' en la misma
+ * sentencia que actualiza el agregado, así que el proceso se puede interrumpir y reanudar
+ * sin contar nada dos veces.
+ */
+@Repository
+public class ExerciseProgressRepository {
+
+    private final DatabaseClient databaseClient;
+
+    public ExerciseProgressRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * Progreso diario de un usuario en un ejercicio entre dos fechas (incluidas), por fecha
+     */
+    public Flux<ExerciseProgressDaily> findByUserAndExercise(UUID userId, UUID exerciseId, LocalDate from, LocalDate to) {
+        return databaseClient.sql("""
+                SELECT user_id, exercise_id, day, best_e1rm_grams, top_weight_grams, total_volume_grams, sets_count
+                FROM exercise_progress_daily
+                WHERE user_id = :userId AND exercise_id = :exerciseId AND day BETWEEN :from AND :to
+                ORDER BY day
+                """)
+            .bind("userId", userId)
+            .bind("exerciseId", exerciseId)
+            .bind("from", from)
+            .bind("to", to)
+            .map(row -> new ExerciseProgressDaily(
+                row.get("user_id", UUID.class),
+                row.get("exercise_id", UUID.class),
+                row.get("day", LocalDate.class),
+                row.get("best_e1rm_grams", Integer.class),
+                row.get("top_weight_grams", Integer.class),
+                row.get("total_volume_grams", Long.class),
+                row.get("sets_count", Integer.class)))
+            .all();
+    }
+
+    /**
+     * Suma al progreso diario, al volumen del día y a las marcas personales un lote de registros
+     * pendientes, y los marca como sumados, en una única sentencia. Las métricas se calculan en
+     * la propia sentencia ({@link ExerciseLogRepository#SET_METRICS}) y los registros se agrupan
+     * antes de cada upsert: una misma fila no puede actualizarse dos veces en un
+     * INSERT ... ON CONFLICT. Los registros bloqueados por otra instancia se saltan.
+     * <p>
+     * Los registros escritos por versiones anteriores solo traen 'reps_achieved' y 'weight_kg':
+     * se convierten con {@link ExerciseLogRepository#LEGACY_SETS} y se guardan en 'reps' y
+     * 'weight_grams'. Los que no se pueden convertir se anotan en 'exercise_log_set_issues' y se
+     * marcan como sumados sin entrar en los agregados.
+     *
+     * @param batchSize Número máximo de registros del lote.
+     * @return Un Mono con el número de registros procesados; 0 si no quedan pendientes.
+     */
+    public Mono<Long> applyPendingBatch(int batchSize) {
+        return databaseClient.sql("""
+                WITH locked AS (
+                    SELECT * FROM exercise_logs
+                    WHERE NOT progress_applied
+                    ORDER BY id
+                    LIMIT :batchSize
+                    FOR UPDATE SKIP LOCKED
+                ), structured AS (
+                    SELECT l.id, l.workout_session_id, l.routine_exercise_id, l.sets_completed, l.recorded_at,
+                           l.reps_achieved, l.weight_kg, COALESCE(l.reps, s.reps) AS reps,
+                           COALESCE(l.weight_grams, s.weight_grams) AS weight_grams, s.issue
+                    FROM locked l
+                """ + ExerciseLogRepository.LEGACY_SETS + """
+                ), issues AS (
+                    INSERT INTO exercise_log_set_issues (log_id, reps_achieved, sets_completed, weight_kg, reason)
+                    SELECT id, reps_achieved, sets_completed, weight_kg, issue
+                    FROM structured
+                    WHERE reps IS NULL OR weight_grams IS NULL
+                    ON CONFLICT (log_id) DO NOTHING
+                ), batch AS (
+                    SELECT l.id, ws.user_id, re.exercise_id, COALESCE(e.target_muscle_group, '') AS muscle_group,
+                           (l.recorded_at AT TIME ZONE 'UTC')::date AS day, l.weight_grams, l.sets_completed,
+                           m.max_reps, m.volume_grams, m.e1rm_grams
+                    FROM structured l
+                    JOIN workout_sessions ws ON ws.id = l.workout_session_id
+                    JOIN routine_exercises re ON re.id = l.routine_exercise_id
+                    JOIN exercises e ON e.id = re.exercise_id
+                """ + ExerciseLogRepository.SET_METRICS + """
+                    WHERE l.reps IS NOT NULL AND l.weight_grams IS NOT NULL
+                ), marked AS (
+                    UPDATE exercise_logs e SET progress_applied = true, reps = s.reps, weight_grams = s.weight_grams
+                    FROM structured s
+                    WHERE e.id = s.id
+                ), progress AS (
+                    INSERT INTO exercise_progress_daily AS p (user_id, exercise_id, day, best_e1rm_grams, top_weight_grams,
+                                                              total_volume_grams, sets_count)
+                    SELECT user_id, exercise_id, day, max(e1rm_grams), max(weight_grams), sum(volume_grams), sum(sets_completed)
+                    FROM batch
+                    GROUP BY user_id, exercise_id, day
+                    ON CONFLICT (user_id, exercise_id, day) DO UPDATE
+                    SET best_e1rm_grams = GREATEST(p.best_e1rm_grams, EXCLUDED.best_e1rm_grams),
+                        top_weight_grams = GREATEST(p.top_weight_grams, EXCLUDED.top_weight_grams),
+                        total_volume_grams = p.total_volume_grams + EXCLUDED.total_volume_grams,
+                        sets_count = p.sets_count + EXCLUDED.sets_count
+                ), volume AS (
+                    INSERT INTO training_volume_rollups AS v (user_id, period, period_start, muscle_group, volume_grams, sets_count)
+                    SELECT user_id, 'DAY', day, muscle_group, sum(volume_grams), sum(sets_completed)
+                    FROM batch
+                    GROUP BY user_id, day, muscle_group
+                    ON CONFLICT (user_id, period, period_start, muscle_group) DO UPDATE
+                    SET volume_grams = v.volume_grams + EXCLUDED.volume_grams,
+                        sets_count = v.sets_count + EXCLUDED.sets_count
+                ), record AS (
+                    INSERT INTO personal_records AS r (user_id, exercise_id, max_weight_grams, best_e1rm_grams)
+                    SELECT user_id, exercise_id, max(weight_grams), max(e1rm_grams)
+                    FROM batch
+                    GROUP BY user_id, exercise_id
+                    ON CONFLICT (user_id, exercise_id) DO UPDATE
+                    SET max_weight_grams = GREATEST(r.max_weight_grams, EXCLUDED.max_weight_grams),
+                        best_e1rm_grams = GREATEST(r.best_e1rm_grams, EXCLUDED.best_e1rm_grams),
+                        updated_at = CURRENT_TIMESTAMP
+                    WHERE EXCLUDED.max_weight_grams > r.max_weight_grams OR EXCLUDED.best_e1rm_grams > r.best_e1rm_grams
+                ), rep_record AS (
+                    INSERT INTO personal_rep_records AS r (user_id, exercise_id, weight_grams, max_reps)
+                    SELECT user_id, exercise_id, weight_grams, max(max_reps)
+                    FROM batch
+                    WHERE max_reps > 0
+                    GROUP BY user_id, exercise_id, weight_grams
+                    ON CONFLICT (user_id, exercise_id, weight_grams) DO UPDATE
+                    SET max_reps = EXCLUDED.max_reps,
+                        updated_at = CURRENT_TIMESTAMP
+                    WHERE EXCLUDED.max_reps > r.max_reps
+                )
+                SELECT count(*) AS applied FROM locked
+                """)
+            .bind("batchSize", batchSize)
+            .map(row -> row.get("applied", Long.class))
+            .one();
+    }
+}
@@ -1,14 +1,71 @@
 package es.gymlog.repository;
 
 import es.gymlog.model.Exercise;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
 
+import java.time.Instant;
 import java.util.UUID;
 
 /**
  * Repositorio para la gestión de datos de la entidad Exercise.
+ * La búsqueda paginada del catálogo está en {@link ExerciseSearchRepository}.
  */
 @Repository
-public interface ExerciseRepository extends ReactiveCrudRepository<Exercise, UUID> {
+public interface ExerciseRepository extends ReactiveCrudRepository<Exercise, UUID>, ExerciseSearchRepository {
+
+    /**
+     * CTE que aumenta la versión del catálogo de ejercicios del tenant si la CTE {@code changed}
+     * ha modificado algún ejercicio, en la misma sentencia que la escritura. Ver {@link CatalogVersionRepository}.
+     */
+    String BUMP_EXERCISES_VERSION = """
+        bumped AS (
+            INSERT INTO catalog_versions (catalog, version, modified_at)
+            SELECT DISTINCT 'exercises', 1, now() FROM changed
+            ON CONFLICT (catalog)
+            DO UPDATE SET version = catalog_versions.version + 1, modified_at = EXCLUDED.modified_at
+        )
+        """;
+
+    /**
+     * Crea un ejercicio y aumenta la versión del catálogo de ejercicios.
+     *
+     * @return Un Mono con el ejercicio creado.
+     */
+    @Query("""
+        WITH changed AS (
+            INSERT INTO exercises (id, name, description, video_url, target_muscle_group, created_by_user_id,
+                                   is_public, created_at, updated_at)
+            VALUES (:id, :name, :description, :videoUrl, :targetMuscleGroup, :createdByUserId,
+                    :isPublic, :createdAt, :updatedAt)
+            RETURNING *
+        ), """ + BUMP_EXERCISES_VERSION + """
+        SELECT * FROM changed
+        """)
+    Mono<Exercise> insertVersioned(UUID id, String name, String description, String videoUrl, String targetMuscleGroup,
+                                   UUID createdByUserId, boolean isPublic, Instant createdAt, Instant updatedAt);
+
+    /**
+     * Actualiza un ejercicio y aumenta la versión del catálogo de ejercicios.
+     *
+     * @return Un Mono con el ejercicio actualizado, o vacío si no existe.
+     */
+    @Query("""
+        WITH changed AS (
+            UPDATE exercises
+            SET name = :name,
+                description = :description,
+                video_url = :videoUrl,
+                target_muscle_group = :targetMuscleGroup,
+                is_public = :isPublic,
+                updated_at = :updatedAt
+            WHERE id = :id
+            RETURNING *
+        ), """ + BUMP_EXERCISES_VERSION + """
+        SELECT * FROM changed
+        """)
+    Mono<Exercise> updateVersioned(UUID id, String name, String description, String videoUrl, String targetMuscleGroup,
+                                   boolean isPublic, Instant updatedAt);
 }
@@ -0,0 +1,25 @@
+package es.gymlog.repository;
+
+import es.gymlog.model.Exercise;
+import reactor.core.publisher.Flux;
+
+import java.util.UUID;
+
+/**
+ * Búsqueda filtrada y paginada por cursor del catálogo de ejercicios.
+ */
+public interface ExerciseSearchRepository {
+
+    /**
+     * Busca ejercicios ordenados por (name, id), empezando después de la posición indicada.
+     * Los filtros y el cursor nulos no se aplican.
+     *
+     * @param namePattern       Patrón ILIKE sobre el nombre (con los comodines ya escapados), o null.
+     * @param targetMuscleGroup Grupo muscular exacto, o null.
+     * @param afterName         Nombre del último ejercicio de la página anterior, o null en la primera.
+     * @param afterId           ID del último ejercicio de la página anterior, o null en la primera.
+     * @param limit             Número máximo de ejercicios a devolver.
+     * @return Un Flux con los ejercicios de la página.
+     */
+    Flux<Exercise> search(String namePattern, String targetMuscleGroup, String afterName, UUID afterId, int limit);
+}
@@ -0,0 +1,62 @@
+package es.gymlog.repository;
+
+import es.gymlog.model.Exercise;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Implementación de {@link ExerciseSearchRepository}.
+ * <p>
+ * La consulta se compone solo con los predicados que se usan, en lugar de una consulta fija
+ * con condiciones del tipo "(:param IS NULL OR ...)". Así cada combinación de filtros tiene un
+ * plan estable que usa su índice: trigramas para el ILIKE sobre el nombre, y (name, id) o
+ * (target_muscle_group, name, id) para recorrer el orden de la paginación sin ordenar la tabla.
+ */
+class ExerciseSearchRepositoryImpl implements ExerciseSearchRepository {
+
+    private final R2dbcEntityTemplate template;
+
+    ExerciseSearchRepositoryImpl(R2dbcEntityTemplate template) {
+        this.template = template;
+    }
+
+    @Override
+    public Flux<Exercise> search(String namePattern, String targetMuscleGroup, String afterName, UUID afterId, int limit) {
+        List<String> conditions = new ArrayList<>();
+        if (namePattern != null) {
+            conditions.add("name ILIKE :namePattern");
+        }
+        if (targetMuscleGroup != null) {
+            conditions.add("target_muscle_group = :targetMuscleGroup");
+        }
+        if (afterName != null) {
+            conditions.add("(name, id) > (:afterName, :afterId)");
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT * FROM exercises");
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" ORDER BY name, id LIMIT :limit");
+
+        DatabaseClient.GenericExecuteSpec spec = template.getDatabaseClient().sql(sql.toString())
+            .bind("limit", limit);
+        if (namePattern != null) {
+            spec = spec.bind("namePattern", namePattern);
+        }
+        if (targetMuscleGroup != null) {
+            spec = spec.bind("targetMuscleGroup", targetMuscleGroup);
+        }
+        if (afterName != null) {
+            spec = spec.bind("afterName", afterName).bind("afterId", afterId);
+        }
+        return spec
+            .map((row, metadata) -> template.getConverter().read(Exercise.class, row, metadata))
+            .all();
+    }
+}
@@ -15,36 +15,86 @@ import java.util.UUID;
 public interface RoutineDayRepository extends ReactiveCrudRepository<RoutineDay, UUID> {
 
     /**
-     * Incrementa el order_num de todos los días de una rutina que tengan un order_num
-     * mayor o igual al especificado.
+     * Inserta un día en una rutina del usuario indicado, desplazando antes los días con un
+     * order_num mayor o igual. Comprobación de propiedad, reordenación e inserción se
+     * ejecutan en una única sentencia.
      *
-     * @param routineId   El ID de la rutina.
-     * @param orderNum    El número de orden a partir del cual se incrementará.
-     * @return Un Mono<Void> que se completa cuando la operación termina.
+     * @param id        El ID del nuevo día.
+     * @param routineId El ID de la rutina.
+     * @param userId    El ID del usuario que debe ser el propietario de la rutina.
+     * @param name      El nombre del día.
+     * @param orderNum  La posición del día en la rutina.
+     * @return Un Mono con el día creado, o vacío si la rutina no existe o no pertenece al usuario.
      */
-    @Query("UPDATE routine_days SET order_num = order_num + 1 WHERE routine_id = :routineId AND order_num >= :orderNum")
-    Mono<Void> incrementOrderNumFrom(UUID routineId, int orderNum);
+    @Query("""
+        WITH owned AS (
+            SELECT id FROM routines WHERE id = :routineId AND user_id = :userId
+        ), shifted AS (
+            UPDATE routine_days SET order_num = order_num + 1
+            WHERE routine_id IN (SELECT id FROM owned) AND order_num >= :orderNum
+        )
+        INSERT INTO routine_days (id, routine_id, name, order_num, created_at, updated_at)
+        SELECT :id, owned.id, :name, :orderNum, now(), now() FROM owned
+        RETURNING *
+        """)
+    Mono<RoutineDay> insertOwned(UUID id, UUID routineId, UUID userId, String name, int orderNum);
 
     /**
-     * Decrementa el order_num de todos los días de una rutina que tengan un order_num
-     * mayor al especificado.
+     * Actualiza el nombre y la posición de un día cuya rutina pertenece al usuario indicado,
+     * desplazando los días situados entre la posición antigua y la nueva. Todo en una única
+     * sentencia.
      *
-     * @param routineId   El ID de la rutina.
-     * @param orderNum    El número de orden a partir del cual se decrementará.
-     * @return Un Mono<Void> que se completa cuando la operación termina.
+     * @param dayId    El ID del día.
+     * @param userId   El ID del usuario que debe ser el propietario de la rutina.
+     * @param name     El nuevo nombre del día.
+     * @param orderNum La nueva posición del día.
+     * @return Un Mono con el día actualizado, o vacío si no existe o no pertenece al usuario.
      */
-    @Query("UPDATE routine_days SET order_num = order_num - 1 WHERE routine_id = :routineId AND order_num > :orderNum")
-    Mono<Void> decrementOrderNumFrom(UUID routineId, int orderNum);
+    @Query("""
+        WITH target AS (
+            SELECT rd.id, rd.routine_id, rd.order_num AS old_order
+            FROM routine_days rd
+            JOIN routines r ON r.id = rd.routine_id
+            WHERE rd.id = :dayId AND r.user_id = :userId
+            FOR UPDATE OF rd
+        ), shifted AS (
+            UPDATE routine_days rd
+            SET order_num = rd.order_num + CASE WHEN :orderNum < t.old_order THEN 1 ELSE -1 END
+            FROM target t
+            WHERE rd.routine_id = t.routine_id
+              AND rd.id <> t.id
+              AND :orderNum <> t.old_order
+              AND rd.order_num BETWEEN LEAST(:orderNum, t.old_order) AND GREATEST(:orderNum, t.old_order)
+        )
+        UPDATE routine_days rd
+        SET name = :name, order_num = :orderNum, updated_at = now()
+        FROM target t
+        WHERE rd.id = t.id
+        RETURNING rd.*
+        """)
+    Mono<RoutineDay> updateOwned(UUID dayId, UUID userId, String name, int orderNum);
 
     /**
-     * Mueve el order_num de los días en un rango específico.
+     * Elimina un día cuya rutina pertenece al usuario indicado y cierra el hueco que deja,
+     * decrementando el order_num de los días posteriores. Todo en una única sentencia.
      *
-     * @param routineId El ID de la rutina.
-     * @param start     El inicio del rango.
-     * @param end       El fin del rango.
-     * @param shift     El valor a sumar (positivo o negativo).
-     * @return Un Mono<Void> que se completa cuando la operación termina.
+     * @param dayId  El ID del día.
+     * @param userId El ID del usuario que debe ser el propietario de la rutina.
+     * @return Un Mono con el número de días eliminados (0 si no existe o no pertenece al usuario).
      */
-    @Query("UPDATE routine_days SET order_num = order_num + :shift WHERE routine_id = :routineId AND order_num >= :start AND order_num <= :end")
-    Mono<Void> shiftOrderNumInRange(UUID routineId, int start, int end, int shift);
+    @Query("""
+        WITH deleted AS (
+            DELETE FROM routine_days rd
+            USING routines r
+            WHERE rd.id = :dayId AND r.id = rd.routine_id AND r.user_id = :userId
+            RETURNING rd.routine_id, rd.order_num
+        ), shifted AS (
+            UPDATE routine_days rd
+            SET order_num = rd.order_num - 1
+            FROM deleted d
+            WHERE rd.routine_id = d.routine_id AND rd.order_num > d.order_num
+        )
+        SELECT count(*) FROM deleted
+        """)
+    Mono<Long> deleteOwned(UUID dayId, UUID userId);
 }
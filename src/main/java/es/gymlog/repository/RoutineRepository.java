@@ -5,6 +5,7 @@ import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.util.UUID;
 
@@ -24,4 +25,120 @@ public interface RoutineRepository extends ReactiveCrudRepository<Routine, UUID>
      */
     @Query("SELECT * FROM routines WHERE user_id = :userId")
     Flux<Routine> findByUserId(UUID userId);
+
+    /**
+     * CTE que aumenta la versión de la colección de rutinas de los usuarios afectados por la
+     * CTE {@code changed}, en la misma sentencia que la escritura. Ver {@link CollectionVersionRepository}.
+     */
+    String BUMP_ROUTINES_VERSION = """
+        bumped AS (
+            INSERT INTO collection_versions (user_id, collection, version, modified_at)
+            SELECT DISTINCT user_id, 'routines', 1, now() FROM changed
+            ON CONFLICT (user_id, collection)
+            DO UPDATE SET version = collection_versions.version + 1, modified_at = EXCLUDED.modified_at
+        )
+        """;
+
+    /**
+     * Crea una rutina y aumenta la versión de la colección de rutinas del usuario.
+     *
+     * @param id       El ID de la nueva rutina.
+     * @param userId   El ID del usuario propietario.
+     * @param name     El nombre de la rutina.
+     * @param isActive Si la rutina está activa (false si es null).
+     * @return Un Mono con la rutina creada.
+     */
+    @Query("""
+        WITH changed AS (
+            INSERT INTO routines (id, user_id, name, is_active, created_at, updated_at)
+            VALUES (:id, :userId, :name, COALESCE(:isActive, false), now(), now())
+            RETURNING *
+        ), """ + BUMP_ROUTINES_VERSION + """
+        SELECT * FROM changed
+        """)
+    Mono<Routine> insertOwned(UUID id, UUID userId, String name, Boolean isActive);
+
+    /**
+     * Actualiza una rutina solo si pertenece al usuario indicado. Los campos nulos conservan
+     * su valor actual. Aumenta la versión de la colección de rutinas del usuario.
+     *
+     * @param id       El ID de la rutina.
+     * @param userId   El ID del usuario que debe ser el propietario.
+     * @param name     El nuevo nombre, o null para no cambiarlo.
+     * @param isActive El nuevo estado, o null para no cambiarlo.
+     * @return Un Mono con la rutina actualizada, o vacío si no existe o no pertenece al usuario.
+     */
+    @Query("""
+        WITH changed AS (
+            UPDATE routines
+            SET name = COALESCE(:name, name),
+                is_active = COALESCE(:isActive, is_active),
+                updated_at = now()
+            WHERE id = :id AND user_id = :userId
+            RETURNING *
+        ), """ + BUMP_ROUTINES_VERSION + """
+        SELECT * FROM changed
+        """)
+    Mono<Routine> updateOwned(UUID id, UUID userId, String name, Boolean isActive);
+
+    /**
+     * Elimina una rutina solo si pertenece al usuario indicado. Aumenta la versión de la
+     * colección de rutinas del usuario.
+     *
+     * @param id     El ID de la rutina.
+     * @param userId El ID del usuario que debe ser el propietario.
+     * @return Un Mono con el número de filas eliminadas (0 si no existe o no pertenece al usuario).
+     */
+    @Query("""
+        WITH changed AS (
+            DELETE FROM routines WHERE id = :id AND user_id = :userId
+            RETURNING user_id
+        ), """ + BUMP_ROUTINES_VERSION + """
+        SELECT count(*) FROM changed
+        """)
+    Mono<Long> deleteOwned(UUID id, UUID userId);
+
+    /**
+     * Construye en la base de datos el detalle completo de una rutina del usuario indicado:
+     * sus días ordenados por order_num y, dentro de cada día, sus ejercicios ordenados por
+     * order_num junto con el nombre y el grupo muscular del ejercicio. Devuelve un único
+     * documento JSON con la forma de RoutineDetailDTO, en una sola consulta.
+     *
+     * @param id     El ID de la rutina.
+     * @param userId El ID del usuario que debe ser el propietario.
+     * @return Un Mono con el JSON del detalle, o vacío si no existe o no pertenece al usuario.
+     */
+    @Query("""
+        SELECT json_build_object(
+            'id', r.id,
+            'name', r.name,
+            'isActive', r.is_active,
+            'days', COALESCE((
+                SELECT json_agg(json_build_object(
+                    'id', rd.id,
+                    'name', rd.name,
+                    'orderNum', rd.order_num,
+                    'exercises', COALESCE((
+                        SELECT json_agg(json_build_object(
+                            'id', re.id,
+                            'exerciseId', re.exercise_id,
+                            'exerciseName', e.name,
+                            'targetMuscleGroup', e.target_muscle_group,
+                            'orderNum', re.order_num,
+                            'isActive', re.is_active,
+                            'notes', re.notes
+                        ) ORDER BY re.order_num)
+                        FROM routine_exercises re
+                        JOIN exercises e ON e.id = re.exercise_id
+                        WHERE re.routine_day_id = rd.id
+                    ), '[]'::json)
+                ) ORDER BY rd.order_num)
+                FROM routine_days rd
+                WHERE rd.routine_id = r.id
+            ), '[]'::json)
+        )::text
+        FROM routines r
+        WHERE r.id = :id AND r.user_id = :userId
+        """)
+    Mono<String> findDetailJson(UUID id, UUID userId);
 }
@@ -0,0 +1,134 @@
+package es.gymlog.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Acceso a las tablas 'tenant_members' e 'tenant_invitations' del esquema 'public': gimnasios a
+ * los que pertenece cada cuenta social e invitaciones pendientes para darse de alta en uno.
+ * <p>
+ * IMPORTANTE: como {@link TenantRepository}, opera sobre el esquema 'public', así que debe
+ * usarse sin contexto de tenant.
+ */
+@Repository
+public class TenantMembershipRepository {
+
+    private final DatabaseClient databaseClient;
+
+    public TenantMembershipRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * Gimnasios activos a los que pertenece una cuenta social
+     */
+    public Flux<UUID> findTenantIds(String provider, String providerId) {
+        return databaseClient.sql("""
+                SELECT m.tenant_id
+                FROM public.tenant_members m
+                JOIN public.tenants t ON t.id = m.tenant_id AND t.is_active
+                WHERE m.provider = :provider AND m.provider_id = :providerId
+                ORDER BY m.created_at, m.tenant_id
+                """)
+            .bind("provider", provider)
+            .bind("providerId", providerId)
+            .map(row -> row.get("tenant_id", UUID.class))
+            .all();
+    }
+
+    /**
+     * Comprueba, por clave primaria, si una cuenta social sigue perteneciendo a un gimnasio activo
+     */
+    public Mono<Boolean> isMember(UUID tenantId, String provider, String providerId) {
+        return databaseClient.sql("""
+                SELECT 1
+                FROM public.tenant_members m
+                JOIN public.tenants t ON t.id = m.tenant_id AND t.is_active
+                WHERE m.provider = :provider AND m.provider_id = :providerId AND m.tenant_id = :tenantId
+                """)
+            .bind("provider", provider)
+            .bind("providerId", providerId)
+            .bind("tenantId", tenantId)
+            .map(row -> true)
+            .one()
+            .hasElement();
+    }
+
+    /**
+     * Registra que una cuenta social pertenece a un gimnasio; no hace nada si ya constaba
+     */
+    public Mono<Void> addMember(UUID tenantId, String provider, String providerId) {
+        return databaseClient.sql("""
+                INSERT INTO public.tenant_members (provider, provider_id, tenant_id)
+                VALUES (:provider, :providerId, :tenantId)
+                ON CONFLICT DO NOTHING
+                """)
+            .bind("provider", provider)
+            .bind("providerId", providerId)
+            .bind("tenantId", tenantId)
+            .then();
+    }
+
+    /**
+     * Gimnasios activos con alguna invitación pendiente y sin caducar para el email
+     */
+    public Flux<UUID> findInvitedTenantIds(String email) {
+        return databaseClient.sql("""
+                SELECT DISTINCT i.tenant_id
+                FROM public.tenant_invitations i
+                JOIN public.tenants t ON t.id = i.tenant_id AND t.is_active
+                WHERE lower(i.email) = lower(:email) AND i.accepted_at IS NULL AND i.expires_at > now()
+                """)
+            .bind("email", email)
+            .map(row -> row.get("tenant_id", UUID.class))
+            .all();
+    }
+
+    /**
+     * Acepta la invitación pendiente más antigua del email en un gimnasio
+     *
+     * @return Un Mono con true si había una invitación válida y se ha aceptado.
+     */
+    public Mono<Boolean> acceptInvitation(UUID tenantId, String email) {
+        return databaseClient.sql("""
+                UPDATE public.tenant_invitations SET accepted_at = now()
+                WHERE id = (
+                    SELECT id FROM public.tenant_invitations
+                    WHERE tenant_id = :tenantId AND lower(email) = lower(:email)
+                      AND accepted_at IS NULL AND expires_at > now()
+                    ORDER BY created_at
+                    LIMIT 1
+                    FOR UPDATE SKIP LOCKED
+                )
+                RETURNING id
+                """)
+            .bind("tenantId", tenantId)
+            .bind("email", email)
+            .map(row -> row.get("id", UUID.class))
+            .one()
+            .hasElement();
+    }
+
+    /**
+     * Crea una invitación para que la cuenta social con ese email se dé de alta en el gimnasio
+     *
+     * @return Un Mono con el ID de la invitación.
+     */
+    public Mono<UUID> createInvitation(UUID tenantId, String email, Instant expiresAt) {
+        return databaseClient.sql("""
+                INSERT INTO public.tenant_invitations (tenant_id, email, expires_at)
+                VALUES (:tenantId, :email, :expiresAt)
+                RETURNING id
+                """)
+            .bind("tenantId", tenantId)
+            .bind("email", email)
+            .bind("expiresAt", expiresAt)
+            .map(row -> row.get("id", UUID.class))
+            .one();
+    }
+}
@@ -0,0 +1,164 @@
+package es.gymlog.repository;
+
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Acceso a las estadísticas de entrenamiento por periodo ('training_volume_rollups' y
+ * 'training_session_rollups').
+ * <p>
+ * Los registros y las sesiones se suman a filas DAY al escribirse. La compactación pliega los
+ * días de las semanas ya terminadas en una fila WEEK y una fila MONTH y borra las filas DAY, así
+ * que cada día está sumado en DAY o en WEEK y MONTH, nunca en ambos. Las consultas leen las filas
+ * del periodo pedido y añaden las filas DAY aún sin compactar, agrupadas por su periodo.
+ */
+@Repository
+public class TrainingRollupRepository {
+
+    private static final String USER_FILTER = "user_id = :userId AND ";
+
+    private final DatabaseClient databaseClient;
+
+    public TrainingRollupRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * Pliega las filas DAY anteriores a {@code before} en sus semanas y meses, en una única
+     * sentencia. Con varias instancias, cada fila DAY se pliega una sola vez: la que llega
+     * después no la encuentra al borrar.
+     *
+     * @param before Primer día que no se compacta (lunes de la semana en curso).
+     * @return Un Mono con el número de filas DAY plegadas.
+     */
+    public Mono<Long> compact(LocalDate before) {
+        return databaseClient.sql("""
+                WITH folded_volume AS (
+                    DELETE FROM training_volume_rollups
+                    WHERE period = 'DAY' AND period_start < :before
+                    RETURNING user_id, period_start, muscle_group, volume_grams, sets_count
+                ), folded_sessions AS (
+                    DELETE FROM training_session_rollups
+                    WHERE period = 'DAY' AND period_start < :before
+                    RETURNING user_id, period_start, sessions_count
+                ), volume AS (
+                    INSERT INTO training_volume_rollups AS r (user_id, period, period_start, muscle_group, volume_grams, sets_count)
+                    SELECT f.user_id, b.period, b.period_start, f.muscle_group, sum(f.volume_grams), sum(f.sets_count)
+                    FROM folded_volume f
+                    CROSS JOIN LATERAL (VALUES
+                        ('WEEK', date_trunc('week', f.period_start::timestamp)::date),
+                        ('MONTH', date_trunc('month', f.period_start::timestamp)::date)
+                    ) AS b(period, period_start)
+                    GROUP BY f.user_id, b.period, b.period_start, f.muscle_group
+                    ON CONFLICT (user_id, period, period_start, muscle_group) DO UPDATE
+                    SET volume_grams = r.volume_grams + EXCLUDED.volume_grams,
+                        sets_count = r.sets_count + EXCLUDED.sets_count
+                ), sessions AS (
+                    INSERT INTO training_session_rollups AS r (user_id, period, period_start, sessions_count)
+                    SELECT f.user_id, b.period, b.period_start, sum(f.sessions_count)
+                    FROM folded_sessions f
+                    CROSS JOIN LATERAL (VALUES
+                        ('WEEK', date_trunc('week', f.period_start::timestamp)::date),
+                        ('MONTH', date_trunc('month', f.period_start::timestamp)::date)
+                    ) AS b(period, period_start)
+                    GROUP BY f.user_id, b.period, b.period_start
+                    ON CONFLICT (user_id, period, period_start) DO UPDATE
+                    SET sessions_count = r.sessions_count + EXCLUDED.sessions_count
+                )
+                SELECT (SELECT count(*) FROM folded_volume) + (SELECT count(*) FROM folded_sessions) AS folded
+                """)
+            .bind("before", before)
+            .map(row -> row.get("folded", Long.class))
+            .one();
+    }
+
+    /**
+     * Volumen y series por periodo y grupo muscular, de un usuario o de todo el tenant.
+     *
+     * @param userId El ID del usuario, o null para sumar todos los usuarios.
+     * @param period WEEK o MONTH.
+     * @param from   Inicio del primer periodo incluido.
+     * @param to     Inicio del último periodo incluido.
+     * @param until  Inicio del periodo siguiente al último (límite de las filas DAY).
+     */
+    public Flux<VolumeBucket> findVolume(UUID userId, String period, LocalDate from, LocalDate to, LocalDate until) {
+        String userFilter = userId == null ? "" : USER_FILTER;
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("""
+                SELECT period_start, muscle_group, sum(volume_grams)::bigint AS volume_grams, sum(sets_count) AS sets_count
+                FROM (
+                    SELECT period_start, muscle_group, volume_grams, sets_count
+                    FROM training_volume_rollups
+                    WHERE %1$s period = :period AND period_start BETWEEN :from AND :to
+                    UNION ALL
+                    SELECT date_trunc(:unit, period_start::timestamp)::date, muscle_group, volume_grams, sets_count
+                    FROM training_volume_rollups
+                    WHERE %1$s period = 'DAY' AND period_start >= :from AND period_start < :until
+                ) buckets
+                GROUP BY period_start, muscle_group
+                ORDER BY period_start, muscle_group
+                """.formatted(userFilter));
+        return bindRange(spec, userId, period, from, to, until)
+            .map(row -> new VolumeBucket(
+                row.get("period_start", LocalDate.class),
+                row.get("muscle_group", String.class),
+                row.get("volume_grams", Long.class),
+                row.get("sets_count", Long.class)))
+            .all();
+    }
+
+    /**
+     * Sesiones por periodo, de un usuario o de todo el tenant (mismos parámetros que
+     * {@link #findVolume}).
+     */
+    public Flux<SessionBucket> findSessions(UUID userId, String period, LocalDate from, LocalDate to, LocalDate until) {
+        String userFilter = userId == null ? "" : USER_FILTER;
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql("""
+                SELECT period_start, sum(sessions_count) AS sessions_count
+                FROM (
+                    SELECT period_start, sessions_count
+                    FROM training_session_rollups
+                    WHERE %1$s period = :period AND period_start BETWEEN :from AND :to
+                    UNION ALL
+                    SELECT date_trunc(:unit, period_start::timestamp)::date, sessions_count
+                    FROM training_session_rollups
+                    WHERE %1$s period = 'DAY' AND period_start >= :from AND period_start < :until
+                ) buckets
+                GROUP BY period_start
+                ORDER BY period_start
+                """.formatted(userFilter));
+        return bindRange(spec, userId, period, from, to, until)
+            .map(row -> new SessionBucket(
+                row.get("period_start", LocalDate.class),
+                row.get("sessions_count", Long.class)))
+            .all();
+    }
+
+    private static DatabaseClient.GenericExecuteSpec bindRange(DatabaseClient.GenericExecuteSpec spec, UUID userId,
+                                                               String period, LocalDate from, LocalDate to, LocalDate until) {
+        if (userId != null) {
+            spec = spec.bind("userId", userId);
+        }
+        return spec
+            .bind("period", period)
+            .bind("unit", period.toLowerCase(Locale.ROOT))
+            .bind("from", from)
+            .bind("to", to)
+            .bind("until", until);
+    }
+
+    /**
+     * Volumen en gramos de un grupo muscular en un periodo ('' si el ejercicio no indica grupo)
+     */
+    public record VolumeBucket(LocalDate periodStart, String muscleGroup, long volumeGrams, long setsCount) {}
+
+    /**
+     * Sesiones de un periodo
+     */
+    public record SessionBucket(LocalDate periodStart, long sessionsCount) {}
+}
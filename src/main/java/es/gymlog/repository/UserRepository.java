@@ -1,8 +1,10 @@
 package es.gymlog.repository;
 
 import es.gymlog.model.User;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.UUID;
@@ -13,4 +15,53 @@ import java.util.UUID;
 @Repository
 public interface UserRepository extends ReactiveCrudRepository<User, UUID> {
     Mono<User> findByProviderAndProviderId(String provider, String providerId);
+
+    /**
+     * Obtiene los nombres de los roles de un usuario (p. ej. "OWNER")
+     *
+     * @param userId El ID del usuario.
+     * @return Un Flux con los nombres de sus roles, por nombre.
+     */
+    @Query("""
+        SELECT r.name FROM roles r
+        JOIN user_roles ur ON ur.role_id = r.id
+        WHERE ur.user_id = :userId
+        ORDER BY r.name
+        """)
+    Flux<String> findRoleNames(UUID userId);
+
+    /**
+     * Crea el usuario de una cuenta social o, si ya existe, actualiza su email y nombre
+     * cuando han cambiado, en una única sentencia. Si no hay cambios la fila no se reescribe
+     * y se devuelve tal cual.
+     * <p>
+     * Puede devolver vacío si otra transacción ha creado el usuario después de que empezara
+     * esta sentencia (el conflicto se detecta, pero la fila no es visible en su snapshot).
+     *
+     * @param id          El ID para el usuario si se crea.
+     * @param provider    El proveedor social.
+     * @param providerId  El ID del usuario en el proveedor.
+     * @param email       El email del usuario.
+     * @param displayName El nombre del usuario, o null para conservar el actual.
+     * @return Un Mono con el usuario creado, actualizado o existente.
+     */
+    @Query("""
+        WITH upserted AS (
+            INSERT INTO users (id, provider_id, provider, email, display_name, created_at, updated_at)
+            VALUES (:id, :providerId, :provider, :email, :displayName, now(), now())
+            ON CONFLICT (provider, provider_id) DO UPDATE
+                SET email = EXCLUDED.email,
+                    display_name = COALESCE(EXCLUDED.display_name, users.display_name),
+                    updated_at = now()
+                WHERE users.email IS DISTINCT FROM EXCLUDED.email
+                   OR users.display_name IS DISTINCT FROM COALESCE(EXCLUDED.display_name, users.display_name)
+            RETURNING *
+        )
+        SELECT * FROM upserted
+        UNION ALL
+        SELECT * FROM users
+        WHERE provider = :provider AND provider_id = :providerId
+          AND NOT EXISTS (SELECT 1 FROM upserted)
+        """)
+    Mono<User> upsertFromSocial(UUID id, String provider, String providerId, String email, String displayName);
 }
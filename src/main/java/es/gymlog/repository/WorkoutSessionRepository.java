@@ -1,9 +1,13 @@
 package es.gymlog.repository;
 
 import es.gymlog.model.WorkoutSession;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Instant;
 import java.util.UUID;
 
 /**
@@ -11,4 +15,89 @@ import java.util.UUID;
  */
 @Repository
 public interface WorkoutSessionRepository extends ReactiveCrudRepository<WorkoutSession, UUID> {
+
+    /**
+     * Columna JSON con cada sesión y sus registros de ejercicios (forma de WorkoutSessionHistoryDTO),
+     * de modo que una página del historial se lee en una única consulta.
+     */
+    String SESSION_HISTORY_JSON = """
+        SELECT json_build_object(
+            'id', ws.id,
+            'routineDayId', ws.routine_day_id,
+            'startTime', ws.start_time,
+            'endTime', ws.end_time,
+            'notes', ws.notes,
+            'logs', COALESCE((
+                SELECT json_agg(json_build_object(
+                    'id', el.id,
+                    'routineExerciseId', el.routine_exercise_id,
+                    'setsCompleted', el.sets_completed,
+                    'repsAchieved', el.reps_achieved,
+                    'weightKg', COALESCE(el.weight_grams / 1000.0, el.weight_kg),
+                    'notes', el.notes,
+                    'recordedAt', el.recorded_at
+                ) ORDER BY el.recorded_at, el.id)
+                FROM exercise_logs el
+                WHERE el.workout_session_id = ws.id
+            ), '[]'::json)
+        )::text
+        FROM workout_sessions ws
+        """;
+
+    /**
+     * Crea una sesión de entrenamiento y la suma a las sesiones del día del usuario
+     * ('training_session_rollups'), en una única sentencia.
+     *
+     * @param id           El ID de la nueva sesión.
+     * @param userId       El ID del usuario.
+     * @param routineDayId El ID del día de rutina, si la sesión sigue una rutina.
+     * @param startTime    Inicio de la sesión.
+     * @param notes        Notas de la sesión.
+     * @return Un Mono con la sesión creada.
+     */
+    @Query("""
+        WITH inserted AS (
+            INSERT INTO workout_sessions (id, user_id, routine_day_id, start_time, end_time, notes)
+            VALUES (:id, :userId, :routineDayId, :startTime, NULL, :notes)
+            RETURNING *
+        ), counted AS (
+            INSERT INTO training_session_rollups AS r (user_id, period, period_start, sessions_count)
+            SELECT user_id, 'DAY', (start_time AT TIME ZONE 'UTC')::date, 1
+            FROM inserted
+            ON CONFLICT (user_id, period, period_start) DO UPDATE
+            SET sessions_count = r.sessions_count + 1
+        )
+        SELECT * FROM inserted
+        """)
+    Mono<WorkoutSession> insertCounted(UUID id, UUID userId, UUID routineDayId, Instant startTime, String notes);
+
+    /**
+     * Primera página del historial del usuario, de la sesión más reciente a la más antigua.
+     *
+     * @param userId El ID del usuario.
+     * @param limit  Número máximo de sesiones.
+     * @return Un Flux con el JSON de cada sesión y sus registros.
+     */
+    @Query(SESSION_HISTORY_JSON + """
+        WHERE ws.user_id = :userId
+        ORDER BY ws.start_time DESC, ws.id DESC
+        LIMIT :limit
+        """)
+    Flux<String> findHistoryJson(UUID userId, int limit);
+
+    /**
+     * Página del historial del usuario anterior a la sesión (startTime, id) indicada.
+     *
+     * @param userId      El ID del usuario.
+     * @param beforeStart Inicio de la última sesión de la página anterior.
+     * @param beforeId    ID de la última sesión de la página anterior.
+     * @param limit       Número máximo de sesiones.
+     * @return Un Flux con el JSON de cada sesión y sus registros.
+     */
+    @Query(SESSION_HISTORY_JSON + """
+        WHERE ws.user_id = :userId AND (ws.start_time, ws.id) < (:beforeStart, :beforeId)
+        ORDER BY ws.start_time DESC, ws.id DESC
+        LIMIT :limit
+        """)
+    Flux<String> findHistoryJsonBefore(UUID userId, Instant beforeStart, UUID beforeId, int limit);
 }
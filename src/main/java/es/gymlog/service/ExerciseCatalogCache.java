@@ -0,0 +1,168 @@
+package es.gymlog.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import es.gymlog.api.dto.ExerciseDTO;
+import es.gymlog.config.CacheProperties;
+import es.gymlog.mapper.ExerciseMapper;
+import es.gymlog.repository.CatalogVersionRepository;
+import es.gymlog.repository.ExerciseRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caché en memoria del catálogo de ejercicios de cada tenant.
+ * <p>
+ * El catálogo se lee en casi todas las pantallas y solo cambia al crear o modificar un
+ * ejercicio. Cada tenant guarda una instantánea completa, ordenada por (name, id), con un ETag
+ * fuerte calculado como hash del JSON del catálogo: dos instancias con el mismo contenido dan
+ * el mismo ETag, y cualquier cambio lo modifica.
+ * <p>
+ * El tamaño total se acota por los bytes del JSON serializado ({@code maximum-weight}). Los
+ * catálogos con más de {@code max-exercises-per-tenant} ejercicios se marcan como no cacheables
+ * y se sirven siempre desde la base de datos.
+ * <p>
+ * Cada instantánea guarda la versión del catálogo con la que se cargó. Las escrituras aumentan la
+ * versión del tenant en 'catalog_versions' en la misma sentencia (ver
+ * {@link ExerciseRepository#BUMP_EXERCISES_VERSION}), y cada petición la lee con una búsqueda por
+ * clave primaria: si coincide se sirve la instantánea, y si no se recarga. Así una escritura en
+ * cualquier instancia se ve en todas en la siguiente petición, sin esperar a que caduque la entrada.
+ * Aciertos y fallos: métricas {@code cache.gets}, cache=exercise_catalog.
+ */
+@Component
+public class ExerciseCatalogCache {
+
+    private final ExerciseRepository exerciseRepository;
+    private final CatalogVersionRepository catalogVersionRepository;
+    private final ExerciseMapper exerciseMapper;
+    private final ObjectMapper objectMapper;
+    private final int maxExercisesPerTenant;
+    private final Cache<UUID, CatalogSnapshot> snapshots;
+
+    // Cargas en curso por tenant y versión; las peticiones concurrentes comparten la consulta,
+    // pero las que ya ven una versión posterior no se unen a una carga de la anterior
+    private final Map<InFlightKey, Mono<CatalogSnapshot>> inFlightLoads = new ConcurrentHashMap<>();
+
+    public ExerciseCatalogCache(ExerciseRepository exerciseRepository,
+                                CatalogVersionRepository catalogVersionRepository,
+                                ExerciseMapper exerciseMapper,
+                                ObjectMapper objectMapper,
+                                CacheProperties cacheProperties,
+                                MeterRegistry meterRegistry) {
+        CacheProperties.ExerciseCatalogConfig config = cacheProperties.exerciseCatalog();
+        this.exerciseRepository = exerciseRepository;
+        this.catalogVersionRepository = catalogVersionRepository;
+        this.exerciseMapper = exerciseMapper;
+        this.objectMapper = objectMapper;
+        this.maxExercisesPerTenant = config.maxExercisesPerTenant();
+        this.snapshots = Caffeine.newBuilder()
+            .maximumWeight(config.maximumWeight())
+            .weigher((UUID tenantId, CatalogSnapshot snapshot) -> snapshot.weight())
+            .expireAfterWrite(config.timeToLive())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, snapshots, "exercise_catalog");
+    }
+
+    /**
+     * Devuelve la instantánea del catálogo del tenant actual, recargándola si no está en memoria
+     * o si su versión ya no es la de la base de datos
+     */
+    public Mono<CatalogSnapshot> get(UUID tenantId) {
+        return catalogVersionRepository.find(CatalogVersionRepository.EXERCISES)
+            .flatMap(version -> {
+                CatalogSnapshot snapshot = snapshots.getIfPresent(tenantId);
+                if (snapshot != null && snapshot.version() == version) {
+                    return Mono.just(snapshot);
+                }
+                return inFlightLoads.computeIfAbsent(new InFlightKey(tenantId, version), key -> load(key.tenantId(), key.version())
+                    .doFinally(signal -> inFlightLoads.remove(key))
+                    .cache());
+            });
+    }
+
+    // La versión se lee antes que los ejercicios, así que el contenido nunca es anterior a ella;
+    // si una escritura se cuela entre ambas lecturas, la siguiente petición verá otra versión y recargará
+    private Mono<CatalogSnapshot> load(UUID tenantId, long version) {
+        return exerciseRepository.search(null, null, null, null, maxExercisesPerTenant + 1)
+            .map(exerciseMapper::toDto)
+            .collectList()
+            .map(exercises -> exercises.size() > maxExercisesPerTenant
+                ? CatalogSnapshot.tooLarge(version)
+                : createSnapshot(exercises, version))
+            .doOnNext(snapshot -> snapshots.asMap().compute(tenantId, (key, current) ->
+                current == null || current.version() <= version ? snapshot : current));
+    }
+
+    private CatalogSnapshot createSnapshot(List<ExerciseDTO> exercises, long version) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(exercises);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el catálogo de ejercicios", e);
+        }
+        String[] lowerCaseNames = new String[exercises.size()];
+        Map<UUID, Integer> positions = new HashMap<>(exercises.size() * 2);
+        for (int i = 0; i < exercises.size(); i++) {
+            ExerciseDTO exercise = exercises.get(i);
+            lowerCaseNames[i] = exercise.getName() == null ? "" : exercise.getName().toLowerCase(Locale.ROOT);
+            positions.put(exercise.getId(), i);
+        }
+        return new CatalogSnapshot(List.copyOf(exercises), lowerCaseNames, Map.copyOf(positions), etag(json), json.length, version);
+    }
+
+    private static String etag(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return "\"" + HexFormat.of().formatHex(Arrays.copyOf(digest, 16)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private record InFlightKey(UUID tenantId, long version) {}
+
+    /**
+     * Catálogo completo de un tenant, ordenado por (name, id).
+     *
+     * @param exercises      Ejercicios del catálogo.
+     * @param lowerCaseNames Nombres en minúsculas, en el mismo orden, para filtrar sin reconvertirlos.
+     * @param positions      Posición de cada ejercicio por ID, para continuar desde un cursor.
+     * @param etag           ETag fuerte del catálogo, o null si no está en memoria.
+     * @param weight         Tamaño en bytes del JSON del catálogo.
+     * @param version        Versión del catálogo en 'catalog_versions' con la que se cargó.
+     */
+    public record CatalogSnapshot(
+        List<ExerciseDTO> exercises,
+        String[] lowerCaseNames,
+        Map<UUID, Integer> positions,
+        String etag,
+        int weight,
+        long version
+    ) {
+
+        /** Marca de catálogo demasiado grande para guardarlo en memoria */
+        static CatalogSnapshot tooLarge(long version) {
+            return new CatalogSnapshot(List.of(), new String[0], Map.of(), null, 0, version);
+        }
+
+        public boolean cached() {
+            return etag != null;
+        }
+    }
+}
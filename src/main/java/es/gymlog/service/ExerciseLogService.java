@@ -2,12 +2,12 @@ package es.gymlog.service;
 
 import es.gymlog.api.dto.CreateExerciseLogDTO;
 import es.gymlog.api.dto.ExerciseLogDTO;
+import es.gymlog.config.RequestContext;
 import es.gymlog.mapper.ExerciseLogMapper;
-import es.gymlog.model.ExerciseLog;
 import es.gymlog.repository.ExerciseLogRepository;
+import es.gymlog.repository.ExerciseLogRepository.LoggedExercise;
 import es.gymlog.repository.WorkoutSessionRepository;
 import org.springframework.security.access.AccessDeniedException;
-import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
@@ -30,40 +30,39 @@ public class ExerciseLogService {
         this.workoutSessionRepository = workoutSessionRepository;
     }
 
-    private Mono<UUID> getCurrentUserId() {
-        return ReactiveSecurityContextHolder.getContext()
-            .map(ctx -> (String) ctx.getAuthentication().getPrincipal())
-            .map(UUID::fromString);
-    }
-
     /**
-     * Registra el rendimiento de un ejercicio en una sesión de entrenamiento.
+     * Registra el rendimiento de un ejercicio en una sesión de entrenamiento, lo suma al
+     * progreso diario del usuario en ese ejercicio y comprueba si supera alguna de sus marcas
+     * personales, todo en la misma sentencia.
      * @param sessionId El ID de la sesión de entrenamiento.
      * @param dto       DTO con los detalles del rendimiento.
-     * @return DTO del registro creado.
+     * @return DTO del registro creado, con las marcas personales que supera.
      */
     public Mono<ExerciseLogDTO> logExercise(UUID sessionId, CreateExerciseLogDTO dto) {
-        return getCurrentUserId().flatMap(userId ->
-            workoutSessionRepository.findById(sessionId)
-                .switchIfEmpty(Mono.error(new IllegalArgumentException("La sesión de entrenamiento no existe.")))
-                .flatMap(session -> {
-                    if (!session.userId().equals(userId)) {
-                        return Mono.error(new AccessDeniedException("No tienes permiso para registrar en esta sesión."));
-                    }
-
-                    ExerciseLog log = new ExerciseLog(
+        return Mono.fromCallable(() -> new SetValues(exerciseLogMapper.reps(dto), exerciseLogMapper.weightGrams(dto)))
+            .flatMap(values -> RequestContext.currentUserId().flatMap(userId ->
+                exerciseLogRepository.insertForSession(
                         UUID.randomUUID(),
                         sessionId,
+                        userId,
                         dto.getRoutineExerciseId(),
                         dto.getSetsCompleted(),
                         dto.getRepsAchieved(),
-                        dto.getWeightKg(),
+                        values.reps(),
+                        values.weightGrams(),
                         dto.getNotes(),
                         Instant.now()
-                    );
-                    return exerciseLogRepository.save(log);
-                })
-                .map(exerciseLogMapper::toDto)
-        );
+                    )
+                    .switchIfEmpty(Mono.defer(() -> workoutSessionRepository.existsById(sessionId)
+                        .flatMap(exists -> Mono.<LoggedExercise>error(exists
+                            ? new AccessDeniedException("No tienes permiso para registrar en esta sesión.")
+                            : new IllegalArgumentException("La sesión de entrenamiento no existe.")))))
+            ))
+            .map(exerciseLogMapper::toDto);
     }
+
+    /**
+     * Series del registro ya convertidas: repeticiones de cada serie y peso en gramos
+     */
+    private record SetValues(int[] reps, int weightGrams) {}
 }
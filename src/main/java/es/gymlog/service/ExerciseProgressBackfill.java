@@ -0,0 +1,90 @@
+package es.gymlog.service;
+
+import es.gymlog.config.AnalyticsProperties;
+import es.gymlog.config.TenantContextHolder;
+import es.gymlog.config.TenantLiquibaseManager;
+import es.gymlog.config.TenantResolver.TenantContext;
+import es.gymlog.entity.Tenant;
+import es.gymlog.repository.ExerciseProgressRepository;
+import es.gymlog.repository.TenantRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Construye el progreso diario por ejercicio ('exercise_progress_daily'), el volumen diario
+ * ('training_volume_rollups') y las marcas personales a partir de los registros anteriores a
+ * esas tablas.
+ * <p>
+ * Recorre los tenants activos de uno en uno y, en cada esquema, suma los registros pendientes
+ * en lotes de {@code batch-size}. Cada lote se bloquea, se suma y se marca en una única
+ * sentencia, así que el backfill puede interrumpirse en cualquier momento: al volver a arrancar
+ * continúa por los registros sin marcar. Varias instancias pueden ejecutarlo a la vez, porque
+ * los lotes bloqueados por otra se saltan. Cuando ya no quedan pendientes, cada tenant se resuelve con
+ * una única consulta sobre el índice parcial de pendientes.
+ */
+@Component
+public class ExerciseProgressBackfill implements SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExerciseProgressBackfill.class);
+
+    private final TenantRepository tenantRepository;
+    private final TenantLiquibaseManager tenantLiquibaseManager;
+    private final ExerciseProgressRepository exerciseProgressRepository;
+    private final AnalyticsProperties.BackfillConfig config;
+
+    private Disposable backfillTask;
+
+    public ExerciseProgressBackfill(TenantRepository tenantRepository,
+                                    TenantLiquibaseManager tenantLiquibaseManager,
+                                    ExerciseProgressRepository exerciseProgressRepository,
+                                    AnalyticsProperties analyticsProperties) {
+        this.tenantRepository = tenantRepository;
+        this.tenantLiquibaseManager = tenantLiquibaseManager;
+        this.exerciseProgressRepository = exerciseProgressRepository;
+        this.config = analyticsProperties.progressBackfill();
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!config.enabled()) {
+            return;
+        }
+        backfillTask = tenantRepository.findByIsActiveTrue()
+            .delaySubscription(config.startDelay())
+            .concatMap(tenant -> backfillTenant(tenant)
+                .onErrorResume(error -> {
+                    logger.error("Error en el backfill de progreso del esquema '{}': {}", tenant.schemaName(), error.getMessage());
+                    return Mono.empty();
+                }))
+            .subscribe(null,
+                error -> logger.error("Error en el backfill de progreso por ejercicio", error),
+                () -> logger.info("Backfill de progreso por ejercicio completado"));
+    }
+
+    @Override
+    public void destroy() {
+        if (backfillTask != null) {
+            backfillTask.dispose();
+        }
+    }
+
+    private Mono<Void> backfillTenant(Tenant tenant) {
+        Mono<Long> batch = exerciseProgressRepository.applyPendingBatch(config.batchSize())
+            .contextWrite(TenantContextHolder.withTenantContext(TenantContext.forSchema(tenant.shard(), tenant.schemaName())));
+        return tenantLiquibaseManager.ensureMigrated(tenant.shard(), tenant.schemaName())
+            .then(batch.repeat()
+                .takeUntil(applied -> applied < config.batchSize())
+                .reduce(0L, Long::sum))
+            .doOnNext(applied -> {
+                if (applied > 0) {
+                    logger.info("Backfill de progreso del esquema '{}': {} registros sumados", tenant.schemaName(), applied);
+                }
+            })
+            .then();
+    }
+}
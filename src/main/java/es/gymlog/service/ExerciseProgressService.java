@@ -0,0 +1,51 @@
+package es.gymlog.service;
+
+import es.gymlog.api.dto.ExerciseProgressPointDTO;
+import es.gymlog.config.RequestContext;
+import es.gymlog.mapper.ExerciseProgressMapper;
+import es.gymlog.repository.ExerciseProgressRepository;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+/**
+ * Servicio de consulta del progreso de los usuarios por ejercicio.
+ * <p>
+ * Lee solo el agregado diario ('exercise_progress_daily'), que se mantiene al registrar cada
+ * ejercicio: el coste de una gráfica depende de los días consultados, no del historial total.
+ */
+@Service
+public class ExerciseProgressService {
+
+    private static final int DEFAULT_RANGE_DAYS = 365;
+
+    private final ExerciseProgressRepository exerciseProgressRepository;
+    private final ExerciseProgressMapper exerciseProgressMapper;
+
+    public ExerciseProgressService(ExerciseProgressRepository exerciseProgressRepository,
+                                   ExerciseProgressMapper exerciseProgressMapper) {
+        this.exerciseProgressRepository = exerciseProgressRepository;
+        this.exerciseProgressMapper = exerciseProgressMapper;
+    }
+
+    /**
+     * Obtiene el progreso diario del usuario actual en un ejercicio.
+     * @param exerciseId El ID del ejercicio.
+     * @param from       Primer día incluido; por defecto, un año antes de {@code to}.
+     * @param to         Último día incluido; por defecto, hoy (UTC).
+     * @return Un Flux con un punto por cada día con registros, ordenado por fecha.
+     */
+    public Flux<ExerciseProgressPointDTO> getProgress(UUID exerciseId, LocalDate from, LocalDate to) {
+        LocalDate end = to != null ? to : LocalDate.now(ZoneOffset.UTC);
+        LocalDate start = from != null ? from : end.minusDays(DEFAULT_RANGE_DAYS);
+        if (start.isAfter(end)) {
+            return Flux.error(new IllegalArgumentException("La fecha 'from' no puede ser posterior a 'to'."));
+        }
+        return RequestContext.currentUserId().flatMapMany(userId ->
+            exerciseProgressRepository.findByUserAndExercise(userId, exerciseId, start, end)
+                .map(exerciseProgressMapper::toDto));
+    }
+}
@@ -3,63 +3,193 @@ package es.gymlog.service;
 import es.gymlog.api.dto.CreateExerciseDTO;
 import es.gymlog.api.dto.ExerciseDTO;
 import es.gymlog.api.dto.UpdateExerciseDTO;
+import es.gymlog.config.TenantContextHolder;
 import es.gymlog.mapper.ExerciseMapper;
 import es.gymlog.model.Exercise;
 import es.gymlog.repository.ExerciseRepository;
 import org.springframework.stereotype.Service;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
 
 @Service
 public class ExerciseService {
 
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 100;
+
+    /** Longitud de un UUID en texto; el cursor es el ID seguido del nombre */
+    private static final int UUID_LENGTH = 36;
+
     private final ExerciseRepository exerciseRepository;
     private final ExerciseMapper exerciseMapper;
+    private final ExerciseCatalogCache exerciseCatalogCache;
 
-    public ExerciseService(ExerciseRepository exerciseRepository, ExerciseMapper exerciseMapper) {
+    public ExerciseService(ExerciseRepository exerciseRepository, ExerciseMapper exerciseMapper, ExerciseCatalogCache exerciseCatalogCache) {
         this.exerciseRepository = exerciseRepository;
         this.exerciseMapper = exerciseMapper;
+        this.exerciseCatalogCache = exerciseCatalogCache;
     }
 
-    public Flux<ExerciseDTO> getAllExercises() {
-        return exerciseRepository.findAll().map(exerciseMapper::toDto);
+    /**
+     * Busca en el catálogo de ejercicios con paginación por cursor sobre (name, id).
+     * <p>
+     * Si el catálogo del tenant está en {@link ExerciseCatalogCache}, la página se filtra en
+     * memoria y lleva el ETag del catálogo, sin consultar la base de datos. Si no (catálogo
+     * demasiado grande, o cursor de un ejercicio que ya no está en la instantánea), se consulta
+     * la base de datos leyendo un ejercicio más del tamaño de página para saber si hay página
+     * siguiente, sin contar el total.
+     *
+     * @param name              Texto contenido en el nombre (sin distinguir mayúsculas), o null.
+     * @param targetMuscleGroup Grupo muscular, o null.
+     * @param cursor            Cursor devuelto con la página anterior, o null para la primera.
+     * @param limit             Tamaño de página solicitado, acotado a {@value #MAX_PAGE_SIZE}.
+     * @return Un Mono con la página, el cursor de la siguiente, si la hay, y el ETag si procede.
+     */
+    public Mono<ExercisePage> searchExercises(String name, String targetMuscleGroup, String cursor, Integer limit) {
+        return Mono.defer(() -> {
+            ExerciseQuery query = new ExerciseQuery(
+                name == null || name.isBlank() ? null : name.trim(),
+                targetMuscleGroup == null || targetMuscleGroup.isBlank() ? null : targetMuscleGroup,
+                cursor == null || cursor.isBlank() ? null : decodeCursor(cursor),
+                limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE))
+            );
+            return TenantContextHolder.getTenantContext()
+                .flatMap(tenantContext -> exerciseCatalogCache.get(tenantContext.tenantId()))
+                .mapNotNull(snapshot -> snapshot.cached() ? searchInSnapshot(snapshot, query) : null)
+                .switchIfEmpty(Mono.defer(() -> searchInDatabase(query)));
+        });
+    }
+
+    /**
+     * Filtra la página en la instantánea del catálogo. Devuelve null si el cursor apunta a un
+     * ejercicio que no está en ella.
+     */
+    private ExercisePage searchInSnapshot(ExerciseCatalogCache.CatalogSnapshot snapshot, ExerciseQuery query) {
+        int start = 0;
+        if (query.after() != null) {
+            Integer position = snapshot.positions().get(query.after().id());
+            if (position == null) {
+                return null;
+            }
+            start = position + 1;
+        }
+        String needle = query.name() == null ? null : query.name().toLowerCase(Locale.ROOT);
+        List<ExerciseDTO> exercises = snapshot.exercises();
+        List<ExerciseDTO> page = new ArrayList<>(query.pageSize());
+        for (int i = start; i < exercises.size(); i++) {
+            ExerciseDTO exercise = exercises.get(i);
+            if (needle != null && !snapshot.lowerCaseNames()[i].contains(needle)) {
+                continue;
+            }
+            if (query.targetMuscleGroup() != null && !query.targetMuscleGroup().equals(exercise.getTargetMuscleGroup())) {
+                continue;
+            }
+            if (page.size() == query.pageSize()) {
+                ExerciseDTO last = page.get(page.size() - 1);
+                return new ExercisePage(page, encodeCursor(last.getId(), last.getName()), snapshot.etag());
+            }
+            page.add(exercise);
+        }
+        return new ExercisePage(page, null, snapshot.etag());
+    }
+
+    private Mono<ExercisePage> searchInDatabase(ExerciseQuery query) {
+        String namePattern = query.name() == null ? null : "%" + escapeLike(query.name()) + "%";
+        String afterName = query.after() == null ? null : query.after().name();
+        UUID afterId = query.after() == null ? null : query.after().id();
+        int pageSize = query.pageSize();
+
+        return exerciseRepository.search(namePattern, query.targetMuscleGroup(), afterName, afterId, pageSize + 1)
+            .collectList()
+            .map(exercises -> {
+                if (exercises.size() <= pageSize) {
+                    return new ExercisePage(exercises.stream().map(exerciseMapper::toDto).toList(), null, null);
+                }
+                List<Exercise> page = exercises.subList(0, pageSize);
+                Exercise last = page.get(pageSize - 1);
+                return new ExercisePage(page.stream().map(exerciseMapper::toDto).toList(), encodeCursor(last.id(), last.name()), null);
+            });
     }
 
     public Mono<ExerciseDTO> createExercise(CreateExerciseDTO dto) {
         Exercise exercise = exerciseMapper.toEntity(dto);
-        exercise = new Exercise(
-            UUID.randomUUID(),
-            exercise.name(),
-            exercise.description(),
-            exercise.videoUrl(),
-            exercise.targetMuscleGroup(),
-            null, // TODO: Set createdByUserId from security context
-            exercise.isPublic(),
-            Instant.now(),
-            Instant.now()
-        );
-        return exerciseRepository.save(exercise).map(exerciseMapper::toDto);
+        Instant now = Instant.now();
+        return exerciseRepository.insertVersioned(
+                UUID.randomUUID(),
+                exercise.name(),
+                exercise.description(),
+                exercise.videoUrl(),
+                exercise.targetMuscleGroup(),
+                null, // TODO: Set createdByUserId from security context
+                exercise.isPublic(),
+                now,
+                now
+            )
+            .map(exerciseMapper::toDto);
     }
 
     public Mono<ExerciseDTO> updateExercise(UUID id, UpdateExerciseDTO dto) {
         return exerciseRepository.findById(id)
-            .flatMap(existingExercise -> {
-                Exercise exerciseToUpdate = new Exercise(
-                    existingExercise.id(),
-                    dto.getName() != null ? dto.getName() : existingExercise.name(),
-                    dto.getDescription() != null ? dto.getDescription() : existingExercise.description(),
-                    dto.getVideoUrl() != null ? dto.getVideoUrl() : existingExercise.videoUrl(),
-                    dto.getTargetMuscleGroup() != null ? dto.getTargetMuscleGroup() : existingExercise.targetMuscleGroup(),
-                    existingExercise.createdByUserId(),
-                    dto.getIsPublic() != null ? dto.getIsPublic() : existingExercise.isPublic(),
-                    existingExercise.createdAt(),
-                    Instant.now()
-                );
-                return exerciseRepository.save(exerciseToUpdate);
-            })
+            .flatMap(existingExercise -> exerciseRepository.updateVersioned(
+                existingExercise.id(),
+                dto.getName() != null ? dto.getName() : existingExercise.name(),
+                dto.getDescription() != null ? dto.getDescription() : existingExercise.description(),
+                dto.getVideoUrl() != null ? dto.getVideoUrl() : existingExercise.videoUrl(),
+                dto.getTargetMuscleGroup() != null ? dto.getTargetMuscleGroup() : existingExercise.targetMuscleGroup(),
+                dto.getIsPublic() != null ? dto.getIsPublic() : existingExercise.isPublic(),
+                Instant.now()
+            ))
             .map(exerciseMapper::toDto);
     }
+
+    private static String encodeCursor(UUID id, String name) {
+        String value = id.toString() + name;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cursor decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (decoded.length() < UUID_LENGTH) {
+                throw new IllegalArgumentException("Cursor no válido.");
+            }
+            return new Cursor(UUID.fromString(decoded.substring(0, UUID_LENGTH)), decoded.substring(UUID_LENGTH));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cursor no válido.", e);
+        }
+    }
+
+    /**
+     * Escapa los comodines de LIKE para que el texto se busque literalmente
+     */
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Último ejercicio de la página anterior
+     */
+    private record Cursor(UUID id, String name) {}
+
+    /**
+     * Filtros normalizados de una búsqueda
+     */
+    private record ExerciseQuery(String name, String targetMuscleGroup, Cursor after, int pageSize) {}
+
+    /**
+     * Página de ejercicios, cursor de la siguiente (null si es la última) y ETag del catálogo
+     * (null si la página se ha leído de la base de datos)
+     */
+    public record ExercisePage(
+        List<ExerciseDTO> exercises,
+        String nextCursor,
+        String etag
+    ) {}
 }
@@ -0,0 +1,183 @@
+package es.gymlog.service;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Caché en memoria de un JWKS remoto (claves públicas de firma de un proveedor), indexada por kid.
+ * <p>
+ * Las claves se descargan en el primer uso y después se refrescan en segundo plano según la
+ * cabecera Cache-Control (max-age) de la respuesta, por lo que verificar un token no realiza
+ * ninguna llamada de red. Si un refresco falla se conservan las claves anteriores y se
+ * reintenta pasado un minuto.
+ * <p>
+ * Si llega un token firmado con un kid desconocido (el proveedor ha rotado sus claves), se
+ * refresca el JWKS en el momento. Las peticiones concurrentes comparten un único refresco
+ * y, para que tokens con kids inventados no provoquen descargas continuas, estos refrescos
+ * se limitan a uno cada 30 segundos.
+ */
+public class RemoteJwkSetCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RemoteJwkSetCache.class);
+
+    private static final Pattern MAX_AGE_PATTERN = Pattern.compile("max-age=(\\d+)");
+    private static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofHours(1);
+    private static final Duration MIN_REFRESH_INTERVAL = Duration.ofMinutes(1);
+    private static final Duration MAX_REFRESH_INTERVAL = Duration.ofHours(24);
+    private static final Duration RETRY_DELAY = Duration.ofMinutes(1);
+    private static final Duration FETCH_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration UNKNOWN_KID_REFRESH_INTERVAL = Duration.ofSeconds(30);
+
+    private final String provider;
+    private final String jwksUri;
+    private final WebClient webClient;
+    private final Mono<Map<String, JWK>> initialLoad;
+    private final AtomicReference<Mono<Map<String, JWK>>> unknownKidRefresh = new AtomicReference<>();
+    private volatile long lastUnknownKidRefreshNanos = System.nanoTime() - UNKNOWN_KID_REFRESH_INTERVAL.toNanos();
+
+    private volatile Map<String, JWK> keys;
+    private Disposable refreshTask;
+
+    public RemoteJwkSetCache(String provider, String jwksUri, WebClient webClient) {
+        this.provider = provider;
+        this.jwksUri = jwksUri;
+        this.webClient = webClient;
+        // La primera carga se comparte entre las peticiones concurrentes; si falla, se reintenta en la siguiente
+        this.initialLoad = fetch().cache(
+            loadedKeys -> Duration.ofMillis(Long.MAX_VALUE),
+            error -> Duration.ZERO,
+            () -> Duration.ZERO);
+    }
+
+    /**
+     * Devuelve la clave con el kid indicado, o vacío si el JWKS (refrescado si hace falta)
+     * no la contiene. Sin kid, devuelve todas las claves.
+     */
+    public Flux<JWK> getKeys(String kid) {
+        Map<String, JWK> currentKeys = keys;
+        Mono<Map<String, JWK>> loadedKeys = currentKeys != null ? Mono.just(currentKeys) : initialLoad;
+        return loadedKeys.flatMapMany(jwks -> {
+            if (kid == null) {
+                return Flux.fromIterable(jwks.values());
+            }
+            JWK key = jwks.get(kid);
+            if (key != null) {
+                return Flux.just(key);
+            }
+            return refreshForUnknownKid(kid).flatMapMany(refreshedKeys -> Mono.justOrEmpty(refreshedKeys.get(kid)));
+        });
+    }
+
+    /**
+     * Refresca el JWKS porque un token usa un kid que no está en caché. Devuelve el refresco
+     * en curso si ya hay uno, o las claves actuales si se refrescó hace menos de 30 segundos.
+     */
+    private Mono<Map<String, JWK>> refreshForUnknownKid(String kid) {
+        Mono<Map<String, JWK>> inFlight = unknownKidRefresh.get();
+        if (inFlight != null) {
+            return inFlight;
+        }
+        long now = System.nanoTime();
+        if (now - lastUnknownKidRefreshNanos < UNKNOWN_KID_REFRESH_INTERVAL.toNanos()) {
+            return Mono.justOrEmpty(keys);
+        }
+
+        Mono<Map<String, JWK>> refresh = fetch()
+            .onErrorResume(error -> Mono.justOrEmpty(keys))
+            .doFinally(signal -> unknownKidRefresh.set(null))
+            .cache();
+        if (!unknownKidRefresh.compareAndSet(null, refresh)) {
+            Mono<Map<String, JWK>> concurrentRefresh = unknownKidRefresh.get();
+            return concurrentRefresh != null ? concurrentRefresh : Mono.justOrEmpty(keys);
+        }
+        lastUnknownKidRefreshNanos = now;
+        logger.info("Token de {} firmado con kid desconocido '{}'; refrescando JWKS", provider, kid);
+        return refresh;
+    }
+
+    /**
+     * Detiene el refresco en segundo plano
+     */
+    public synchronized void dispose() {
+        if (refreshTask != null) {
+            refreshTask.dispose();
+        }
+    }
+
+    /**
+     * Descarga el JWKS, sustituye las claves en memoria y programa el siguiente refresco
+     */
+    private Mono<Map<String, JWK>> fetch() {
+        return webClient.get()
+            .uri(jwksUri)
+            .retrieve()
+            .toEntity(String.class)
+            .timeout(FETCH_TIMEOUT)
+            .map(response -> {
+                Map<String, JWK> loadedKeys = parseKeys(response.getBody());
+                keys = loadedKeys;
+                Duration refreshInterval = refreshInterval(response);
+                logger.info("JWKS de {} cargado con {} claves; próximo refresco en {}",
+                           provider, loadedKeys.size(), refreshInterval);
+                scheduleRefresh(refreshInterval);
+                return loadedKeys;
+            })
+            .doOnError(error -> logger.error("Error descargando el JWKS de {} desde {}: {}",
+                                            provider, jwksUri, error.getMessage()));
+    }
+
+    private synchronized void scheduleRefresh(Duration delay) {
+        if (refreshTask != null) {
+            refreshTask.dispose();
+        }
+        refreshTask = Mono.delay(delay)
+            .flatMap(tick -> fetch())
+            .subscribe(null, error -> scheduleRefresh(RETRY_DELAY));
+    }
+
+    private Map<String, JWK> parseKeys(String body) {
+        try {
+            return JWKSet.parse(body).getKeys().stream()
+                .filter(jwk -> jwk.getKeyID() != null)
+                .collect(Collectors.toUnmodifiableMap(JWK::getKeyID, Function.identity(), (first, second) -> first));
+        } catch (ParseException e) {
+            throw new IllegalStateException("JWKS de " + provider + " no válido: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Calcula el intervalo de refresco a partir del max-age de Cache-Control, acotado a un rango razonable
+     */
+    private static Duration refreshInterval(ResponseEntity<String> response) {
+        String cacheControl = response.getHeaders().getFirst(HttpHeaders.CACHE_CONTROL);
+        if (cacheControl == null) {
+            return DEFAULT_REFRESH_INTERVAL;
+        }
+        Matcher matcher = MAX_AGE_PATTERN.matcher(cacheControl);
+        if (!matcher.find()) {
+            return DEFAULT_REFRESH_INTERVAL;
+        }
+        Duration maxAge = Duration.ofSeconds(Long.parseLong(matcher.group(1)));
+        if (maxAge.compareTo(MIN_REFRESH_INTERVAL) < 0) {
+            return MIN_REFRESH_INTERVAL;
+        }
+        return maxAge.compareTo(MAX_REFRESH_INTERVAL) > 0 ? MAX_REFRESH_INTERVAL : maxAge;
+    }
+}
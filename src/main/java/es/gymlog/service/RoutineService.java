@@ -1,18 +1,20 @@
 package es.gymlog.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import es.gymlog.api.dto.CreateRoutineDTO;
 import es.gymlog.api.dto.RoutineDTO;
+import es.gymlog.api.dto.RoutineDetailDTO;
 import es.gymlog.api.dto.UpdateRoutineDTO;
+import es.gymlog.config.ConditionalGetSupport;
+import es.gymlog.config.RequestContext;
 import es.gymlog.mapper.RoutineMapper;
-import es.gymlog.model.Routine;
+import es.gymlog.repository.CollectionVersionRepository;
 import es.gymlog.repository.RoutineRepository;
 import org.springframework.security.access.AccessDeniedException;
-import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.time.Instant;
 import java.util.UUID;
 
 /**
@@ -23,57 +25,69 @@ import java.util.UUID;
 @Service
 public class RoutineService {
 
+    /** Nombre de la colección de rutinas en 'collection_versions' */
+    static final String ROUTINES_COLLECTION = "routines";
+
     private final RoutineRepository routineRepository;
     private final RoutineMapper routineMapper;
+    private final ObjectMapper objectMapper;
+    private final CollectionVersionRepository collectionVersionRepository;
 
     /**
      * Constructor para la inyección de dependencias.
      *
      * @param routineRepository El repositorio para el acceso a datos de las rutinas.
      * @param routineMapper     El mapper para convertir entre entidades y DTOs.
+     * @param objectMapper      El ObjectMapper para leer el detalle construido en la base de datos.
+     * @param collectionVersionRepository El repositorio de versiones de colecciones de usuario.
      */
-    public RoutineService(RoutineRepository routineRepository, RoutineMapper routineMapper) {
+    public RoutineService(RoutineRepository routineRepository, RoutineMapper routineMapper, ObjectMapper objectMapper,
+                          CollectionVersionRepository collectionVersionRepository) {
         this.routineRepository = routineRepository;
         this.routineMapper = routineMapper;
+        this.objectMapper = objectMapper;
+        this.collectionVersionRepository = collectionVersionRepository;
     }
 
     /**
-     * Obtiene el ID del usuario actualmente autenticado desde el contexto de seguridad reactivo.
+     * Recupera todas las rutinas pertenecientes al usuario autenticado.
      *
-     * @return Un Mono que emite el UUID del usuario.
+     * @return Un Flux de DTOs de las rutinas del usuario.
      */
-    private Mono<UUID> getCurrentUserId() {
-        // En un entorno real, esto extraería el 'subject' o 'sub' del token JWT
-        // que correspondería al UUID de nuestro usuario en la base de datos.
-        return ReactiveSecurityContextHolder.getContext()
-            .map(ctx -> (String) ctx.getAuthentication().getPrincipal())
-            .map(UUID::fromString);
+    public Flux<RoutineDTO> getAllRoutines() {
+        return RequestContext.currentUserId()
+            .flatMapMany(userId -> routineRepository.findByUserId(userId))
+            .map(routineMapper::toDto);
     }
 
     /**
-     * Comprueba si una rutina pertenece al usuario especificado.
+     * Obtiene los validadores (ETag y Last-Modified) de la colección de rutinas del usuario
+     * autenticado, con una búsqueda por clave primaria y sin leer las rutinas.
      *
-     * @param routine La rutina a comprobar.
-     * @param userId  El ID del usuario con el que se debe comparar.
-     * @return Un Mono que emite la rutina si la comprobación es exitosa, o emite un error de acceso denegado.
+     * @return Un Mono con los validadores de la colección.
      */
-    private Mono<Routine> checkOwnership(Routine routine, UUID userId) {
-        if (routine.userId().equals(userId)) {
-            return Mono.just(routine);
-        } else {
-            return Mono.error(new AccessDeniedException("El usuario no tiene permiso para acceder a esta rutina."));
-        }
+    public Mono<ConditionalGetSupport.Validators> getRoutinesValidators() {
+        return RequestContext.currentUserId().flatMap(userId ->
+            collectionVersionRepository.find(userId, ROUTINES_COLLECTION)
+                .map(version -> ConditionalGetSupport.Validators.of(ROUTINES_COLLECTION, userId, version.version(), version.modifiedAt()))
+                .defaultIfEmpty(ConditionalGetSupport.Validators.of(ROUTINES_COLLECTION, userId, 0, null))
+        );
     }
 
     /**
-     * Recupera todas las rutinas pertenecientes al usuario autenticado.
+     * Recupera el detalle completo de una rutina del usuario autenticado, con sus días y
+     * ejercicios. El documento se construye en una única consulta, ya ordenado, y aquí solo
+     * se deserializa.
      *
-     * @return Un Flux de DTOs de las rutinas del usuario.
+     * @param id El ID de la rutina.
+     * @return Un Mono que emite el detalle de la rutina, o vacío si no existe.
      */
-    public Flux<RoutineDTO> getAllRoutines() {
-        return getCurrentUserId()
-            .flatMapMany(userId -> routineRepository.findByUserId(userId))
-            .map(routineMapper::toDto);
+    public Mono<RoutineDetailDTO> getRoutineDetail(UUID id) {
+        return RequestContext.currentUserId().flatMap(userId ->
+            routineRepository.findDetailJson(id, userId)
+                .switchIfEmpty(Mono.defer(() -> checkForbidden(id)))
+                .flatMap(json -> Mono.fromCallable(() -> objectMapper.readValue(json, RoutineDetailDTO.class)))
+        );
     }
 
     /**
@@ -83,56 +97,54 @@ public class RoutineService {
      * @return Un Mono que emite el DTO de la rutina creada.
      */
     public Mono<RoutineDTO> createRoutine(CreateRoutineDTO dto) {
-        return getCurrentUserId().flatMap(userId -> {
-            Routine routine = new Routine(
-                UUID.randomUUID(),
-                userId,
-                dto.getName(),
-                dto.getIsActive(),
-                Instant.now(),
-                Instant.now()
-            );
-            return routineRepository.save(routine).map(routineMapper::toDto);
-        });
+        return RequestContext.currentUserId().flatMap(userId ->
+            routineRepository.insertOwned(UUID.randomUUID(), userId, dto.getName(), dto.getIsActive())
+                .map(routineMapper::toDto)
+        );
     }
 
     /**
-     * Actualiza una rutina existente, verificando primero que pertenece al usuario autenticado.
+     * Actualiza una rutina existente del usuario autenticado. La comprobación de propiedad
+     * forma parte de la propia sentencia UPDATE.
      *
      * @param id  El ID de la rutina a actualizar.
      * @param dto El DTO con los datos a actualizar.
-     * @return Un Mono que emite el DTO de la rutina actualizada.
+     * @return Un Mono que emite el DTO de la rutina actualizada, o vacío si no existe.
      */
     public Mono<RoutineDTO> updateRoutine(UUID id, UpdateRoutineDTO dto) {
-        return getCurrentUserId().flatMap(userId ->
-            routineRepository.findById(id)
-                .flatMap(existingRoutine -> checkOwnership(existingRoutine, userId))
-                .flatMap(ownedRoutine -> {
-                    Routine routineToUpdate = new Routine(
-                        ownedRoutine.id(),
-                        ownedRoutine.userId(),
-                        dto.getName() != null ? dto.getName() : ownedRoutine.name(),
-                        dto.getIsActive() != null ? dto.getIsActive() : ownedRoutine.isActive(),
-                        ownedRoutine.createdAt(),
-                        Instant.now()
-                    );
-                    return routineRepository.save(routineToUpdate);
-                })
+        return RequestContext.currentUserId().flatMap(userId ->
+            routineRepository.updateOwned(id, userId, dto.getName(), dto.getIsActive())
+                .switchIfEmpty(Mono.defer(() -> checkForbidden(id)))
                 .map(routineMapper::toDto)
         );
     }
 
     /**
-     * Elimina una rutina, verificando primero que pertenece al usuario autenticado.
+     * Elimina una rutina del usuario autenticado. La comprobación de propiedad forma parte
+     * de la propia sentencia DELETE.
      *
      * @param id El ID de la rutina a eliminar.
      * @return Un Mono<Void> que se completa cuando la operación termina.
      */
     public Mono<Void> deleteRoutine(UUID id) {
-        return getCurrentUserId().flatMap(userId ->
-            routineRepository.findById(id)
-                .flatMap(routine -> checkOwnership(routine, userId))
-                .flatMap(routineRepository::delete)
+        return RequestContext.currentUserId().flatMap(userId ->
+            routineRepository.deleteOwned(id, userId)
+                .flatMap(deleted -> deleted > 0 ? Mono.<Void>empty() : checkForbidden(id))
         );
     }
+
+    /**
+     * Cuando una sentencia con comprobación de propiedad no afecta a ninguna fila, comprueba si
+     * la rutina existe (pertenece a otro usuario) para devolver un error de acceso denegado.
+     * Si no existe, completa vacío.
+     *
+     * @param id El ID de la rutina.
+     * @return Un Mono vacío, o con error de acceso denegado si la rutina es de otro usuario.
+     */
+    private <T> Mono<T> checkForbidden(UUID id) {
+        return routineRepository.existsById(id)
+            .flatMap(exists -> exists
+                ? Mono.error(new AccessDeniedException("El usuario no tiene permiso para acceder a esta rutina."))
+                : Mono.empty());
+    }
 }
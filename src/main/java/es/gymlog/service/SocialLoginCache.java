@@ -0,0 +1,127 @@
+package es.gymlog.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import es.gymlog.config.SecurityProperties;
+import es.gymlog.model.User;
+import es.gymlog.service.SocialTokenValidationService.SocialUserInfo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Caché de logins sociales ya verificados.
+ * <p>
+ * Los clientes móviles reintentan el login con el mismo token del proveedor cuando la red
+ * falla. Mientras el token siga siendo válido, el reintento recupera de aquí el usuario
+ * verificado y el gimnasio en el que está, sin volver a llamar al proveedor. La pertenencia al
+ * gimnasio y los roles no se guardan: se vuelven a leer en cada reintento, de modo que quitar
+ * a un miembro o un rol se aplica también a los tokens en caché.
+ * <p>
+ * La clave es un hash SHA-256 de (tenant pedido en X-Tenant-ID, proveedor, token), de modo que
+ * los tokens no se guardan en memoria. Cada entrada caduca cuando caduca el token (o pasado {@code default-ttl}
+ * si el proveedor no la indica), sin superar nunca {@code max-ttl}. Los aciertos y fallos se
+ * publican con las métricas estándar de caché ({@code cache.gets}, cache=social_login).
+ */
+@Component
+public class SocialLoginCache {
+
+    private final Cache<String, SocialLogin> cache;
+    private final SecurityProperties.SocialLoginCacheConfig config;
+
+    public SocialLoginCache(SecurityProperties securityProperties, MeterRegistry meterRegistry) {
+        this.config = securityProperties.socialLoginCache();
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(config.maximumSize())
+            .expireAfter(new Expiry<String, SocialLogin>() {
+                @Override
+                public long expireAfterCreate(String key, SocialLogin login, long currentTime) {
+                    return Math.max(0, Duration.between(Instant.now(), login.expiresAt()).toNanos());
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, SocialLogin login, long currentTime, long currentDuration) {
+                    return expireAfterCreate(key, login, currentTime);
+                }
+
+                @Override
+                public long expireAfterRead(String key, SocialLogin login, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "social_login");
+    }
+
+    /**
+     * Devuelve el login guardado para el token, si lo hay y no ha caducado
+     *
+     * @param requestedTenantId Tenant pedido por el cliente, o null si no lo indicó.
+     */
+    public Optional<SocialLogin> get(UUID requestedTenantId, String provider, String token) {
+        return Optional.ofNullable(cache.getIfPresent(key(requestedTenantId, provider, token)));
+    }
+
+    /**
+     * Guarda el login resuelto para un token hasta su caducidad
+     *
+     * @param requestedTenantId Tenant pedido por el cliente, o null si no lo indicó.
+     * @param tenantId          Tenant en el que se ha comprobado el acceso y está el usuario.
+     */
+    public void put(UUID requestedTenantId, String provider, String token, SocialUserInfo userInfo, UUID tenantId,
+                    User user) {
+        Instant now = Instant.now();
+        Instant maxExpiry = now.plus(config.maxTtl());
+        Instant expiresAt = userInfo.expiresAt() != null ? userInfo.expiresAt() : now.plus(config.defaultTtl());
+        if (expiresAt.isAfter(maxExpiry)) {
+            expiresAt = maxExpiry;
+        }
+        if (expiresAt.isAfter(now)) {
+            cache.put(key(requestedTenantId, provider, token), new SocialLogin(userInfo, tenantId, user, expiresAt));
+        }
+    }
+
+    /**
+     * Descarta el login guardado para el token, p. ej. si la cuenta ya no pertenece al gimnasio
+     */
+    public void invalidate(UUID requestedTenantId, String provider, String token) {
+        cache.invalidate(key(requestedTenantId, provider, token));
+    }
+
+    private static String key(UUID requestedTenantId, String provider, String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            if (requestedTenantId != null) {
+                digest.update(requestedTenantId.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+            digest.update(provider.toLowerCase().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * Login social verificado: datos del proveedor, tenant y usuario de la aplicación
+     */
+    public record SocialLogin(
+        SocialUserInfo userInfo,
+        UUID tenantId,
+        User user,
+        Instant expiresAt
+    ) {}
+}
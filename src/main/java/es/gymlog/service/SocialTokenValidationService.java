@@ -1,52 +1,155 @@
 package es.gymlog.service;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.exceptions.JWTVerificationException;
-import com.auth0.jwt.interfaces.DecodedJWT;
-import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
-import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.gson.GsonFactory;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import es.gymlog.config.SecurityProperties;
+import es.gymlog.exception.IdentityProviderUnavailableException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+import org.springframework.security.oauth2.jwt.JwtClaimValidator;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
 import reactor.core.publisher.Mono;
 
-import java.io.IOException;
-import java.security.GeneralSecurityException;
-import java.util.Map;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Servicio para validar tokens de proveedores sociales (Google, Apple, Facebook)
+ * <p>
+ * Las llamadas a los proveedores usan el cliente HTTP {@code identityProviderWebClient}, con
+ * pool de conexiones y tiempos máximos propios, y la Graph API de Facebook (la única que se
+ * consulta en cada login) se protege con un circuit breaker: si Facebook no está disponible se
+ * responde con {@link IdentityProviderUnavailableException} en lugar de esperar.
+ * <p>
+ * La latencia de cada validación se publica como histograma en
+ * {@code gymlog.social.token.verification}, etiquetado por proveedor y resultado.
  */
 @Service
-public class SocialTokenValidationService {
+public class SocialTokenValidationService implements DisposableBean {
 
     private static final Logger logger = LoggerFactory.getLogger(SocialTokenValidationService.class);
+
+    private static final String GOOGLE_JWKS_URI = "https://www.googleapis.com/oauth2/v3/certs";
+    private static final Set<String> GOOGLE_ISSUERS = Set.of("accounts.google.com", "https://accounts.google.com");
+    private static final String APPLE_JWKS_URI = "https://appleid.apple.com/auth/keys";
+    private static final String APPLE_ISSUER = "https://appleid.apple.com";
+    private static final String FACEBOOK_GRAPH_URI = "https://graph.facebook.com";
+    private static final String VERIFICATION_METRIC = "gymlog.social.token.verification";
     
     private final WebClient webClient;
-    private final GoogleIdTokenVerifier googleVerifier;
+    private final String facebookGraphUri;
+    private final CircuitBreaker facebookCircuitBreaker;
+    private final RemoteJwkSetCache googleKeys;
+    private final ReactiveJwtDecoder googleDecoder;
+    private final RemoteJwkSetCache appleKeys;
+    private final ReactiveJwtDecoder appleDecoder;
     private final SecurityProperties securityProperties;
+    private final MeterRegistry meterRegistry;
 
-    public SocialTokenValidationService(SecurityProperties securityProperties) {
+    public SocialTokenValidationService(SecurityProperties securityProperties,
+                                        MeterRegistry meterRegistry,
+                                        @Qualifier("identityProviderWebClient") WebClient webClient,
+                                        CircuitBreakerRegistry identityProviderCircuitBreakers) {
         this.securityProperties = securityProperties;
-        this.webClient = WebClient.builder().build();
+        this.meterRegistry = meterRegistry;
+        this.webClient = webClient;
+        this.facebookCircuitBreaker = identityProviderCircuitBreakers.circuitBreaker("facebook");
+
+        SecurityProperties.FacebookConfig facebookConfig =
+            securityProperties.social() != null ? securityProperties.social().facebook() : null;
+        this.facebookGraphUri = facebookConfig != null && facebookConfig.graphUri() != null
+            ? facebookConfig.graphUri()
+            : FACEBOOK_GRAPH_URI;
         
         // Configurar verificador de Google con los client IDs de la configuración
         if (securityProperties.social() != null && 
             securityProperties.social().google() != null && 
             securityProperties.social().google().clientIds() != null) {
             
-            this.googleVerifier = new GoogleIdTokenVerifier.Builder(
-                    new NetHttpTransport(), 
-                    new GsonFactory())
-                    .setAudience(securityProperties.social().google().clientIds())
-                    .build();
+            SecurityProperties.GoogleConfig googleConfig = securityProperties.social().google();
+            String jwksUri = googleConfig.jwksUri() != null ? googleConfig.jwksUri() : GOOGLE_JWKS_URI;
+            this.googleKeys = new RemoteJwkSetCache("Google", jwksUri, webClient);
+            this.googleDecoder = createGoogleDecoder(googleKeys, googleConfig.clientIds());
         } else {
             logger.warn("No se han configurado client IDs para Google. La validación de tokens de Google fallará.");
-            this.googleVerifier = null;
+            this.googleKeys = null;
+            this.googleDecoder = null;
+        }
+
+        // Configurar verificador de Apple con el bundle ID de la configuración
+        if (securityProperties.social() != null &&
+            securityProperties.social().apple() != null &&
+            securityProperties.social().apple().bundleId() != null) {
+
+            SecurityProperties.AppleConfig appleConfig = securityProperties.social().apple();
+            String jwksUri = appleConfig.jwksUri() != null ? appleConfig.jwksUri() : APPLE_JWKS_URI;
+            this.appleKeys = new RemoteJwkSetCache("Apple", jwksUri, webClient);
+            this.appleDecoder = createAppleDecoder(appleKeys, appleConfig.bundleId());
+        } else {
+            logger.warn("No se ha configurado el bundle ID de Apple. La validación de tokens de Apple fallará.");
+            this.appleKeys = null;
+            this.appleDecoder = null;
+        }
+    }
+
+    /**
+     * Crea el decodificador de ID tokens de Google: la firma se verifica localmente con las
+     * claves en caché, y se comprueban caducidad, emisor y audiencia (client IDs configurados)
+     */
+    private static ReactiveJwtDecoder createGoogleDecoder(RemoteJwkSetCache keys, List<String> clientIds) {
+        NimbusReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder
+            .withJwkSource(signedJwt -> keys.getKeys(signedJwt.getHeader().getKeyID()))
+            .build();
+        decoder.setJwtValidator(new DelegatingOAuth2TokenValidator<>(
+            new JwtTimestampValidator(),
+            new JwtClaimValidator<Object>(JwtClaimNames.ISS, issuer -> GOOGLE_ISSUERS.contains(String.valueOf(issuer))),
+            new JwtClaimValidator<List<String>>(JwtClaimNames.AUD,
+                audience -> audience != null && audience.stream().anyMatch(clientIds::contains))));
+        return decoder;
+    }
+
+    /**
+     * Crea el decodificador de ID tokens de Apple: la firma se verifica localmente con las
+     * claves en caché, y se comprueban caducidad, emisor y audiencia (bundle ID de la app)
+     */
+    private static ReactiveJwtDecoder createAppleDecoder(RemoteJwkSetCache keys, String bundleId) {
+        NimbusReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder
+            .withJwkSource(signedJwt -> keys.getKeys(signedJwt.getHeader().getKeyID()))
+            .build();
+        decoder.setJwtValidator(new DelegatingOAuth2TokenValidator<>(
+            new JwtTimestampValidator(),
+            new JwtClaimValidator<Object>(JwtClaimNames.ISS, issuer -> APPLE_ISSUER.equals(String.valueOf(issuer))),
+            new JwtClaimValidator<List<String>>(JwtClaimNames.AUD,
+                audience -> audience != null && audience.contains(bundleId))));
+        return decoder;
+    }
+
+    @Override
+    public void destroy() {
+        if (googleKeys != null) {
+            googleKeys.dispose();
+        }
+        if (appleKeys != null) {
+            appleKeys.dispose();
         }
     }
 
@@ -54,132 +157,182 @@ public class SocialTokenValidationService {
      * Valida un token social y extrae la información del usuario
      */
     public Mono<SocialUserInfo> validateToken(String provider, String token) {
-        return switch (provider.toLowerCase()) {
+        String normalizedProvider = provider.toLowerCase();
+        Mono<SocialUserInfo> validation = switch (normalizedProvider) {
             case "google" -> validateGoogleToken(token);
             case "facebook" -> validateFacebookToken(token);
             case "apple" -> validateAppleToken(token);
-            default -> Mono.error(new IllegalArgumentException("Proveedor no soportado: " + provider));
+            default -> null;
         };
+        if (validation == null) {
+            return Mono.error(new IllegalArgumentException("Proveedor no soportado: " + provider));
+        }
+        return timed(normalizedProvider, validation);
     }
 
     /**
-     * Valida token de Google usando Google API Client
+     * Mide la duración de la validación y la registra según su resultado
+     */
+    private Mono<SocialUserInfo> timed(String provider, Mono<SocialUserInfo> validation) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return validation
+                .doOnSuccess(userInfo -> recordVerification(provider, "success", start))
+                .doOnError(error -> recordVerification(provider, "failure", start));
+        });
+    }
+
+    private void recordVerification(String provider, String outcome, long start) {
+        Timer.builder(VERIFICATION_METRIC)
+            .description("Latencia de la validación de tokens sociales")
+            .tag("provider", provider)
+            .tag("outcome", outcome)
+            .publishPercentileHistogram()
+            .register(meterRegistry)
+            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Valida token de Google verificando su firma localmente con las claves públicas de
+     * Google en caché (sin llamadas de red por login)
      */
     private Mono<SocialUserInfo> validateGoogleToken(String token) {
-        if (googleVerifier == null) {
+        if (googleDecoder == null) {
             return Mono.error(new RuntimeException("Google no está configurado correctamente"));
         }
         
-        return Mono.fromCallable(() -> {
-            try {
-                GoogleIdToken idToken = googleVerifier.verify(token);
-                if (idToken != null) {
-                    GoogleIdToken.Payload payload = idToken.getPayload();
-                    
-                    logger.info("Token de Google validado exitosamente para usuario: {}", payload.getEmail());
-                    
-                    return new SocialUserInfo(
-                        payload.getSubject(), // User ID
-                        payload.getEmail(),
-                        (String) payload.get("name"),
-                        (String) payload.get("picture")
-                    );
-                } else {
-                    throw new RuntimeException("Token de Google inválido o expirado");
-                }
-            } catch (GeneralSecurityException | IOException e) {
+        return googleDecoder.decode(token)
+            .map(jwt -> {
+                logger.info("Token de Google validado exitosamente para usuario: {}", jwt.getClaimAsString("email"));
+                
+                return new SocialUserInfo(
+                    jwt.getSubject(), // User ID
+                    jwt.getClaimAsString("email"),
+                    jwt.getClaimAsString("name"),
+                    jwt.getClaimAsString("picture"),
+                    jwt.getExpiresAt()
+                );
+            })
+            .onErrorMap(JwtException.class, e -> {
                 logger.error("Error validando token de Google", e);
-                throw new RuntimeException("Error validando token de Google: " + e.getMessage());
-            }
-        });
+                return new RuntimeException("Token de Google inválido o expirado: " + e.getMessage());
+            });
     }
 
     /**
-     * Valida token de Facebook usando Facebook Graph API
+     * Valida token de Facebook usando Facebook Graph API. El token viaja en la cabecera
+     * Authorization (no en la URL) y la respuesta se decodifica directamente a {@link FacebookProfile}.
      */
     private Mono<SocialUserInfo> validateFacebookToken(String token) {
-        String url = "https://graph.facebook.com/me?fields=id,name,email,picture&access_token=" + token;
-        
         return webClient.get()
-            .uri(url)
+            .uri(facebookGraphUri + "/me?fields=id,name,email,picture")
+            .headers(headers -> headers.setBearerAuth(token))
             .retrieve()
-            .bodyToMono(Map.class)
-            .map(response -> {
-                if (response.containsKey("error")) {
-                    Map<String, Object> error = (Map<String, Object>) response.get("error");
-                    String errorMessage = (String) error.get("message");
-                    throw new RuntimeException("Token de Facebook inválido: " + errorMessage);
-                }
-                
-                String pictureUrl = null;
-                if (response.containsKey("picture")) {
-                    Map<String, Object> picture = (Map<String, Object>) response.get("picture");
-                    if (picture.containsKey("data")) {
-                        Map<String, Object> data = (Map<String, Object>) picture.get("data");
-                        pictureUrl = (String) data.get("url");
-                    }
-                }
-                
-                logger.info("Token de Facebook validado exitosamente para usuario: {}", response.get("email"));
+            .onStatus(HttpStatusCode::is4xxClientError, response -> response.bodyToMono(FacebookErrorResponse.class)
+                .map(body -> new RuntimeException("Token de Facebook inválido: " + body.message()))
+                .defaultIfEmpty(new RuntimeException("Token de Facebook inválido")))
+            .onStatus(HttpStatusCode::is5xxServerError, response -> Mono.just(new IdentityProviderUnavailableException(
+                "Facebook respondió con error HTTP " + response.statusCode().value())))
+            .bodyToMono(FacebookProfile.class)
+            // Errores de red o tiempo agotado: el proveedor no está disponible, el token no es inválido
+            .onErrorMap(error -> error instanceof WebClientRequestException || error instanceof TimeoutException,
+                error -> new IdentityProviderUnavailableException("Facebook no responde: " + error.getMessage(), error))
+            .transformDeferred(CircuitBreakerOperator.of(facebookCircuitBreaker))
+            .onErrorMap(CallNotPermittedException.class,
+                error -> new IdentityProviderUnavailableException("Facebook no está disponible temporalmente", error))
+            .map(profile -> {
+                logger.info("Token de Facebook validado exitosamente para usuario: {}", profile.email());
                 
                 return new SocialUserInfo(
-                    (String) response.get("id"),
-                    (String) response.get("email"),
-                    (String) response.get("name"),
-                    pictureUrl
+                    profile.id(),
+                    profile.email(),
+                    profile.name(),
+                    profile.pictureUrl(),
+                    null // Graph no indica la caducidad del access token
                 );
             })
             .doOnError(error -> logger.error("Error validando token de Facebook", error));
     }
 
     /**
-     * Valida token de Apple usando JWT decoding
-     * Nota: Para una validación completa en producción, deberías verificar
-     * la firma usando las claves públicas de Apple desde https://appleid.apple.com/auth/keys
+     * Valida token de Apple verificando su firma localmente con las claves públicas de
+     * Apple en caché (sin llamadas de red por login)
      */
     private Mono<SocialUserInfo> validateAppleToken(String token) {
-        return Mono.fromCallable(() -> {
-            try {
-                // Decodificar el JWT sin verificar la firma (solo para desarrollo)
-                // En producción, deberías verificar la firma con las claves públicas de Apple
-                DecodedJWT jwt = JWT.decode(token);
-                
+        if (appleDecoder == null) {
+            return Mono.error(new RuntimeException("Apple no está configurado correctamente"));
+        }
+
+        return appleDecoder.decode(token)
+            .map(jwt -> {
                 String userId = jwt.getSubject();
-                String email = jwt.getClaim("email").asString();
-                String name = jwt.getClaim("name").asString();
-                
+                String email = jwt.getClaimAsString("email");
+
                 // Verificar campos obligatorios
                 if (userId == null || userId.isEmpty()) {
                     throw new RuntimeException("Token de Apple inválido: falta el subject (user ID)");
                 }
-                
+
                 if (email == null || email.isEmpty()) {
                     throw new RuntimeException("Token de Apple inválido: falta el email");
                 }
-                
-                // Verificar que el token no haya expirado
-                if (jwt.getExpiresAt() != null && jwt.getExpiresAt().before(new java.util.Date())) {
-                    throw new RuntimeException("Token de Apple expirado");
-                }
-                
+
                 logger.info("Token de Apple validado exitosamente para usuario: {}", email);
-                
-                return new SocialUserInfo(userId, email, name, null);
-                
-            } catch (JWTVerificationException e) {
+
+                return new SocialUserInfo(userId, email, jwt.getClaimAsString("name"), null, jwt.getExpiresAt());
+            })
+            .onErrorMap(JwtException.class, e -> {
                 logger.error("Error validando token de Apple", e);
-                throw new RuntimeException("Token de Apple inválido: " + e.getMessage());
-            }
-        });
+                return new RuntimeException("Token de Apple inválido o expirado: " + e.getMessage());
+            });
     }
 
     /**
      * Información del usuario extraída del token social
+     *
+     * @param expiresAt Caducidad del token social, o null si el proveedor no la indica.
      */
     public record SocialUserInfo(
         String id,
         String email,
         String name,
-        String profileImageUrl
+        String profileImageUrl,
+        Instant expiresAt
     ) {}
-}
\ No newline at end of file
+
+    /**
+     * Perfil devuelto por {@code GET /me} de la Graph API de Facebook
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record FacebookProfile(
+        String id,
+        String name,
+        String email,
+        Picture picture
+    ) {
+
+        String pictureUrl() {
+            return picture != null && picture.data() != null ? picture.data().url() : null;
+        }
+
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        record Picture(PictureData data) {}
+
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        record PictureData(String url) {}
+    }
+
+    /**
+     * Cuerpo de error de la Graph API de Facebook
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    record FacebookErrorResponse(FacebookError error) {
+
+        String message() {
+            return error != null ? error.message() : null;
+        }
+
+        @JsonIgnoreProperties(ignoreUnknown = true)
+        record FacebookError(String message, String type, Integer code) {}
+    }
+}
@@ -0,0 +1,185 @@
+package es.gymlog.service;
+
+import es.gymlog.config.SecurityProperties;
+import es.gymlog.config.TenantContextHolder;
+import es.gymlog.config.TenantResolver;
+import es.gymlog.config.TenantResolver.TenantContext;
+import es.gymlog.repository.TenantMembershipRepository;
+import es.gymlog.repository.TenantRepository;
+import es.gymlog.repository.UserRepository;
+import es.gymlog.service.SocialTokenValidationService.SocialUserInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Gimnasios (tenants) a los que pertenece cada cuenta social.
+ * <p>
+ * El login no se fía del tenant que indica el cliente: una cuenta social solo inicia sesión en
+ * un gimnasio si ya pertenece a él ('public.tenant_members'), si tiene una invitación pendiente
+ * para su email ('public.tenant_invitations') o si el gimnasio admite altas abiertas
+ * ({@code gymlog.security.login.open-registration-tenant-ids}, p. ej. el de demostración). Los
+ * usuarios dados de alta antes de existir la tabla de miembros se reconocen por su fila en
+ * 'users' del esquema del gimnasio.
+ * <p>
+ * Sin cabecera X-Tenant-ID, el gimnasio es el único al que pertenece la cuenta o, si aún no
+ * pertenece a ninguno, el único al que está invitada o el único con altas abiertas.
+ */
+@Service
+public class TenantMembershipService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TenantMembershipService.class);
+
+    private final TenantMembershipRepository membershipRepository;
+    private final TenantRepository tenantRepository;
+    private final UserRepository userRepository;
+    private final TenantResolver tenantResolver;
+    private final SecurityProperties.LoginConfig config;
+
+    public TenantMembershipService(TenantMembershipRepository membershipRepository,
+                                   TenantRepository tenantRepository,
+                                   UserRepository userRepository,
+                                   TenantResolver tenantResolver,
+                                   SecurityProperties securityProperties) {
+        this.membershipRepository = membershipRepository;
+        this.tenantRepository = tenantRepository;
+        this.userRepository = userRepository;
+        this.tenantResolver = tenantResolver;
+        this.config = securityProperties.login();
+    }
+
+    /**
+     * Resuelve el gimnasio en el que inicia sesión una cuenta social ya verificada
+     *
+     * @param requestedTenantId Gimnasio indicado por el cliente en X-Tenant-ID, o null.
+     * @return Un Mono con el contexto actual del gimnasio; error 403 si la cuenta no tiene
+     *         acceso y 400 si no se indica el gimnasio y hay varios posibles.
+     */
+    public Mono<TenantContext> resolveLoginTenant(UUID requestedTenantId, String provider, SocialUserInfo userInfo) {
+        if (requestedTenantId != null) {
+            return checkAccess(requestedTenantId, provider, userInfo);
+        }
+        return findLoginTenantId(provider, userInfo)
+            .flatMap(tenantResolver::resolveCurrentTenantContext);
+    }
+
+    /**
+     * Comprueba si la cuenta social sigue perteneciendo al gimnasio, p. ej. al reutilizar un
+     * login en caché
+     */
+    public Mono<Boolean> isMember(UUID tenantId, String provider, String providerId) {
+        return membershipRepository.isMember(tenantId, provider, providerId)
+            .contextWrite(TenantContextHolder.clearTenantContext());
+    }
+
+    /**
+     * Registra que la cuenta social pertenece al gimnasio, tras darla de alta en él
+     */
+    public Mono<Void> addMember(UUID tenantId, String provider, String providerId) {
+        return membershipRepository.addMember(tenantId, provider, providerId)
+            .contextWrite(TenantContextHolder.clearTenantContext());
+    }
+
+    /**
+     * Invita a la cuenta social con ese email a darse de alta en el gimnasio
+     */
+    public Mono<TenantInvitation> invite(UUID tenantId, String email) {
+        if (email == null || email.isBlank()) {
+            return Mono.error(new IllegalArgumentException("El email de la invitación es obligatorio"));
+        }
+        Instant expiresAt = Instant.now().plus(config.invitationTtl());
+        return tenantRepository.findById(tenantId)
+            .switchIfEmpty(Mono.error(new IllegalArgumentException("Tenant no encontrado: " + tenantId)))
+            .flatMap(tenant -> membershipRepository.createInvitation(tenantId, email.trim(), expiresAt))
+            .map(id -> new TenantInvitation(id, tenantId, email.trim(), expiresAt))
+            .contextWrite(TenantContextHolder.clearTenantContext());
+    }
+
+    private Mono<TenantContext> checkAccess(UUID tenantId, String provider, SocialUserInfo userInfo) {
+        Mono<Boolean> memberOrInvited = membershipRepository.findTenantIds(provider, userInfo.id())
+            .any(tenantId::equals)
+            .flatMap(member -> member || config.openRegistrationTenantIds().contains(tenantId)
+                ? Mono.just(true)
+                : acceptInvitation(tenantId, provider, userInfo))
+            .contextWrite(TenantContextHolder.clearTenantContext());
+
+        return memberOrInvited.flatMap(allowed -> tenantResolver.resolveCurrentTenantContext(tenantId)
+            .filterWhen(tenantContext -> allowed ? Mono.just(true) : isExistingUser(tenantContext, provider, userInfo))
+            .switchIfEmpty(Mono.error(new AccessDeniedException("La cuenta no tiene acceso al gimnasio " + tenantId))));
+    }
+
+    private Mono<UUID> findLoginTenantId(String provider, SocialUserInfo userInfo) {
+        return membershipRepository.findTenantIds(provider, userInfo.id())
+            .collectList()
+            .flatMap(tenantIds -> {
+                if (!tenantIds.isEmpty()) {
+                    return onlyTenant(tenantIds);
+                }
+                return findInvitedTenantIds(userInfo).flatMap(invitedTenantIds -> {
+                    if (!invitedTenantIds.isEmpty()) {
+                        return onlyTenant(invitedTenantIds)
+                            .filterWhen(tenantId -> acceptInvitation(tenantId, provider, userInfo));
+                    }
+                    List<UUID> openTenantIds = config.openRegistrationTenantIds();
+                    return openTenantIds.isEmpty() ? Mono.empty() : onlyTenant(openTenantIds);
+                });
+            })
+            .switchIfEmpty(Mono.error(new AccessDeniedException("La cuenta no pertenece a ningún gimnasio")))
+            .contextWrite(TenantContextHolder.clearTenantContext());
+    }
+
+    private static Mono<UUID> onlyTenant(List<UUID> tenantIds) {
+        if (tenantIds.size() > 1) {
+            return Mono.error(new IllegalArgumentException(
+                "La cuenta tiene acceso a varios gimnasios: indique uno en la cabecera X-Tenant-ID"));
+        }
+        return Mono.just(tenantIds.get(0));
+    }
+
+    private Mono<List<UUID>> findInvitedTenantIds(SocialUserInfo userInfo) {
+        if (userInfo.email() == null || userInfo.email().isBlank()) {
+            return Mono.just(List.of());
+        }
+        return membershipRepository.findInvitedTenantIds(userInfo.email()).collectList();
+    }
+
+    /**
+     * Acepta la invitación de la cuenta al gimnasio y la registra como miembro
+     */
+    private Mono<Boolean> acceptInvitation(UUID tenantId, String provider, SocialUserInfo userInfo) {
+        if (userInfo.email() == null || userInfo.email().isBlank()) {
+            return Mono.just(false);
+        }
+        return membershipRepository.acceptInvitation(tenantId, userInfo.email())
+            .flatMap(accepted -> accepted
+                ? membershipRepository.addMember(tenantId, provider, userInfo.id())
+                    .doOnSuccess(done -> logger.info("Invitación aceptada en el tenant '{}' por: {}", tenantId, userInfo.email()))
+                    .thenReturn(true)
+                : Mono.just(false));
+    }
+
+    /**
+     * Usuario dado de alta en el gimnasio antes de registrar los miembros en 'public.tenant_members'
+     */
+    private Mono<Boolean> isExistingUser(TenantContext tenantContext, String provider, SocialUserInfo userInfo) {
+        return userRepository.findByProviderAndProviderId(provider, userInfo.id())
+            .hasElement()
+            .contextWrite(TenantContextHolder.withTenantContext(tenantContext));
+    }
+
+    /**
+     * Invitación a un gimnasio
+     */
+    public record TenantInvitation(
+        UUID id,
+        UUID tenantId,
+        String email,
+        Instant expiresAt
+    ) {}
+}
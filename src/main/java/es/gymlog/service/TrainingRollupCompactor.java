@@ -0,0 +1,99 @@
+package es.gymlog.service;
+
+import es.gymlog.config.AnalyticsProperties;
+import es.gymlog.config.TenantContextHolder;
+import es.gymlog.config.TenantLiquibaseManager;
+import es.gymlog.config.TenantResolver.TenantContext;
+import es.gymlog.entity.Tenant;
+import es.gymlog.repository.TenantRepository;
+import es.gymlog.repository.TrainingRollupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Compacta las estadísticas de entrenamiento por periodo de cada tenant.
+ * <p>
+ * Los registros y las sesiones se suman a filas diarias al escribirse. Cada
+ * {@code interval}, esta tarea recorre los tenants activos de uno en uno y pliega los días de
+ * las semanas ya terminadas (UTC) en sus filas de semana y de mes, de modo que las consultas de
+ * estadísticas leen una fila por semana o mes y solo los días de la semana en curso. Cada tenant
+ * se compacta en una única sentencia, así que la tarea puede ejecutarse en varias instancias e
+ * interrumpirse en cualquier momento.
+ */
+@Component
+public class TrainingRollupCompactor implements SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrainingRollupCompactor.class);
+
+    private final TenantRepository tenantRepository;
+    private final TenantLiquibaseManager tenantLiquibaseManager;
+    private final TrainingRollupRepository trainingRollupRepository;
+    private final AnalyticsProperties.CompactionConfig config;
+
+    private Disposable compactionTask;
+
+    public TrainingRollupCompactor(TenantRepository tenantRepository,
+                                   TenantLiquibaseManager tenantLiquibaseManager,
+                                   TrainingRollupRepository trainingRollupRepository,
+                                   AnalyticsProperties analyticsProperties) {
+        this.tenantRepository = tenantRepository;
+        this.tenantLiquibaseManager = tenantLiquibaseManager;
+        this.trainingRollupRepository = trainingRollupRepository;
+        this.config = analyticsProperties.rollupCompaction();
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!config.enabled()) {
+            return;
+        }
+        compactionTask = Flux.interval(config.initialDelay(), config.interval())
+            .onBackpressureDrop()
+            .concatMap(tick -> compactAll().onErrorResume(error -> {
+                logger.error("Error en la compactación de estadísticas: {}", error.getMessage());
+                return Mono.empty();
+            }))
+            .subscribe();
+    }
+
+    @Override
+    public void destroy() {
+        if (compactionTask != null) {
+            compactionTask.dispose();
+        }
+    }
+
+    private Mono<Void> compactAll() {
+        LocalDate currentWeekStart = LocalDate.now(ZoneOffset.UTC).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        return tenantRepository.findByIsActiveTrue()
+            .concatMap(tenant -> compactTenant(tenant, currentWeekStart)
+                .onErrorResume(error -> {
+                    logger.error("Error compactando las estadísticas del esquema '{}': {}", tenant.schemaName(), error.getMessage());
+                    return Mono.empty();
+                }))
+            .then();
+    }
+
+    private Mono<Void> compactTenant(Tenant tenant, LocalDate before) {
+        return tenantLiquibaseManager.ensureMigrated(tenant.shard(), tenant.schemaName())
+            .then(trainingRollupRepository.compact(before)
+                .contextWrite(TenantContextHolder.withTenantContext(TenantContext.forSchema(tenant.shard(), tenant.schemaName()))))
+            .doOnNext(folded -> {
+                if (folded > 0) {
+                    logger.info("Estadísticas del esquema '{}' compactadas: {} filas diarias plegadas", tenant.schemaName(), folded);
+                }
+            })
+            .then();
+    }
+}
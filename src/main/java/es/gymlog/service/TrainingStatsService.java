@@ -0,0 +1,115 @@
+package es.gymlog.service;
+
+import es.gymlog.api.dto.MuscleGroupVolumeDTO;
+import es.gymlog.api.dto.TrainingStatsDTO;
+import es.gymlog.api.dto.TrainingStatsPeriod;
+import es.gymlog.config.RequestContext;
+import es.gymlog.repository.TrainingRollupRepository;
+import es.gymlog.repository.TrainingRollupRepository.SessionBucket;
+import es.gymlog.repository.TrainingRollupRepository.VolumeBucket;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Servicio de consulta de las estadísticas de entrenamiento por semana y mes.
+ * <p>
+ * Solo lee los agregados por periodo ({@link TrainingRollupRepository}): el coste depende del
+ * número de periodos consultados, no del historial de registros.
+ */
+@Service
+public class TrainingStatsService {
+
+    /** Periodos devueltos cuando no se indica 'from' */
+    static final int DEFAULT_PERIODS = 12;
+
+    private final TrainingRollupRepository trainingRollupRepository;
+
+    public TrainingStatsService(TrainingRollupRepository trainingRollupRepository) {
+        this.trainingRollupRepository = trainingRollupRepository;
+    }
+
+    /**
+     * Estadísticas del usuario autenticado
+     */
+    public Mono<List<TrainingStatsDTO>> getUserStats(TrainingStatsPeriod period, LocalDate from, LocalDate to) {
+        return RequestContext.currentUserId().flatMap(userId -> getStats(userId, period, from, to));
+    }
+
+    /**
+     * Estadísticas de todos los usuarios del tenant actual
+     */
+    public Mono<List<TrainingStatsDTO>> getGymStats(TrainingStatsPeriod period, LocalDate from, LocalDate to) {
+        return getStats(null, period, from, to);
+    }
+
+    private Mono<List<TrainingStatsDTO>> getStats(UUID userId, TrainingStatsPeriod period, LocalDate from, LocalDate to) {
+        TrainingStatsPeriod unit = period != null ? period : TrainingStatsPeriod.WEEK;
+        LocalDate last = periodStart(unit, to != null ? to : LocalDate.now(ZoneOffset.UTC));
+        LocalDate first = periodStart(unit, from != null ? from : plusPeriods(unit, last, -(DEFAULT_PERIODS - 1)));
+        if (first.isAfter(last)) {
+            return Mono.error(new IllegalArgumentException("La fecha 'from' no puede ser posterior a 'to'."));
+        }
+        LocalDate until = plusPeriods(unit, last, 1);
+
+        Map<LocalDate, TrainingStatsDTO> stats = new TreeMap<>();
+        // El volumen total de cada periodo se suma en gramos y se convierte a kg una sola vez
+        Map<LocalDate, Long> volumeGrams = new HashMap<>();
+        return trainingRollupRepository.findVolume(userId, unit.getValue(), first, last, until)
+            .doOnNext(bucket -> {
+                addVolume(stats.computeIfAbsent(bucket.periodStart(), TrainingStatsService::emptyStats), bucket);
+                volumeGrams.merge(bucket.periodStart(), bucket.volumeGrams(), Long::sum);
+            })
+            .thenMany(trainingRollupRepository.findSessions(userId, unit.getValue(), first, last, until))
+            .doOnNext(bucket -> addSessions(stats.computeIfAbsent(bucket.periodStart(), TrainingStatsService::emptyStats), bucket))
+            .then(Mono.fromSupplier(() -> {
+                volumeGrams.forEach((periodStart, grams) -> stats.get(periodStart).setVolumeKg(gramsToKg(grams)));
+                return List.copyOf(stats.values());
+            }));
+    }
+
+    private static TrainingStatsDTO emptyStats(LocalDate periodStart) {
+        return new TrainingStatsDTO()
+            .periodStart(periodStart)
+            .sessionsCount(0L)
+            .volumeKg(0.0)
+            .setsCount(0L)
+            .muscleGroups(new ArrayList<>());
+    }
+
+    private static void addVolume(TrainingStatsDTO stats, VolumeBucket bucket) {
+        stats.setSetsCount(stats.getSetsCount() + bucket.setsCount());
+        stats.addMuscleGroupsItem(new MuscleGroupVolumeDTO()
+            .muscleGroup(bucket.muscleGroup().isEmpty() ? null : bucket.muscleGroup())
+            .volumeKg(gramsToKg(bucket.volumeGrams()))
+            .setsCount(bucket.setsCount()));
+    }
+
+    private static double gramsToKg(long grams) {
+        return grams / 1000.0;
+    }
+
+    private static void addSessions(TrainingStatsDTO stats, SessionBucket bucket) {
+        stats.setSessionsCount(bucket.sessionsCount());
+    }
+
+    private static LocalDate periodStart(TrainingStatsPeriod unit, LocalDate day) {
+        return unit == TrainingStatsPeriod.MONTH
+            ? day.withDayOfMonth(1)
+            : day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    private static LocalDate plusPeriods(TrainingStatsPeriod unit, LocalDate periodStart, int periods) {
+        return unit == TrainingStatsPeriod.MONTH ? periodStart.plusMonths(periods) : periodStart.plusWeeks(periods);
+    }
+}
@@ -1,19 +1,25 @@
 package es.gymlog.service;
 
+import es.gymlog.config.TenantContextHolder;
 import es.gymlog.model.User;
 import es.gymlog.repository.UserRepository;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
-import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class UserService {
 
     private final UserRepository userRepository;
 
+    // Altas/logins sociales en curso por tenant y cuenta social; las peticiones concurrentes de la misma cuenta comparten la consulta
+    private final Map<String, Mono<User>> inFlightSocialUsers = new ConcurrentHashMap<>();
+
     public UserService(UserRepository userRepository) {
         this.userRepository = userRepository;
     }
@@ -27,19 +33,33 @@ public class UserService {
         return findOrCreateUserFromSocial(provider, providerId, email, displayName);
     }
 
+    /**
+     * Busca o crea el usuario de una cuenta social en el esquema del tenant actual con una
+     * única sentencia (INSERT ... ON CONFLICT). Los logins simultáneos de la misma cuenta en
+     * el mismo tenant se agrupan en una sola llamada a la base de datos.
+     */
     public Mono<User> findOrCreateUserFromSocial(String provider, String providerId, String email, String displayName) {
-        return userRepository.findByProviderAndProviderId(provider, providerId)
-            .switchIfEmpty(Mono.defer(() -> {
-                User newUser = new User(
-                    UUID.randomUUID(),
-                    providerId,
-                    provider,
-                    email,
-                    displayName,
-                    Instant.now(),
-                    Instant.now()
-                );
-                return userRepository.save(newUser);
-            }));
+        return TenantContextHolder.getTenantContext()
+            .map(tenantContext -> tenantContext.shard() + "/" + tenantContext.schemaName())
+            .defaultIfEmpty("")
+            .flatMap(tenantKey -> {
+                String key = tenantKey + "/" + provider + "/" + providerId;
+                return inFlightSocialUsers.computeIfAbsent(key, k -> upsertSocialUser(provider, providerId, email, displayName)
+                    .doFinally(signal -> inFlightSocialUsers.remove(k))
+                    .cache());
+            });
+    }
+
+    /**
+     * Nombres de los roles del usuario en el tenant actual, para el claim 'roles' del JWT
+     */
+    public Mono<List<String>> findRoleNames(UUID userId) {
+        return userRepository.findRoleNames(userId).collectList();
+    }
+
+    private Mono<User> upsertSocialUser(String provider, String providerId, String email, String displayName) {
+        return userRepository.upsertFromSocial(UUID.randomUUID(), provider, providerId, email, displayName)
+            // Creado por otra transacción en paralelo: ya es visible
+            .switchIfEmpty(Mono.defer(() -> userRepository.findByProviderAndProviderId(provider, providerId)));
     }
 }
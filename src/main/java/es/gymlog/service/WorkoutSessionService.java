@@ -1,16 +1,24 @@
 package es.gymlog.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import es.gymlog.api.dto.CreateWorkoutSessionDTO;
 import es.gymlog.api.dto.WorkoutSessionDTO;
+import es.gymlog.api.dto.WorkoutSessionHistoryDTO;
+import es.gymlog.config.RequestContext;
 import es.gymlog.mapper.WorkoutSessionMapper;
-import es.gymlog.model.WorkoutSession;
 import es.gymlog.repository.WorkoutSessionRepository;
-import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
 import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Function;
 
 /**
  * Servicio para la gestión de las sesiones de entrenamiento.
@@ -18,18 +26,19 @@ import java.util.UUID;
 @Service
 public class WorkoutSessionService {
 
+    static final int DEFAULT_PAGE_SIZE = 20;
+    static final int MAX_PAGE_SIZE = 100;
+    /** Sesiones leídas por consulta al transmitir el historial completo */
+    static final int STREAM_PAGE_SIZE = 100;
+
     private final WorkoutSessionRepository workoutSessionRepository;
     private final WorkoutSessionMapper workoutSessionMapper;
+    private final ObjectMapper objectMapper;
 
-    public WorkoutSessionService(WorkoutSessionRepository workoutSessionRepository, WorkoutSessionMapper workoutSessionMapper) {
+    public WorkoutSessionService(WorkoutSessionRepository workoutSessionRepository, WorkoutSessionMapper workoutSessionMapper, ObjectMapper objectMapper) {
         this.workoutSessionRepository = workoutSessionRepository;
         this.workoutSessionMapper = workoutSessionMapper;
-    }
-
-    private Mono<UUID> getCurrentUserId() {
-        return ReactiveSecurityContextHolder.getContext()
-            .map(ctx -> (String) ctx.getAuthentication().getPrincipal())
-            .map(UUID::fromString);
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -38,17 +47,105 @@ public class WorkoutSessionService {
      * @return DTO de la sesión creada.
      */
     public Mono<WorkoutSessionDTO> startSession(CreateWorkoutSessionDTO dto) {
-        return getCurrentUserId().flatMap(userId -> {
-            WorkoutSession session = new WorkoutSession(
-                UUID.randomUUID(),
-                userId,
-                dto.getRoutineDayId(),
-                Instant.now(),
-                null, // end_time se establece al finalizar
-                dto.getNotes()
+        // end_time se establece al finalizar
+        return RequestContext.currentUserId().flatMap(userId ->
+            workoutSessionRepository.insertCounted(UUID.randomUUID(), userId, dto.getRoutineDayId(), Instant.now(), dto.getNotes())
+                .map(workoutSessionMapper::toDto));
+    }
+
+    /**
+     * Devuelve una página del historial del usuario autenticado, de la sesión más reciente a la
+     * más antigua, con los registros de cada sesión. Cada página es una única consulta que
+     * continúa tras la sesión (start_time, id) del cursor, sin OFFSET.
+     *
+     * @param cursor Cursor devuelto con la página anterior, o null para la primera.
+     * @param limit  Tamaño de página solicitado, acotado a {@value #MAX_PAGE_SIZE}.
+     * @return Un Mono con la página y el cursor de la siguiente, si la hay.
+     */
+    public Mono<HistoryPage> getHistoryPage(String cursor, Integer limit) {
+        return Mono.defer(() -> {
+            HistoryCursor after = cursor == null || cursor.isBlank() ? null : decodeCursor(cursor);
+            int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+            return RequestContext.currentUserId().flatMap(userId ->
+                findHistory(userId, after, pageSize + 1)
+                    .collectList()
+                    .map(sessions -> sessions.size() <= pageSize
+                        ? new HistoryPage(sessions, null)
+                        : new HistoryPage(sessions.subList(0, pageSize), encodeCursor(sessions.get(pageSize - 1))))
             );
-            return workoutSessionRepository.save(session)
-                .map(workoutSessionMapper::toDto);
         });
     }
+
+    /**
+     * Transmite el historial completo del usuario autenticado (desde el cursor, si se indica).
+     * Se lee página a página, y la siguiente página solo se consulta cuando el cliente ha
+     * consumido la anterior, así que la memoria usada no depende del tamaño del historial.
+     *
+     * @param cursor Cursor desde el que continuar, o null para empezar por la sesión más reciente.
+     * @return Un Flux con las sesiones y sus registros.
+     */
+    public Flux<WorkoutSessionHistoryDTO> streamHistory(String cursor) {
+        return Flux.defer(() -> {
+            HistoryCursor after = cursor == null || cursor.isBlank() ? null : decodeCursor(cursor);
+            return RequestContext.currentUserId().flatMapMany(userId ->
+                findHistory(userId, after, STREAM_PAGE_SIZE).collectList()
+                    .expand(page -> page.size() < STREAM_PAGE_SIZE
+                        ? Mono.empty()
+                        : findHistory(userId, HistoryCursor.of(page.get(page.size() - 1)), STREAM_PAGE_SIZE).collectList())
+                    .concatMapIterable(Function.identity(), 1)
+            );
+        });
+    }
+
+    private Flux<WorkoutSessionHistoryDTO> findHistory(UUID userId, HistoryCursor after, int limit) {
+        Flux<String> sessions = after == null
+            ? workoutSessionRepository.findHistoryJson(userId, limit)
+            : workoutSessionRepository.findHistoryJsonBefore(userId, after.startTime(), after.id(), limit);
+        return sessions.map(this::readSession);
+    }
+
+    private WorkoutSessionHistoryDTO readSession(String json) {
+        try {
+            return objectMapper.readValue(json, WorkoutSessionHistoryDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo leer una sesión del historial", e);
+        }
+    }
+
+    private static String encodeCursor(WorkoutSessionHistoryDTO session) {
+        HistoryCursor cursor = HistoryCursor.of(session);
+        String value = cursor.startTime() + "|" + cursor.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static HistoryCursor decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Cursor no válido.");
+            }
+            return new HistoryCursor(Instant.parse(decoded.substring(0, separator)), UUID.fromString(decoded.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new IllegalArgumentException("Cursor no válido.", e);
+        }
+    }
+
+    /**
+     * Última sesión de la página anterior
+     */
+    private record HistoryCursor(Instant startTime, UUID id) {
+
+        static HistoryCursor of(WorkoutSessionHistoryDTO session) {
+            return new HistoryCursor(session.getStartTime().toInstant(), session.getId());
+        }
+    }
+
+    /**
+     * Página del historial y cursor de la siguiente (null si es la última)
+     */
+    public record HistoryPage(
+        List<WorkoutSessionHistoryDTO> sessions,
+        String nextCursor
+    ) {}
 }
@@ -0,0 +1,12 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0003-public-tenant-schema-versions context:public
+-- comment: Huella del changelog aplicado en cada esquema de tenant, para omitir en el arranque los esquemas ya actualizados sin iniciar Liquibase
+
+CREATE TABLE IF NOT EXISTS public.tenant_schema_versions (
+    schema_name VARCHAR(100) PRIMARY KEY,
+    changelog_fingerprint VARCHAR(64) NOT NULL,
+    migrated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- rollback DROP TABLE IF EXISTS public.tenant_schema_versions;
@@ -0,0 +1,41 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0004-tenant-users-provider-dedupe context:tenant
+-- comment: Fusiona los usuarios duplicados por (provider, provider_id) que pudo crear el alta antigua (buscar y después guardar) antes de crear el índice único
+
+-- Por cada cuenta social se conserva el usuario más antiguo; el resto se fusiona en él
+CREATE TEMPORARY TABLE duplicate_users AS
+SELECT id AS duplicate_id, survivor_id
+FROM (
+    SELECT id, first_value(id) OVER (PARTITION BY provider, provider_id ORDER BY created_at, id) AS survivor_id
+    FROM users
+) ranked
+WHERE id <> survivor_id;
+
+UPDATE exercises e SET created_by_user_id = d.survivor_id
+FROM duplicate_users d WHERE e.created_by_user_id = d.duplicate_id;
+
+UPDATE routines r SET user_id = d.survivor_id
+FROM duplicate_users d WHERE r.user_id = d.duplicate_id;
+
+UPDATE workout_sessions s SET user_id = d.survivor_id
+FROM duplicate_users d WHERE s.user_id = d.duplicate_id;
+
+INSERT INTO user_roles (user_id, role_id)
+SELECT d.survivor_id, ur.role_id
+FROM user_roles ur JOIN duplicate_users d ON d.duplicate_id = ur.user_id
+ON CONFLICT DO NOTHING;
+
+-- Sus roles se eliminan en cascada
+DELETE FROM users u USING duplicate_users d WHERE u.id = d.duplicate_id;
+
+DROP TABLE duplicate_users;
+
+-- rollback SELECT 1;
+
+-- changeset gymlog:0004-tenant-users-provider-unique context:tenant
+-- comment: Un único usuario por cuenta social (provider, provider_id); necesario para el alta con INSERT ... ON CONFLICT
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_users_provider_provider_id ON users(provider, provider_id);
+
+-- rollback DROP INDEX IF EXISTS uq_users_provider_provider_id;
@@ -0,0 +1,102 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0005-public-clone-tenant-schema context:public splitStatements:false runOnChange:true
+-- comment: Función que crea un esquema de tenant clonando la estructura, los datos semilla y el historial de Liquibase de un esquema plantilla ya migrado
+
+CREATE OR REPLACE FUNCTION public.clone_tenant_schema(source_schema TEXT, target_schema TEXT)
+RETURNS VOID
+LANGUAGE plpgsql
+SET search_path = pg_catalog, public
+AS $$
+DECLARE
+    seq RECORD;
+    tbl RECORD;
+    col RECORD;
+    fk RECORD;
+    foreign_keys TEXT[] := ARRAY[]::TEXT[];
+    fk_statement TEXT;
+    seq_last_value BIGINT;
+    seq_is_called BOOLEAN;
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_namespace WHERE nspname = source_schema) THEN
+        RAISE EXCEPTION 'El esquema plantilla % no existe', source_schema USING ERRCODE = 'invalid_schema_name';
+    END IF;
+    IF EXISTS (SELECT 1 FROM pg_namespace WHERE nspname = target_schema) THEN
+        RAISE EXCEPTION 'El esquema % ya existe', target_schema USING ERRCODE = 'duplicate_schema';
+    END IF;
+
+    EXECUTE format('CREATE SCHEMA %I', target_schema);
+
+    -- 1. Secuencias, con los mismos parámetros y valor actual
+    FOR seq IN
+        SELECT sequencename, data_type, start_value, min_value, max_value, increment_by, cycle, cache_size
+        FROM pg_sequences
+        WHERE schemaname = source_schema
+    LOOP
+        EXECUTE format('CREATE SEQUENCE %I.%I AS %s INCREMENT BY %s MINVALUE %s MAXVALUE %s START WITH %s CACHE %s %s',
+                       target_schema, seq.sequencename, seq.data_type, seq.increment_by, seq.min_value,
+                       seq.max_value, seq.start_value, seq.cache_size,
+                       CASE WHEN seq.cycle THEN 'CYCLE' ELSE 'NO CYCLE' END);
+        EXECUTE format('SELECT last_value, is_called FROM %I.%I', source_schema, seq.sequencename)
+            INTO seq_last_value, seq_is_called;
+        PERFORM setval(format('%I.%I', target_schema, seq.sequencename)::regclass, seq_last_value, seq_is_called);
+    END LOOP;
+
+    -- 2. Tablas (columnas, defaults, checks, índices y claves primarias/únicas) y sus filas
+    FOR tbl IN
+        SELECT tablename FROM pg_tables WHERE schemaname = source_schema
+    LOOP
+        EXECUTE format('CREATE TABLE %I.%I (LIKE %I.%I INCLUDING ALL)',
+                       target_schema, tbl.tablename, source_schema, tbl.tablename);
+        EXECUTE format('INSERT INTO %I.%I SELECT * FROM %I.%I',
+                       target_schema, tbl.tablename, source_schema, tbl.tablename);
+    END LOOP;
+
+    -- 3. Los defaults copiados siguen apuntando a las secuencias de la plantilla
+    FOR col IN
+        SELECT c.relname AS tablename, a.attname AS columnname, s.relname AS sequencename
+        FROM pg_depend d
+        JOIN pg_class s ON s.oid = d.objid AND s.relkind = 'S'
+        JOIN pg_class c ON c.oid = d.refobjid
+        JOIN pg_attribute a ON a.attrelid = c.oid AND a.attnum = d.refobjsubid
+        JOIN pg_namespace n ON n.oid = s.relnamespace
+        WHERE n.nspname = source_schema AND d.deptype IN ('a', 'i')
+    LOOP
+        EXECUTE format('ALTER TABLE %I.%I ALTER COLUMN %I SET DEFAULT nextval(%L::regclass)',
+                       target_schema, col.tablename, col.columnname,
+                       format('%I.%I', target_schema, col.sequencename));
+        EXECUTE format('ALTER SEQUENCE %I.%I OWNED BY %I.%I.%I',
+                       target_schema, col.sequencename, target_schema, col.tablename, col.columnname);
+    END LOOP;
+
+    -- 4. Claves foráneas: con search_path en la plantilla, pg_get_constraintdef no cualifica
+    --    las tablas referenciadas, que se resuelven después contra el nuevo esquema
+    PERFORM set_config('search_path', quote_ident(source_schema), true);
+    FOR fk IN
+        SELECT c.relname AS tablename, con.conname, pg_get_constraintdef(con.oid) AS definition
+        FROM pg_constraint con
+        JOIN pg_class c ON c.oid = con.conrelid
+        JOIN pg_namespace n ON n.oid = c.relnamespace
+        WHERE n.nspname = source_schema AND con.contype = 'f'
+    LOOP
+        foreign_keys := foreign_keys || format('ALTER TABLE %I ADD CONSTRAINT %I %s',
+                                               fk.tablename, fk.conname, fk.definition);
+    END LOOP;
+
+    PERFORM set_config('search_path', quote_ident(target_schema), true);
+    FOREACH fk_statement IN ARRAY foreign_keys
+    LOOP
+        EXECUTE fk_statement;
+    END LOOP;
+
+    -- 5. El nuevo esquema queda con la misma huella de changelog que la plantilla
+    INSERT INTO public.tenant_schema_versions (schema_name, changelog_fingerprint, migrated_at)
+    SELECT target_schema, changelog_fingerprint, CURRENT_TIMESTAMP
+    FROM public.tenant_schema_versions
+    WHERE schema_name = source_schema
+    ON CONFLICT (schema_name) DO UPDATE
+    SET changelog_fingerprint = EXCLUDED.changelog_fingerprint, migrated_at = EXCLUDED.migrated_at;
+END;
+$$;
+
+-- rollback DROP FUNCTION IF EXISTS public.clone_tenant_schema(TEXT, TEXT);
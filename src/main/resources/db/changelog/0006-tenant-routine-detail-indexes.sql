@@ -0,0 +1,10 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0006-tenant-routine-detail-indexes context:tenant
+-- comment: Índices para cargar el detalle de una rutina (días y ejercicios ordenados) sin recorrer las tablas completas
+
+CREATE INDEX IF NOT EXISTS idx_routine_days_routine_order ON routine_days(routine_id, order_num);
+CREATE INDEX IF NOT EXISTS idx_routine_exercises_day_order ON routine_exercises(routine_day_id, order_num);
+
+-- rollback DROP INDEX IF EXISTS idx_routine_exercises_day_order;
+-- rollback DROP INDEX IF EXISTS idx_routine_days_routine_order;
@@ -0,0 +1,10 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0007-public-tenant-shards context:public
+-- comment: Instancia de Postgres (shard) en la que reside el esquema de cada tenant
+
+ALTER TABLE public.tenants ADD COLUMN IF NOT EXISTS shard VARCHAR(50) NOT NULL DEFAULT 'default';
+
+CREATE INDEX IF NOT EXISTS idx_tenants_shard ON public.tenants(shard);
+
+-- rollback DROP INDEX IF EXISTS public.idx_tenants_shard; ALTER TABLE public.tenants DROP COLUMN IF EXISTS shard;
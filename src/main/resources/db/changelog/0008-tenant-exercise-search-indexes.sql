@@ -0,0 +1,15 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0008-tenant-exercise-search-indexes context:tenant
+-- comment: Búsqueda paginada del catálogo de ejercicios: trigramas para filtrar por nombre con ILIKE y btree para el orden (name, id) de la paginación por cursor
+
+-- La extensión es de la base de datos, no del esquema; se crea aquí para que exista en cada shard
+CREATE EXTENSION IF NOT EXISTS pg_trgm WITH SCHEMA public;
+
+CREATE INDEX IF NOT EXISTS idx_exercises_name_trgm ON exercises USING gin (name public.gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_exercises_name_id ON exercises(name, id);
+CREATE INDEX IF NOT EXISTS idx_exercises_muscle_group_name_id ON exercises(target_muscle_group, name, id);
+
+-- rollback DROP INDEX IF EXISTS idx_exercises_muscle_group_name_id;
+-- rollback DROP INDEX IF EXISTS idx_exercises_name_id;
+-- rollback DROP INDEX IF EXISTS idx_exercises_name_trgm;
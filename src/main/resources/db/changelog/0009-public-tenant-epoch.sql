@@ -0,0 +1,32 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0009-public-tenant-epoch context:public splitStatements:false
+-- comment: Epoch de cada tenant, que aumenta al desactivarlo o cambiar su esquema, shard o plan e invalida los JWT emitidos antes
+
+ALTER TABLE public.tenants ADD COLUMN IF NOT EXISTS epoch BIGINT NOT NULL DEFAULT 0;
+
+-- La aplicación nunca escribe el epoch: lo calcula siempre el trigger a partir del valor anterior
+CREATE OR REPLACE FUNCTION public.bump_tenant_epoch()
+RETURNS TRIGGER
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    NEW.epoch := OLD.epoch;
+    IF NEW.is_active IS DISTINCT FROM OLD.is_active
+        OR NEW.schema_name IS DISTINCT FROM OLD.schema_name
+        OR NEW.shard IS DISTINCT FROM OLD.shard
+        OR NEW.plan IS DISTINCT FROM OLD.plan THEN
+        NEW.epoch := OLD.epoch + 1;
+    END IF;
+    RETURN NEW;
+END;
+$$;
+
+DROP TRIGGER IF EXISTS trg_tenants_epoch ON public.tenants;
+
+CREATE TRIGGER trg_tenants_epoch
+    BEFORE UPDATE ON public.tenants
+    FOR EACH ROW
+    EXECUTE FUNCTION public.bump_tenant_epoch();
+
+-- rollback DROP TRIGGER IF EXISTS trg_tenants_epoch ON public.tenants; DROP FUNCTION IF EXISTS public.bump_tenant_epoch(); ALTER TABLE public.tenants DROP COLUMN IF EXISTS epoch;
@@ -0,0 +1,15 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0010-tenant-collection-versions context:tenant
+-- comment: Versión de cada colección de un usuario (p. ej. sus rutinas), aumentada por las sentencias que la modifican; permite responder GET condicionales (ETag / Last-Modified) sin leer la colección
+
+CREATE TABLE IF NOT EXISTS collection_versions (
+    user_id UUID NOT NULL,
+    collection VARCHAR(64) NOT NULL,
+    version BIGINT NOT NULL,
+    modified_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (user_id, collection),
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
+-- rollback DROP TABLE IF EXISTS collection_versions;
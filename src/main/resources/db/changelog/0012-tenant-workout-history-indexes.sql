@@ -0,0 +1,10 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0012-tenant-workout-history-indexes context:tenant
+-- comment: Historial de entrenamientos paginado por cursor (start_time, id) y registros de cada sesión sin recorrer exercise_logs
+
+CREATE INDEX IF NOT EXISTS idx_workout_sessions_user_start ON workout_sessions(user_id, start_time DESC, id DESC);
+CREATE INDEX IF NOT EXISTS idx_exercise_logs_session ON exercise_logs(workout_session_id, recorded_at);
+
+-- rollback DROP INDEX IF EXISTS idx_exercise_logs_session;
+-- rollback DROP INDEX IF EXISTS idx_workout_sessions_user_start;
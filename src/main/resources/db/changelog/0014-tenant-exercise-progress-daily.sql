@@ -0,0 +1,26 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0014-tenant-exercise-progress-daily context:tenant
+-- comment: Agregado diario por usuario y ejercicio (mejor 1RM estimado, peso máximo, volumen) para las gráficas de progreso, mantenido al registrar cada ejercicio
+
+CREATE TABLE IF NOT EXISTS exercise_progress_daily (
+    user_id UUID NOT NULL,
+    exercise_id UUID NOT NULL,
+    day DATE NOT NULL,
+    best_e1rm_kg DECIMAL(10, 2) NOT NULL,
+    top_weight_kg DECIMAL(10, 2) NOT NULL,
+    total_volume_kg DECIMAL(14, 2) NOT NULL,
+    sets_count INT NOT NULL,
+    PRIMARY KEY (user_id, exercise_id, day),
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+    FOREIGN KEY (exercise_id) REFERENCES exercises(id) ON DELETE CASCADE
+);
+
+-- Registros ya sumados al agregado. Los existentes (false) los suma el backfill en segundo plano
+ALTER TABLE exercise_logs ADD COLUMN IF NOT EXISTS progress_applied BOOLEAN NOT NULL DEFAULT false;
+
+CREATE INDEX IF NOT EXISTS idx_exercise_logs_progress_pending ON exercise_logs(id) WHERE NOT progress_applied;
+
+-- rollback DROP INDEX IF EXISTS idx_exercise_logs_progress_pending;
+-- rollback ALTER TABLE exercise_logs DROP COLUMN IF EXISTS progress_applied;
+-- rollback DROP TABLE IF EXISTS exercise_progress_daily;
@@ -0,0 +1,50 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0016-tenant-personal-records context:tenant
+-- comment: Marcas personales vigentes por usuario y ejercicio, para detectarlas al registrar cada ejercicio con búsquedas por clave primaria
+
+CREATE TABLE IF NOT EXISTS personal_records (
+    user_id UUID NOT NULL,
+    exercise_id UUID NOT NULL,
+    max_weight_kg DECIMAL(10, 2) NOT NULL,
+    best_e1rm_kg DECIMAL(10, 2) NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, exercise_id),
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+    FOREIGN KEY (exercise_id) REFERENCES exercises(id) ON DELETE CASCADE
+);
+
+-- Máximo de repeticiones en una serie con cada peso
+CREATE TABLE IF NOT EXISTS personal_rep_records (
+    user_id UUID NOT NULL,
+    exercise_id UUID NOT NULL,
+    weight_kg DECIMAL(10, 2) NOT NULL,
+    max_reps INT NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (user_id, exercise_id, weight_kg),
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+    FOREIGN KEY (exercise_id) REFERENCES exercises(id) ON DELETE CASCADE
+);
+
+-- Marcas de los registros ya sumados al progreso diario. Los pendientes los suma el backfill
+-- del progreso, que también actualiza estas tablas
+INSERT INTO personal_records (user_id, exercise_id, max_weight_kg, best_e1rm_kg)
+SELECT user_id, exercise_id, max(top_weight_kg), max(best_e1rm_kg)
+FROM exercise_progress_daily
+GROUP BY user_id, exercise_id
+ON CONFLICT DO NOTHING;
+
+INSERT INTO personal_rep_records (user_id, exercise_id, weight_kg, max_reps)
+SELECT ws.user_id, re.exercise_id, el.weight_kg, max(reps.max_reps)
+FROM exercise_logs el
+JOIN workout_sessions ws ON ws.id = el.workout_session_id
+JOIN routine_exercises re ON re.id = el.routine_exercise_id
+CROSS JOIN LATERAL (
+    SELECT max(m[1]::int) AS max_reps FROM regexp_matches(el.reps_achieved, '\d+', 'g') AS m
+) reps
+WHERE el.progress_applied AND reps.max_reps > 0
+GROUP BY ws.user_id, re.exercise_id, el.weight_kg
+ON CONFLICT DO NOTHING;
+
+-- rollback DROP TABLE IF EXISTS personal_rep_records;
+-- rollback DROP TABLE IF EXISTS personal_records;
@@ -0,0 +1,48 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0018-tenant-training-rollups context:tenant
+-- comment: Volumen por grupo muscular y sesiones de cada usuario por día, semana y mes. Los días se escriben al registrar y el compactador los pliega en semanas y meses
+
+-- period: DAY, WEEK o MONTH; period_start: día, lunes de la semana o día 1 del mes (UTC).
+-- Cada día está en una fila DAY o, una vez compactado, sumado a su fila WEEK y a su fila MONTH
+CREATE TABLE IF NOT EXISTS training_volume_rollups (
+    user_id UUID NOT NULL,
+    period VARCHAR(5) NOT NULL CHECK (period IN ('DAY', 'WEEK', 'MONTH')),
+    period_start DATE NOT NULL,
+    muscle_group VARCHAR(255) NOT NULL DEFAULT '',
+    volume_kg DECIMAL(14, 2) NOT NULL,
+    sets_count INT NOT NULL,
+    PRIMARY KEY (user_id, period, period_start, muscle_group),
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS training_session_rollups (
+    user_id UUID NOT NULL,
+    period VARCHAR(5) NOT NULL CHECK (period IN ('DAY', 'WEEK', 'MONTH')),
+    period_start DATE NOT NULL,
+    sessions_count INT NOT NULL,
+    PRIMARY KEY (user_id, period, period_start),
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
+-- Estadísticas del gimnasio (todos los usuarios) y compactación de los días pendientes
+CREATE INDEX IF NOT EXISTS idx_training_volume_rollups_period ON training_volume_rollups(period, period_start);
+CREATE INDEX IF NOT EXISTS idx_training_session_rollups_period ON training_session_rollups(period, period_start);
+
+-- Días de los registros ya sumados al progreso diario. Los pendientes los suma el backfill
+-- del progreso, que también escribe estas filas
+INSERT INTO training_volume_rollups (user_id, period, period_start, muscle_group, volume_kg, sets_count)
+SELECT p.user_id, 'DAY', p.day, COALESCE(e.target_muscle_group, ''), sum(p.total_volume_kg), sum(p.sets_count)
+FROM exercise_progress_daily p
+JOIN exercises e ON e.id = p.exercise_id
+GROUP BY p.user_id, p.day, COALESCE(e.target_muscle_group, '')
+ON CONFLICT DO NOTHING;
+
+INSERT INTO training_session_rollups (user_id, period, period_start, sessions_count)
+SELECT user_id, 'DAY', (start_time AT TIME ZONE 'UTC')::date, count(*)
+FROM workout_sessions
+GROUP BY user_id, (start_time AT TIME ZONE 'UTC')::date
+ON CONFLICT DO NOTHING;
+
+-- rollback DROP TABLE IF EXISTS training_session_rollups;
+-- rollback DROP TABLE IF EXISTS training_volume_rollups;
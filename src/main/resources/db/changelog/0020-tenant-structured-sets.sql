@@ -0,0 +1,90 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0020-tenant-structured-sets context:tenant
+-- comment: Repeticiones por serie como INT[] y pesos en gramos enteros, en los registros y en los agregados, para calcular las métricas con aritmética entera sin parsear texto. Fase de expansión: 'reps_achieved' y 'weight_kg' se mantienen (las siguen escribiendo todas las versiones) y se eliminarán en una versión posterior
+
+-- Registros: 'reps' (una entrada por serie) y 'weight_grams' junto a 'reps_achieved' (texto) y 'weight_kg'
+ALTER TABLE exercise_logs ADD COLUMN IF NOT EXISTS reps INT[];
+ALTER TABLE exercise_logs ADD COLUMN IF NOT EXISTS weight_grams INT;
+
+-- Registros cuyo texto o peso no se puede convertir: quedan con 'reps' o 'weight_grams' a NULL,
+-- fuera de los agregados, y se anotan aquí para revisarlos
+CREATE TABLE IF NOT EXISTS exercise_log_set_issues (
+    log_id UUID PRIMARY KEY REFERENCES exercise_logs(id) ON DELETE CASCADE,
+    reps_achieved VARCHAR(255) NOT NULL,
+    sets_completed INT NOT NULL,
+    weight_kg DECIMAL(10, 2) NOT NULL,
+    reason VARCHAR(20) NOT NULL, -- REPS_FORMAT, REPS_RANGE, SETS_MISMATCH o WEIGHT_RANGE
+    detected_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Solo se convierte el texto limpio: números de 0 a 1000 separados por comas, uno por serie o uno
+-- solo para todas ("10" con 3 series -> {10,10,10}), y pesos de 0 a 1000 kg. Mismas reglas que
+-- ExerciseLogRepository.LEGACY_SETS, que convierte los registros que aún escriban versiones anteriores
+WITH parsed AS (
+    SELECT l.id, l.reps_achieved, l.sets_completed, l.weight_kg, s.reps, s.weight_grams, s.issue
+    FROM exercise_logs l
+    CROSS JOIN LATERAL (
+        SELECT CASE WHEN p.issue IS NULL AND cardinality(p.parsed) = 1 THEN array_fill(p.parsed[1], ARRAY[l.sets_completed])
+                    WHEN p.issue IS NULL THEN p.parsed END AS reps,
+               CASE WHEN l.weight_kg BETWEEN 0 AND 1000 THEN round(l.weight_kg * 1000)::int END AS weight_grams,
+               COALESCE(p.issue, CASE WHEN l.weight_kg NOT BETWEEN 0 AND 1000 THEN 'WEIGHT_RANGE' END) AS issue
+        FROM (
+            SELECT v.parsed,
+                   CASE WHEN v.parsed IS NULL THEN 'REPS_FORMAT'
+                        WHEN 1000 < ANY(v.parsed) THEN 'REPS_RANGE'
+                        WHEN l.sets_completed NOT BETWEEN 1 AND 1000
+                             OR cardinality(v.parsed) NOT IN (1, l.sets_completed) THEN 'SETS_MISMATCH'
+                   END AS issue
+            FROM (SELECT CASE WHEN l.reps_achieved ~ '^\s*\d{1,4}(\s*,\s*\d{1,4})*\s*$'
+                              THEN string_to_array(regexp_replace(l.reps_achieved, '\s', '', 'g'), ',')::int[]
+                         END AS parsed) v
+        ) p
+    ) s
+), issues AS (
+    INSERT INTO exercise_log_set_issues (log_id, reps_achieved, sets_completed, weight_kg, reason)
+    SELECT id, reps_achieved, sets_completed, weight_kg, issue
+    FROM parsed
+    WHERE issue IS NOT NULL
+    ON CONFLICT (log_id) DO NOTHING
+)
+UPDATE exercise_logs l SET reps = p.reps, weight_grams = p.weight_grams
+FROM parsed p
+WHERE l.id = p.id;
+
+-- Agregados en gramos (tablas de esta misma versión: ninguna versión anterior las escribe)
+ALTER TABLE exercise_progress_daily ALTER COLUMN best_e1rm_kg TYPE INT USING round(best_e1rm_kg * 1000)::int;
+ALTER TABLE exercise_progress_daily RENAME COLUMN best_e1rm_kg TO best_e1rm_grams;
+ALTER TABLE exercise_progress_daily ALTER COLUMN top_weight_kg TYPE INT USING round(top_weight_kg * 1000)::int;
+ALTER TABLE exercise_progress_daily RENAME COLUMN top_weight_kg TO top_weight_grams;
+ALTER TABLE exercise_progress_daily ALTER COLUMN total_volume_kg TYPE BIGINT USING round(total_volume_kg * 1000)::bigint;
+ALTER TABLE exercise_progress_daily RENAME COLUMN total_volume_kg TO total_volume_grams;
+
+ALTER TABLE personal_records ALTER COLUMN max_weight_kg TYPE INT USING round(max_weight_kg * 1000)::int;
+ALTER TABLE personal_records RENAME COLUMN max_weight_kg TO max_weight_grams;
+ALTER TABLE personal_records ALTER COLUMN best_e1rm_kg TYPE INT USING round(best_e1rm_kg * 1000)::int;
+ALTER TABLE personal_records RENAME COLUMN best_e1rm_kg TO best_e1rm_grams;
+
+ALTER TABLE personal_rep_records ALTER COLUMN weight_kg TYPE INT USING round(weight_kg * 1000)::int;
+ALTER TABLE personal_rep_records RENAME COLUMN weight_kg TO weight_grams;
+
+ALTER TABLE training_volume_rollups ALTER COLUMN volume_kg TYPE BIGINT USING round(volume_kg * 1000)::bigint;
+ALTER TABLE training_volume_rollups RENAME COLUMN volume_kg TO volume_grams;
+
+-- rollback ALTER TABLE training_volume_rollups RENAME COLUMN volume_grams TO volume_kg;
+-- rollback ALTER TABLE training_volume_rollups ALTER COLUMN volume_kg TYPE DECIMAL(14, 2) USING volume_kg / 1000.0;
+-- rollback ALTER TABLE personal_rep_records RENAME COLUMN weight_grams TO weight_kg;
+-- rollback ALTER TABLE personal_rep_records ALTER COLUMN weight_kg TYPE DECIMAL(10, 2) USING weight_kg / 1000.0;
+-- rollback ALTER TABLE personal_records RENAME COLUMN best_e1rm_grams TO best_e1rm_kg;
+-- rollback ALTER TABLE personal_records ALTER COLUMN best_e1rm_kg TYPE DECIMAL(10, 2) USING best_e1rm_kg / 1000.0;
+-- rollback ALTER TABLE personal_records RENAME COLUMN max_weight_grams TO max_weight_kg;
+-- rollback ALTER TABLE personal_records ALTER COLUMN max_weight_kg TYPE DECIMAL(10, 2) USING max_weight_kg / 1000.0;
+-- rollback ALTER TABLE exercise_progress_daily RENAME COLUMN total_volume_grams TO total_volume_kg;
+-- rollback ALTER TABLE exercise_progress_daily ALTER COLUMN total_volume_kg TYPE DECIMAL(14, 2) USING total_volume_kg / 1000.0;
+-- rollback ALTER TABLE exercise_progress_daily RENAME COLUMN top_weight_grams TO top_weight_kg;
+-- rollback ALTER TABLE exercise_progress_daily ALTER COLUMN top_weight_kg TYPE DECIMAL(10, 2) USING top_weight_kg / 1000.0;
+-- rollback ALTER TABLE exercise_progress_daily RENAME COLUMN best_e1rm_grams TO best_e1rm_kg;
+-- rollback ALTER TABLE exercise_progress_daily ALTER COLUMN best_e1rm_kg TYPE DECIMAL(10, 2) USING best_e1rm_kg / 1000.0;
+-- rollback DROP TABLE IF EXISTS exercise_log_set_issues;
+-- rollback ALTER TABLE exercise_logs DROP COLUMN IF EXISTS weight_grams;
+-- rollback ALTER TABLE exercise_logs DROP COLUMN IF EXISTS reps;
@@ -0,0 +1,28 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0021-public-tenant-members context:public
+-- comment: Gimnasios a los que pertenece cada cuenta social e invitaciones pendientes, para resolver en el login el tenant del usuario sin fiarse de la cabecera del cliente
+
+CREATE TABLE IF NOT EXISTS public.tenant_members (
+    provider VARCHAR(255) NOT NULL,
+    provider_id VARCHAR(255) NOT NULL,
+    tenant_id UUID NOT NULL REFERENCES public.tenants(id) ON DELETE CASCADE,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (provider, provider_id, tenant_id)
+);
+
+-- Una invitación permite a una cuenta social con ese email darse de alta en el gimnasio
+CREATE TABLE IF NOT EXISTS public.tenant_invitations (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    tenant_id UUID NOT NULL REFERENCES public.tenants(id) ON DELETE CASCADE,
+    email VARCHAR(255) NOT NULL,
+    expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    accepted_at TIMESTAMP WITH TIME ZONE,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_tenant_invitations_pending_email
+    ON public.tenant_invitations(lower(email)) WHERE accepted_at IS NULL;
+
+-- rollback DROP TABLE IF EXISTS public.tenant_invitations;
+-- rollback DROP TABLE IF EXISTS public.tenant_members;
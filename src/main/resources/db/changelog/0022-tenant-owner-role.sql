@@ -0,0 +1,8 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0022-tenant-owner-role context:tenant
+-- comment: Rol OWNER del gimnasio (p. ej. para sus estadísticas de entrenamiento); se asigna en 'user_roles' y viaja en el claim 'roles' del JWT
+
+INSERT INTO roles (name) VALUES ('OWNER') ON CONFLICT (name) DO NOTHING;
+
+-- rollback DELETE FROM roles WHERE name = 'OWNER';
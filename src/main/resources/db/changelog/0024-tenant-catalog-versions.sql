@@ -0,0 +1,12 @@
+-- liquibase formatted sql
+
+-- changeset gymlog:0024-tenant-catalog-versions context:tenant
+-- comment: Versión de cada catálogo compartido del tenant (p. ej. el de ejercicios), aumentada por las sentencias que lo modifican; cada instancia comprueba con una búsqueda por clave primaria si su copia en memoria sigue vigente
+
+CREATE TABLE IF NOT EXISTS catalog_versions (
+    catalog VARCHAR(64) PRIMARY KEY,
+    version BIGINT NOT NULL,
+    modified_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- rollback DROP TABLE IF EXISTS catalog_versions;
@@ -0,0 +1,64 @@
+package es.gymlog.benchmark;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Percentiles de las latencias medidas en una prueba de rendimiento.
+ *
+ * @param samples Número de mediciones.
+ * @param p50     Mediana.
+ * @param p99     Percentil 99.
+ * @param max     Latencia máxima.
+ */
+public record Latencies(int samples, Duration p50, Duration p99, Duration max) {
+
+    /**
+     * Ejecuta la operación en serie: {@code warmup} veces sin medir y después {@code iterations}
+     * veces midiendo cada una, hasta que su Mono termina
+     */
+    public static Latencies measure(int warmup, int iterations, Supplier<? extends Mono<?>> operation) {
+        for (int i = 0; i < warmup; i++) {
+            operation.get().block();
+        }
+        long[] nanos = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            operation.get().block();
+            nanos[i] = System.nanoTime() - start;
+        }
+        return of(nanos);
+    }
+
+    /**
+     * Calcula los percentiles de latencias ya medidas, en nanosegundos
+     */
+    public static Latencies of(long[] nanos) {
+        if (nanos.length == 0) {
+            throw new IllegalArgumentException("No hay latencias medidas");
+        }
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return new Latencies(sorted.length, percentile(sorted, 0.50), percentile(sorted, 0.99),
+            Duration.ofNanos(sorted[sorted.length - 1]));
+    }
+
+    private static Duration percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return Duration.ofNanos(sorted[Math.max(index, 0)]);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "p50=%.2f ms, p99=%.2f ms, max=%.2f ms (%d muestras)",
+            millis(p50), millis(p99), millis(max), samples);
+    }
+
+    private static double millis(Duration duration) {
+        return duration.toNanos() / 1_000_000.0;
+    }
+}
@@ -0,0 +1,117 @@
+package es.gymlog.config;
+
+import com.nimbusds.jose.jwk.source.ImmutableSecret;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.oauth2.jose.jws.MacAlgorithm;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Microbenchmark JMH: decodificar el mismo JWT de la aplicación con
+ * {@link NimbusReactiveJwtDecoder} (parseo y firma en cada petición) frente a
+ * {@link CachingReactiveJwtDecoder} (parseo y firma solo la primera vez), como en
+ * {@link SecurityConfig#jwtDecoder()}.
+ * <p>
+ * El test lanza JMH con la configuración de las anotaciones y comprueba que el decodificador con
+ * caché es más rápido. Solo se ejecuta con {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtDecoderBenchmark {
+
+    // Misma clave de desarrollo que application.yml
+    private static final String JWT_KEY = "una-clave-secreta-muy-larga-y-segura-para-firmar-tokens-jwt-en-desarrollo";
+
+    private ReactiveJwtDecoder nimbusDecoder;
+    private ReactiveJwtDecoder cachingDecoder;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        SecretKeySpec secretKey = new SecretKeySpec(JWT_KEY.getBytes(StandardCharsets.UTF_8), "HMACSHA256");
+        nimbusDecoder = NimbusReactiveJwtDecoder.withSecretKey(secretKey).build();
+        cachingDecoder = new CachingReactiveJwtDecoder(
+            NimbusReactiveJwtDecoder.withSecretKey(secretKey).build(),
+            new SecurityProperties.JwtCacheConfig(50_000, Duration.ofMinutes(10)),
+            new SimpleMeterRegistry());
+
+        Instant now = Instant.now();
+        JwtClaimsSet claims = JwtClaimsSet.builder()
+            .issuer("gymlog")
+            .subject("5f0c7c1e-6d1a-4c55-9a61-3d7d1f0b9a11")
+            .issuedAt(now)
+            .expiresAt(now.plus(Duration.ofHours(1)))
+            .claim("tenantId", "00000000-0000-0000-0000-000000000001")
+            .claim("schemaName", "gym_demo")
+            .claim("roles", List.of("USER"))
+            .build();
+        token = new NimbusJwtEncoder(new ImmutableSecret<>(secretKey))
+            .encode(JwtEncoderParameters.from(JwsHeader.with(MacAlgorithm.HS256).build(), claims))
+            .getTokenValue();
+    }
+
+    @Benchmark
+    public Jwt nimbus() {
+        return nimbusDecoder.decode(token).block();
+    }
+
+    @Benchmark
+    public Jwt caching() {
+        return cachingDecoder.decode(token).block();
+    }
+
+    @Test
+    void cachingDecoderIsFasterOnRepeatedToken() throws RunnerException {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+            .include(JwtDecoderBenchmark.class.getName() + "\\.")
+            .build())
+            .run();
+
+        assertThat(score(results, "caching")).isLessThan(score(results, "nimbus"));
+    }
+
+    private static double score(Collection<RunResult> results, String benchmark) {
+        return results.stream()
+            .filter(result -> result.getParams().getBenchmark().endsWith("." + benchmark))
+            .findFirst()
+            .orElseThrow()
+            .getPrimaryResult()
+            .getScore();
+    }
+}
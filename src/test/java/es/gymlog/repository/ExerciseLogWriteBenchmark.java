@@ -0,0 +1,80 @@
+package es.gymlog.repository;
+
+import es.gymlog.benchmark.Latencies;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Latencia de {@link ExerciseLogRepository#insertForSession} según crece el historial del usuario.
+ * <p>
+ * El registro suma al progreso diario, al volumen del día y a las marcas personales con
+ * búsquedas por clave primaria, sin recorrer el historial: su latencia no debe depender del
+ * número de registros anteriores. Se mide con historiales de 0, 10.000 y 100.000 registros del
+ * mismo usuario, ya sumados a los agregados con el backfill, y se comprueba que la mediana con el
+ * historial más largo no supera el doble de la mediana sin historial (más 1 ms de margen).
+ */
+class ExerciseLogWriteBenchmark extends TenantSchemaBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExerciseLogWriteBenchmark.class);
+
+    private static final int[] HISTORY_SIZES = {0, 10_000, 100_000};
+    private static final int LOGS_PER_SESSION = 8;
+    private static final int CATALOG_SIZE = 40;
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1_000;
+
+    @Test
+    void logLatencyDoesNotGrowWithHistory() throws Exception {
+        UUID userId = insertUsers(1).get(0);
+        List<UUID> routineExerciseIds = insertCatalog(CATALOG_SIZE, userId);
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        UUID sessionId = insertSession(userId, now);
+        ExerciseLogRepository repository = repositoryFactory.getRepository(ExerciseLogRepository.class);
+        AtomicInteger sequence = new AtomicInteger();
+
+        Map<Integer, Latencies> results = new LinkedHashMap<>();
+        int history = 0;
+        for (int historySize : HISTORY_SIZES) {
+            // Sesiones cada 6 horas hacia atrás, antes de la sesión que se mide
+            insertHistory(userId, (historySize - history) / LOGS_PER_SESSION, LOGS_PER_SESSION,
+                now.minus(Duration.ofDays(1)), Duration.ofHours(6));
+            applyPendingProgress();
+            history = historySize;
+
+            Latencies latencies = Latencies.measure(WARMUP, ITERATIONS, () -> {
+                int n = sequence.getAndIncrement();
+                return repository.insertForSession(
+                    UUID.randomUUID(),
+                    sessionId,
+                    userId,
+                    routineExerciseIds.get(n % routineExerciseIds.size()),
+                    3,
+                    "10,8,6",
+                    new int[] {10, 8, 6},
+                    40_000 + (n % 40) * 2_500,
+                    null,
+                    Instant.now());
+            });
+            results.put(historySize, latencies);
+            logger.info("Registro de ejercicio con {} registros previos: {}", historySize, latencies);
+        }
+
+        Duration withoutHistory = results.get(HISTORY_SIZES[0]).p50();
+        Duration withLongestHistory = results.get(HISTORY_SIZES[HISTORY_SIZES.length - 1]).p50();
+        assertThat(withLongestHistory)
+            .as("Mediana con %d registros previos frente a %s sin historial", HISTORY_SIZES[HISTORY_SIZES.length - 1], withoutHistory)
+            .isLessThanOrEqualTo(withoutHistory.multipliedBy(2).plusMillis(1));
+    }
+}
@@ -0,0 +1,115 @@
+package es.gymlog.repository;
+
+import es.gymlog.benchmark.Latencies;
+import es.gymlog.model.Exercise;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Paginación por cursor del catálogo ({@link ExerciseSearchRepositoryImpl}) con 50.000 ejercicios.
+ * <p>
+ * Mide la primera y la última página, sin filtros y filtrando por grupo muscular, y la última
+ * página con OFFSET como referencia. Con el cursor (name, id) cada página recorre solo su tramo
+ * del índice, así que la última debe costar lo mismo que la primera: se comprueba que su mediana
+ * no supera el doble de la de la primera (más 1 ms de margen) y que es menor que con OFFSET.
+ */
+class ExerciseSearchBenchmark extends TenantSchemaBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExerciseSearchBenchmark.class);
+
+    private static final int CATALOG_SIZE = 50_000;
+    private static final int PAGE_SIZE = 20;
+    private static final String MUSCLE_GROUP = "Pecho";
+    private static final int WARMUP = 100;
+    private static final int ITERATIONS = 1_000;
+
+    private ExerciseSearchRepositoryImpl searchRepository;
+
+    @BeforeAll
+    void seedCatalog() throws Exception {
+        insertCatalog(CATALOG_SIZE, insertUsers(1).get(0));
+        execute("ANALYZE");
+        searchRepository = new ExerciseSearchRepositoryImpl(template);
+    }
+
+    @Test
+    void lastPageCostsTheSameAsFirstPage() throws Exception {
+        Cursor lastPageCursor = cursorBeforeLastPage(null);
+        assertThat(page(null, lastPageCursor).collectList().block()).hasSize(PAGE_SIZE);
+
+        Latencies firstPage = Latencies.measure(WARMUP, ITERATIONS, () -> page(null, null).then());
+        Latencies lastPage = Latencies.measure(WARMUP, ITERATIONS, () -> page(null, lastPageCursor).then());
+        Latencies lastPageWithOffset = Latencies.measure(WARMUP, ITERATIONS, () -> template.getDatabaseClient()
+            .sql("SELECT * FROM exercises ORDER BY name, id LIMIT :limit OFFSET :offset")
+            .bind("limit", PAGE_SIZE + 1)
+            .bind("offset", CATALOG_SIZE - PAGE_SIZE)
+            .fetch().all()
+            .then());
+        logger.info("Catálogo de {} ejercicios, primera página: {}", CATALOG_SIZE, firstPage);
+        logger.info("Catálogo de {} ejercicios, última página con cursor: {}", CATALOG_SIZE, lastPage);
+        logger.info("Catálogo de {} ejercicios, última página con OFFSET: {}", CATALOG_SIZE, lastPageWithOffset);
+
+        assertFlat(firstPage, lastPage);
+        assertThat(lastPage.p50()).isLessThan(lastPageWithOffset.p50());
+    }
+
+    @Test
+    void lastPageByMuscleGroupCostsTheSameAsFirstPage() throws Exception {
+        Cursor lastPageCursor = cursorBeforeLastPage(MUSCLE_GROUP);
+        assertThat(page(MUSCLE_GROUP, lastPageCursor).collectList().block()).hasSize(PAGE_SIZE);
+
+        Latencies firstPage = Latencies.measure(WARMUP, ITERATIONS, () -> page(MUSCLE_GROUP, null).then());
+        Latencies lastPage = Latencies.measure(WARMUP, ITERATIONS, () -> page(MUSCLE_GROUP, lastPageCursor).then());
+        logger.info("Grupo muscular {}, primera página: {}", MUSCLE_GROUP, firstPage);
+        logger.info("Grupo muscular {}, última página con cursor: {}", MUSCLE_GROUP, lastPage);
+
+        assertFlat(firstPage, lastPage);
+    }
+
+    // Como ExerciseService: se pide un ejercicio más para saber si hay página siguiente
+    private Flux<Exercise> page(String muscleGroup, Cursor after) {
+        return searchRepository.search(null, muscleGroup,
+            after == null ? null : after.name(), after == null ? null : after.id(), PAGE_SIZE + 1);
+    }
+
+    private static void assertFlat(Latencies firstPage, Latencies lastPage) {
+        Duration limit = firstPage.p50().multipliedBy(2).plusMillis(1);
+        assertThat(lastPage.p50())
+            .as("Mediana de la última página frente a %s de la primera", firstPage.p50())
+            .isLessThanOrEqualTo(limit);
+    }
+
+    /**
+     * Último ejercicio de la penúltima página: el cursor con el que se pide la última
+     */
+    private Cursor cursorBeforeLastPage(String muscleGroup) throws Exception {
+        String filter = muscleGroup == null ? "" : "WHERE target_muscle_group = ?";
+        try (Connection connection = jdbcConnection();
+             PreparedStatement statement = connection.prepareStatement("""
+                 SELECT name, id FROM exercises %s
+                 ORDER BY name DESC, id DESC
+                 OFFSET %d LIMIT 1
+                 """.formatted(filter, PAGE_SIZE))) {
+            if (muscleGroup != null) {
+                statement.setString(1, muscleGroup);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                assertThat(resultSet.next()).isTrue();
+                return new Cursor(resultSet.getString("name"), resultSet.getObject("id", UUID.class));
+            }
+        }
+    }
+
+    private record Cursor(String name, UUID id) {}
+}
@@ -0,0 +1,275 @@
+package es.gymlog.repository;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Result;
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.dialect.PostgresDialect;
+import org.springframework.data.r2dbc.repository.support.R2dbcRepositoryFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.testcontainers.containers.PostgreSQLContainer;
+import reactor.core.publisher.Flux;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Base de las pruebas de rendimiento de las consultas de los tenants.
+ * <p>
+ * Arranca un Postgres en Docker (uno para todas las pruebas, con la misma imagen que
+ * docker-compose.yml) y crea un esquema de tenant por clase de prueba, migrado con el changelog
+ * de la aplicación (contexto 'tenant'). Las consultas se lanzan con un pool R2DBC que fija el
+ * search_path al crear cada conexión, igual que {@link es.gymlog.config.TenantRoutingConnectionFactory};
+ * los datos sintéticos se insertan por JDBC con generate_series.
+ * <p>
+ * Llevan la etiqueta "benchmark": solo se ejecutan con {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+abstract class TenantSchemaBenchmark {
+
+    private static final String CHANGELOG = "db/changelog/db.changelog-master.xml";
+    private static final int BACKFILL_BATCH_SIZE = 5_000;
+
+    // Compartido por todas las clases; Testcontainers lo elimina al terminar la JVM
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine")
+        .withDatabaseName("gymlog")
+        .withUsername("user")
+        .withPassword("password");
+
+    static {
+        POSTGRES.start();
+    }
+
+    protected final String schemaName = "tenant_" + getClass().getSimpleName().toLowerCase(Locale.ROOT);
+
+    private ConnectionPool connectionPool;
+    protected DatabaseClient databaseClient;
+    protected R2dbcEntityTemplate template;
+    protected R2dbcRepositoryFactory repositoryFactory;
+
+    @BeforeAll
+    void createTenantSchema() throws Exception {
+        try (Connection connection = DriverManager.getConnection(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword())) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE SCHEMA IF NOT EXISTS " + schemaName);
+            }
+            Database database = DatabaseFactory.getInstance()
+                .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+            database.setDefaultSchemaName(schemaName);
+            try (Liquibase liquibase = new Liquibase(CHANGELOG, new ClassLoaderResourceAccessor(), database)) {
+                liquibase.update(new Contexts("tenant"), new LabelExpression());
+            }
+        }
+
+        String searchPath = schemaName + ", public";
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.builder()
+            .option(ConnectionFactoryOptions.DRIVER, "postgresql")
+            .option(ConnectionFactoryOptions.HOST, POSTGRES.getHost())
+            .option(ConnectionFactoryOptions.PORT, POSTGRES.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT))
+            .option(ConnectionFactoryOptions.DATABASE, POSTGRES.getDatabaseName())
+            .option(ConnectionFactoryOptions.USER, POSTGRES.getUsername())
+            .option(ConnectionFactoryOptions.PASSWORD, POSTGRES.getPassword())
+            .build();
+        connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+            .name("benchmark-" + schemaName)
+            .maxSize(20)
+            .postAllocate(connection -> Flux.from(connection.createStatement("SET search_path TO " + searchPath).execute())
+                .flatMap(Result::getRowsUpdated)
+                .then())
+            .build());
+        databaseClient = DatabaseClient.create(connectionPool);
+        template = new R2dbcEntityTemplate(databaseClient, PostgresDialect.INSTANCE);
+        repositoryFactory = new R2dbcRepositoryFactory(template);
+    }
+
+    @AfterAll
+    void closeConnectionPool() {
+        if (connectionPool != null) {
+            connectionPool.dispose();
+        }
+    }
+
+    /**
+     * Abre una conexión JDBC con el search_path del esquema de la prueba
+     */
+    protected Connection jdbcConnection() throws SQLException {
+        String url = POSTGRES.getJdbcUrl() + (POSTGRES.getJdbcUrl().contains("?") ? "&" : "?")
+            + "currentSchema=" + schemaName + ",public";
+        return DriverManager.getConnection(url, POSTGRES.getUsername(), POSTGRES.getPassword());
+    }
+
+    /**
+     * Ejecuta sentencias SQL sin parámetros en el esquema de la prueba
+     */
+    protected void execute(String... statements) throws SQLException {
+        try (Connection connection = jdbcConnection(); Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Crea usuarios sintéticos
+     *
+     * @return Los IDs de los usuarios creados.
+     */
+    protected List<UUID> insertUsers(int count) throws SQLException {
+        return queryIds("""
+            WITH seeded AS (
+                SELECT gen_random_uuid() AS id, n FROM generate_series(1, ?) n
+            )
+            INSERT INTO users (id, provider_id, provider, email, display_name, created_at, updated_at)
+            SELECT id, id::text, 'benchmark', id || '@benchmark.gymlog.es', 'Usuario ' || n, now(), now()
+            FROM seeded
+            RETURNING id
+            """, count);
+    }
+
+    /**
+     * Crea un catálogo de ejercicios repartidos entre ocho grupos musculares, y una rutina del
+     * usuario indicado con un día que los incluye todos
+     *
+     * @return Los IDs de los ejercicios de la rutina ('routine_exercises').
+     */
+    protected List<UUID> insertCatalog(int exercises, UUID routineOwnerId) throws SQLException {
+        try (Connection connection = jdbcConnection();
+             PreparedStatement statement = connection.prepareStatement("""
+                 WITH catalog AS (
+                     INSERT INTO exercises (id, name, description, target_muscle_group, is_public, created_at, updated_at)
+                     SELECT gen_random_uuid(), 'Ejercicio ' || lpad(n::text, 6, '0'), 'Ejercicio sintético ' || n,
+                            (ARRAY['Pecho', 'Espalda', 'Piernas', 'Hombros', 'Bíceps', 'Tríceps', 'Core', 'Glúteos'])[1 + n % 8],
+                            true, now(), now()
+                     FROM generate_series(1, ?) n
+                     RETURNING id
+                 ), routine AS (
+                     INSERT INTO routines (id, user_id, name, is_active, created_at, updated_at)
+                     VALUES (gen_random_uuid(), ?, 'Rutina de carga', true, now(), now())
+                     RETURNING id
+                 ), day AS (
+                     INSERT INTO routine_days (id, routine_id, name, order_num, created_at, updated_at)
+                     SELECT gen_random_uuid(), id, 'Día 1', 1, now(), now() FROM routine
+                     RETURNING id
+                 )
+                 INSERT INTO routine_exercises (id, routine_day_id, exercise_id, order_num, is_active, created_at, updated_at)
+                 SELECT gen_random_uuid(), day.id, catalog.id, row_number() OVER (), true, now(), now()
+                 FROM day CROSS JOIN catalog
+                 RETURNING id
+                 """)) {
+            statement.setInt(1, exercises);
+            statement.setObject(2, routineOwnerId);
+            return ids(statement);
+        }
+    }
+
+    /**
+     * Crea una sesión de entrenamiento vacía del usuario
+     *
+     * @return El ID de la sesión.
+     */
+    protected UUID insertSession(UUID userId, Instant startTime) throws SQLException {
+        try (Connection connection = jdbcConnection();
+             PreparedStatement statement = connection.prepareStatement("""
+                 INSERT INTO workout_sessions (id, user_id, start_time)
+                 VALUES (gen_random_uuid(), ?, ?)
+                 RETURNING id
+                 """)) {
+            statement.setObject(1, userId);
+            statement.setTimestamp(2, Timestamp.from(startTime));
+            return ids(statement).get(0);
+        }
+    }
+
+    /**
+     * Crea el historial de un usuario: {@code sessions} sesiones, una cada {@code spacing} hacia
+     * atrás desde {@code lastStart}, con {@code logsPerSession} registros de tres series cada una
+     * sobre ejercicios de la rutina y pesos de 20 a 117,5 kg (deterministas: dependen del ID de
+     * la sesión y de la posición del registro). Los registros quedan pendientes de sumar a
+     * los agregados (ver {@link #applyPendingProgress()}).
+     */
+    protected void insertHistory(UUID userId, int sessions, int logsPerSession, Instant lastStart, Duration spacing)
+            throws SQLException {
+        try (Connection connection = jdbcConnection();
+             PreparedStatement statement = connection.prepareStatement("""
+                 WITH routine AS (
+                     SELECT array_agg(id ORDER BY id) AS exercise_ids FROM routine_exercises
+                 ), sessions AS (
+                     INSERT INTO workout_sessions (id, user_id, start_time, end_time)
+                     SELECT gen_random_uuid(), ?, s.start_time, s.start_time + interval '1 hour'
+                     FROM generate_series(0, ? - 1) n
+                     CROSS JOIN LATERAL (SELECT ?::timestamptz - n * make_interval(secs => ?) AS start_time) s
+                     RETURNING id, start_time
+                 )
+                 INSERT INTO exercise_logs (id, workout_session_id, routine_exercise_id, sets_completed, reps_achieved, reps,
+                                            weight_kg, weight_grams, recorded_at, progress_applied)
+                 SELECT gen_random_uuid(), s.id, r.exercise_ids[1 + (h.hash + k) % cardinality(r.exercise_ids)],
+                        3, '10,8,6', ARRAY[10, 8, 6], h.kg, (h.kg * 1000)::int, s.start_time + k * interval '5 minutes', false
+                 FROM sessions s
+                 CROSS JOIN routine r
+                 CROSS JOIN generate_series(1, ?) k
+                 CROSS JOIN LATERAL (SELECT hashtext(s.id::text) & 2147483647 AS hash) hs
+                 CROSS JOIN LATERAL (SELECT hs.hash, 20 + 2.5 * ((hs.hash + 7 * k) % 40) AS kg) h
+                 """)) {
+            statement.setObject(1, userId);
+            statement.setInt(2, sessions);
+            statement.setTimestamp(3, Timestamp.from(lastStart));
+            statement.setLong(4, spacing.toSeconds());
+            statement.setInt(5, logsPerSession);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Suma los registros pendientes a los agregados con el backfill de la aplicación y actualiza
+     * las estadísticas del planificador
+     */
+    protected void applyPendingProgress() throws SQLException {
+        ExerciseProgressRepository progressRepository = new ExerciseProgressRepository(databaseClient);
+        while (progressRepository.applyPendingBatch(BACKFILL_BATCH_SIZE).block() > 0) {
+            // Lotes hasta que no quedan registros pendientes
+        }
+        execute("ANALYZE");
+    }
+
+    private List<UUID> queryIds(String sql, int count) throws SQLException {
+        try (Connection connection = jdbcConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setInt(1, count);
+            return ids(statement);
+        }
+    }
+
+    private static List<UUID> ids(PreparedStatement statement) throws SQLException {
+        List<UUID> ids = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                ids.add(resultSet.getObject(1, UUID.class));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,135 @@
+package es.gymlog.repository;
+
+import es.gymlog.benchmark.Latencies;
+import es.gymlog.repository.TrainingRollupRepository.VolumeBucket;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Estadísticas de volumen leídas de los agregados ({@link TrainingRollupRepository#findVolume})
+ * frente a la misma consulta sobre 'exercise_logs'.
+ * <p>
+ * Genera un año de entrenamientos de 100 usuarios (4 sesiones por semana, 6 registros por
+ * sesión), los suma a las filas DAY con el backfill y compacta las semanas terminadas, como
+ * hacen {@code ExerciseProgressBackfill} y {@code TrainingRollupCompactor}. Después mide las
+ * 52 semanas de un usuario y de todo el gimnasio por ambos caminos: los resultados deben
+ * coincidir, y para el gimnasio la mediana de los agregados debe ser menor que la del recorrido
+ * de los registros.
+ */
+class TrainingRollupBenchmark extends TenantSchemaBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrainingRollupBenchmark.class);
+
+    private static final int USERS = 100;
+    private static final int WEEKS = 52;
+    private static final int SESSIONS_PER_WEEK = 4;
+    private static final int LOGS_PER_SESSION = 6;
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 200;
+
+    /** Misma consulta que findVolume con period = WEEK, sumando los registros uno a uno */
+    private static final String RAW_WEEKLY_VOLUME = """
+        SELECT date_trunc('week', l.recorded_at AT TIME ZONE 'UTC')::date AS period_start,
+               COALESCE(e.target_muscle_group, '') AS muscle_group,
+               sum(m.volume_grams)::bigint AS volume_grams, sum(l.sets_completed) AS sets_count
+        FROM exercise_logs l
+        JOIN workout_sessions ws ON ws.id = l.workout_session_id
+        JOIN routine_exercises re ON re.id = l.routine_exercise_id
+        JOIN exercises e ON e.id = re.exercise_id
+        """ + ExerciseLogRepository.SET_METRICS + """
+        WHERE %s l.recorded_at >= :from AND l.recorded_at < :until
+        GROUP BY 1, 2
+        ORDER BY 1, 2
+        """;
+
+    private TrainingRollupRepository rollupRepository;
+    private UUID userId;
+    private LocalDate from;
+    private LocalDate to;
+    private LocalDate until;
+
+    @BeforeAll
+    void seedOneYear() throws Exception {
+        List<UUID> userIds = insertUsers(USERS);
+        insertCatalog(40, userIds.get(0));
+        Instant lastStart = Instant.now().truncatedTo(ChronoUnit.HOURS).minus(Duration.ofHours(1));
+        Duration spacing = Duration.ofDays(7).dividedBy(SESSIONS_PER_WEEK);
+        for (UUID id : userIds) {
+            insertHistory(id, WEEKS * SESSIONS_PER_WEEK, LOGS_PER_SESSION, lastStart, spacing);
+        }
+        applyPendingProgress();
+
+        rollupRepository = new TrainingRollupRepository(databaseClient);
+        LocalDate thisWeek = LocalDate.now(ZoneOffset.UTC).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        long folded = rollupRepository.compact(thisWeek).block();
+        execute("ANALYZE");
+        logger.info("Un año de entrenamientos: {} usuarios, {} filas DAY compactadas", USERS, folded);
+
+        userId = userIds.get(0);
+        from = thisWeek.minusWeeks(WEEKS);
+        to = thisWeek;
+        until = thisWeek.plusWeeks(1);
+    }
+
+    @Test
+    void userVolumeFromRollups() {
+        compare("usuario", userId);
+    }
+
+    @Test
+    void gymVolumeFromRollups() {
+        Comparison comparison = compare("gimnasio", null);
+        assertThat(comparison.rollups().p50()).isLessThan(comparison.raw().p50());
+    }
+
+    private Comparison compare(String scope, UUID user) {
+        List<VolumeBucket> fromRollups = rollupVolume(user).collectList().block();
+        List<VolumeBucket> fromLogs = rawVolume(user).collectList().block();
+        assertThat(fromRollups).isNotEmpty().isEqualTo(fromLogs);
+
+        Latencies rollups = Latencies.measure(WARMUP, ITERATIONS, () -> rollupVolume(user).then());
+        Latencies raw = Latencies.measure(WARMUP, ITERATIONS, () -> rawVolume(user).then());
+        logger.info("Volumen semanal de un año ({}), agregados: {}", scope, rollups);
+        logger.info("Volumen semanal de un año ({}), exercise_logs: {}", scope, raw);
+        return new Comparison(rollups, raw);
+    }
+
+    private Flux<VolumeBucket> rollupVolume(UUID user) {
+        return rollupRepository.findVolume(user, "WEEK", from, to, until);
+    }
+
+    private Flux<VolumeBucket> rawVolume(UUID user) {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient
+            .sql(RAW_WEEKLY_VOLUME.formatted(user == null ? "" : "ws.user_id = :userId AND"))
+            .bind("from", from.atStartOfDay(ZoneOffset.UTC).toOffsetDateTime())
+            .bind("until", until.atStartOfDay(ZoneOffset.UTC).toOffsetDateTime());
+        if (user != null) {
+            spec = spec.bind("userId", user);
+        }
+        return spec
+            .map(row -> new VolumeBucket(
+                row.get("period_start", LocalDate.class),
+                row.get("muscle_group", String.class),
+                row.get("volume_grams", Long.class),
+                row.get("sets_count", Long.class)))
+            .all();
+    }
+
+    private record Comparison(Latencies rollups, Latencies raw) {}
+}
@@ -0,0 +1,184 @@
+package es.gymlog.service;
+
+import es.gymlog.benchmark.Latencies;
+import es.gymlog.config.IdentityProviderClientConfig;
+import es.gymlog.config.SecurityProperties;
+import es.gymlog.exception.IdentityProviderUnavailableException;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Latencia del login con Facebook cuando la Graph API falla o va lenta.
+ * <p>
+ * Un MockWebServer hace de Graph API durante 12 segundos: responde bien en 50 ms los 3 primeros
+ * y los 3 últimos, y entre medias sufre una caída en la que la mitad de las peticiones devuelven
+ * 503 y una de cada cinco tarda 5 segundos. 50 clientes concurrentes validan tokens sin parar
+ * (con 20 ms entre llamadas) contra {@link SocialTokenValidationService} en dos montajes:
+ * <ul>
+ *   <li>El de la aplicación ({@link IdentityProviderClientConfig}): pool acotado, tiempo máximo
+ *       de respuesta y circuit breaker, con la configuración por defecto salvo el tiempo con el
+ *       circuito abierto (1 s, para que se vea la recuperación dentro de la prueba).</li>
+ *   <li>Sin protección: WebClient por defecto, sin tiempo máximo, con el circuit breaker desactivado.</li>
+ * </ul>
+ * Registra p50, p99 y máximo de cada montaje y cuántas llamadas acaban bien, con 503 del
+ * proveedor o rechazadas, y comprueba que el p99 del montaje de la aplicación es menor y que
+ * ninguna llamada supera el tiempo máximo de respuesta más la espera de conexión libre.
+ */
+@Tag("benchmark")
+class IdentityProviderLatencyBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdentityProviderLatencyBenchmark.class);
+
+    private static final int CLIENTS = 50;
+    private static final Duration THINK_TIME = Duration.ofMillis(20);
+    private static final Duration HEALTHY_LATENCY = Duration.ofMillis(50);
+    private static final Duration SLOW_LATENCY = Duration.ofSeconds(5);
+    private static final Duration OUTAGE_START = Duration.ofSeconds(3);
+    private static final Duration OUTAGE_END = Duration.ofSeconds(9);
+    private static final Duration RUN_TIME = Duration.ofSeconds(12);
+    private static final String PROFILE = """
+        {"id": "10001", "name": "Usuario de prueba", "email": "prueba@gymlog.es"}
+        """;
+
+    private MockWebServer graphApi;
+    private volatile long startNanos;
+
+    @BeforeEach
+    void startGraphApi() throws IOException {
+        graphApi = new MockWebServer();
+        graphApi.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                Duration elapsed = Duration.ofNanos(System.nanoTime() - startNanos);
+                boolean outage = elapsed.compareTo(OUTAGE_START) >= 0 && elapsed.compareTo(OUTAGE_END) < 0;
+                int roll = ThreadLocalRandom.current().nextInt(100);
+                if (outage && roll < 50) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                Duration latency = outage && roll < 70 ? SLOW_LATENCY : HEALTHY_LATENCY;
+                return new MockResponse()
+                    .setHeader("Content-Type", "application/json")
+                    .setBody(PROFILE)
+                    .setHeadersDelay(latency.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        });
+        graphApi.start();
+    }
+
+    @AfterEach
+    void stopGraphApi() throws IOException {
+        graphApi.shutdown();
+    }
+
+    @Test
+    void pooledClientWithCircuitBreakerBoundsTailLatency() {
+        SecurityProperties properties = securityProperties();
+        IdentityProviderClientConfig clientConfig = new IdentityProviderClientConfig();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        ConnectionProvider connectionProvider = clientConfig.identityProviderConnectionProvider(properties);
+        Result protectedResult;
+        try {
+            protectedResult = run(new SocialTokenValidationService(properties, meterRegistry,
+                clientConfig.identityProviderWebClient(WebClient.builder(), connectionProvider, properties),
+                clientConfig.identityProviderCircuitBreakers(properties, meterRegistry)));
+        } finally {
+            connectionProvider.dispose();
+        }
+
+        CircuitBreakerRegistry disabledBreakers = CircuitBreakerRegistry.ofDefaults();
+        disabledBreakers.circuitBreaker("facebook").transitionToDisabledState();
+        Result unprotectedResult = run(new SocialTokenValidationService(properties, meterRegistry,
+            WebClient.create(), disabledBreakers));
+
+        logger.info("Graph API con caída, pool + circuit breaker: {}", protectedResult);
+        logger.info("Graph API con caída, sin protección: {}", unprotectedResult);
+
+        SecurityProperties.ProviderClientConfig clientSettings = properties.identityProviders();
+        assertThat(protectedResult.latencies().p99()).isLessThan(unprotectedResult.latencies().p99());
+        assertThat(protectedResult.latencies().max())
+            .isLessThanOrEqualTo(clientSettings.responseTimeout().plus(clientSettings.pendingAcquireTimeout()).plusMillis(500));
+    }
+
+    private SecurityProperties securityProperties() {
+        String graphUri = graphApi.url("/").toString().replaceAll("/$", "");
+        return new Binder(new MapConfigurationPropertySource(Map.of(
+                "gymlog.security.jwt-key", "clave-de-prueba-de-rendimiento",
+                "gymlog.security.social.facebook.graph-uri", graphUri,
+                "gymlog.security.identity-providers.circuit-breaker.wait-duration-in-open-state", "1s")))
+            .bindOrCreate("gymlog.security", SecurityProperties.class);
+    }
+
+    private Result run(SocialTokenValidationService service) {
+        Queue<Long> nanos = new ConcurrentLinkedQueue<>();
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger unavailable = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger sequence = new AtomicInteger();
+        startNanos = System.nanoTime();
+        long deadline = startNanos + RUN_TIME.toNanos();
+
+        Mono<Void> call = Mono.defer(() -> {
+            long start = System.nanoTime();
+            return service.validateToken("facebook", "token-" + sequence.incrementAndGet())
+                .doOnSuccess(userInfo -> succeeded.incrementAndGet())
+                .then()
+                .onErrorResume(error -> {
+                    (error instanceof IdentityProviderUnavailableException ? unavailable : failed).incrementAndGet();
+                    return Mono.empty();
+                })
+                .doFinally(signal -> nanos.add(System.nanoTime() - start))
+                .then(Mono.delay(THINK_TIME))
+                .then();
+        });
+        Flux.range(0, CLIENTS)
+            .flatMap(client -> call.repeat(() -> System.nanoTime() < deadline), CLIENTS)
+            .blockLast();
+
+        return new Result(Latencies.of(nanos.stream().mapToLong(Long::longValue).toArray()),
+            succeeded.get(), unavailable.get(), failed.get());
+    }
+
+    /**
+     * Resultado de un montaje
+     *
+     * @param latencies   Latencia de cada validación, acabe como acabe.
+     * @param succeeded   Validaciones correctas.
+     * @param unavailable Validaciones con el proveedor no disponible (5xx, tiempo agotado o circuito abierto).
+     * @param failed      Resto de errores.
+     */
+    private record Result(Latencies latencies, int succeeded, int unavailable, int failed) {
+
+        @Override
+        public String toString() {
+            return "%s; correctas=%d, no disponible=%d, otros errores=%d".formatted(latencies, succeeded, unavailable, failed);
+        }
+    }
+}